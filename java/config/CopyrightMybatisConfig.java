@@ -0,0 +1,32 @@
+package org.jeecg.modules.agenthub.config;
+
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.OptimisticLockerInnerInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 软著模块的MyBatis-Plus配置
+ * 拦截器由基础框架统一创建，这里只在其中缺少乐观锁插件时补上，使带@Version的实体按整行更新时校验版本号
+ */
+@Slf4j
+@Configuration
+public class CopyrightMybatisConfig {
+
+    @Bean
+    public static BeanPostProcessor optimisticLockerRegistrar() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof MybatisPlusInterceptor interceptor
+                        && interceptor.getInterceptors().stream().noneMatch(OptimisticLockerInnerInterceptor.class::isInstance)) {
+                    interceptor.addInnerInterceptor(new OptimisticLockerInnerInterceptor());
+                    log.info("已注册MyBatis-Plus乐观锁插件: {}", beanName);
+                }
+                return bean;
+            }
+        };
+    }
+}
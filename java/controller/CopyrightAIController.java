@@ -10,15 +10,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import io.netty.channel.ChannelOption;
-import io.netty.handler.timeout.ReadTimeoutHandler;
-import io.netty.handler.timeout.WriteTimeoutHandler;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
-import reactor.netty.http.client.HttpClient;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -26,22 +23,35 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import org.jeecg.common.system.vo.LoginUser;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.jeecg.modules.agenthub.copyright.entity.CopyrightProject;
 import org.jeecg.modules.agenthub.copyright.entity.CopyrightFile;
+import org.jeecg.modules.agenthub.copyright.entity.ProjectStatus;
 import org.jeecg.modules.agenthub.copyright.service.ICopyrightProjectService;
 import org.jeecg.modules.agenthub.copyright.service.ICopyrightFileService;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightLlmCallService;
 import org.jeecg.modules.agenthub.util.CrossPlatformUtil;
 import org.jeecg.modules.agenthub.service.ScreenshotService;
+import org.jeecg.modules.agenthub.service.llm.DeepSeekClient;
+import org.jeecg.modules.agenthub.service.llm.LlmCallContext;
+import org.jeecg.modules.agenthub.service.llm.LlmPrompt;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.jeecg.modules.agenthub.service.pipeline.CancellationRegistry;
+import org.jeecg.modules.agenthub.service.pipeline.CancellationToken;
+import org.jeecg.modules.agenthub.service.pipeline.GenerationJobRunner;
+import org.jeecg.modules.agenthub.service.pipeline.ProgressTracker;
+import org.jeecg.modules.agenthub.service.pipeline.StageGraph;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
@@ -79,37 +89,57 @@ public class CopyrightAIController {
     @Value("${ai.deepseek.base-url:https://api.deepseek.com/v1}")
     private String baseUrl;
 
-    private static final String HIGH_COST_MODEL = "deepseek-reasoner";
-    private static final String LOW_COST_MODEL = "deepseek-chat";
+    /**批量提交一次最多创建的项目数*/
+    @Value("${copyright.generation.batch.max-size:50}")
+    private int batchMaxSize;
+
+    private static final String HIGH_COST_MODEL = DeepSeekClient.HIGH_COST_MODEL;
+    private static final String LOW_COST_MODEL = DeepSeekClient.LOW_COST_MODEL;
 
-    private final WebClient webClient;
     private final ObjectMapper objectMapper;
 
+    @Autowired
+    private DeepSeekClient deepSeekClient;
+
     @Autowired
     private ICopyrightProjectService copyrightProjectService;
 
     @Autowired
     private ICopyrightFileService copyrightFileService;
+
+    @Autowired
+    private ICopyrightLlmCallService copyrightLlmCallService;
     
     @Autowired
     private ScreenshotService screenshotService;
-    
-    private static final Semaphore generationSemaphore = new Semaphore(3);
+
+    @Autowired
+    private GenerationJobRunner generationJobRunner;
+
+    @Autowired
+    private WorkloadExecutors workloadExecutors;
+
+    @Autowired
+    private ProgressTracker progressTracker;
+
+    @Autowired
+    private CancellationRegistry cancellationRegistry;
 
     public CopyrightAIController() {
-        HttpClient httpClient = HttpClient.create()
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)
-                .doOnConnected(conn ->
-                        conn.addHandlerLast(new ReadTimeoutHandler(600, TimeUnit.SECONDS))
-                            .addHandlerLast(new WriteTimeoutHandler(60, TimeUnit.SECONDS)));
-        
-        this.webClient = WebClient.builder()
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
         this.objectMapper = new ObjectMapper();
     }
 
+    /**
+     * 注册生成任务的处理逻辑：普通任务只复用本次任务创建之后保存的产物，
+     * 断点续跑的任务复用输入哈希一致的全部已有产物
+     */
+    @PostConstruct
+    public void registerGenerationJobHandler() {
+        generationJobRunner.setHandler(job -> onDb(() -> copyrightProjectService.getById(job.getProjectId()))
+            .flatMap(project -> executeFullGenerationProcess(project, job.getSubmittedBy() != null ? job.getSubmittedBy() : job.getCreateBy(),
+                Boolean.TRUE.equals(job.getResume()) ? null : job.getCreateTime())));
+    }
+
     /**
      * 生成软件名称
      */
@@ -206,6 +236,117 @@ public class CopyrightAIController {
         }
     }
 
+    /**
+     * 批量创建项目并启动生成
+     * 所有项目在同一事务中创建并入队，任一项目参数有误则全部不创建；
+     * 入队后各项目的生成任务并发执行，推理模型、对话模型、浏览器和文档渲染分别由各自的限流器和线程池控制并发，
+     * 不同项目处于不同阶段时这些资源可以同时被占满
+     */
+    @PostMapping("/copyright/projects/batch")
+    public Result<Map<String, Object>> createProjectBatch(@RequestBody Map<String, Object> params) {
+        try {
+            String currentUserId = getCurrentUserId();
+            String currentUserInfo = getCurrentUserInfo();
+            
+            Object specs = params.get("projects");
+            if (!(specs instanceof List) || ((List<?>) specs).isEmpty()) {
+                return Result.error("项目列表不能为空");
+            }
+            if (((List<?>) specs).size() > batchMaxSize) {
+                return Result.error("单次最多提交 " + batchMaxSize + " 个项目");
+            }
+            
+            List<CopyrightProject> projects = new ArrayList<>();
+            for (Object spec : (List<?>) specs) {
+                if (!(spec instanceof Map)) {
+                    return Result.error("项目参数格式不正确");
+                }
+                Map<?, ?> item = (Map<?, ?>) spec;
+                String appName = (String) item.get("appName");
+                if (appName == null || appName.isBlank()) {
+                    return Result.error("第 " + (projects.size() + 1) + " 个项目缺少应用名称");
+                }
+                projects.add(new CopyrightProject()
+                    .setAppName(appName)
+                    .setAppPrompt((String) item.get("appPrompt"))
+                    .setModelId((String) item.get("modelId"))
+                    .setDomain((String) item.get("domain")));
+            }
+            
+            log.info("批量创建版权项目: 项目数={}, 用户: {}", projects.size(), currentUserInfo);
+            String batchId = copyrightProjectService.createBatch(projects, currentUserId, currentUserInfo);
+            generationJobRunner.wakeUp();
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("batchId", batchId);
+            result.put("projectIds", projects.stream().map(CopyrightProject::getId).collect(Collectors.toList()));
+            result.put("total", projects.size());
+            result.put("status", "generating");
+            return Result.OK("批量项目已创建并开始生成", result);
+        } catch (Exception e) {
+            log.error("批量创建项目失败", e);
+            return Result.error("批量创建项目失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取批次的汇总进度：各状态的项目数、整体进度和每个项目的进度
+     * 本节点正在生成的项目取内存中的进度，其余取数据库中的进度
+     */
+    @GetMapping("/copyright/batches/{batchId}/status")
+    public Result<Map<String, Object>> getBatchStatus(@PathVariable String batchId) {
+        try {
+            String currentUserId = getCurrentUserId();
+            List<CopyrightProject> projects = copyrightProjectService.getProjectsByBatch(batchId);
+            if (projects.isEmpty()) {
+                return Result.error("批次不存在");
+            }
+            if (!"system".equals(currentUserId) && !currentUserId.equals(projects.get(0).getCreateBy())) {
+                return Result.error("无权限查看此批次");
+            }
+            
+            Map<String, Integer> statusCounts = new LinkedHashMap<>();
+            List<Map<String, Object>> items = new ArrayList<>();
+            int progressSum = 0;
+            for (CopyrightProject project : projects) {
+                int progress = project.getProgress() != null ? project.getProgress() : 0;
+                String currentStep = project.getCurrentStep();
+                ProgressTracker.Snapshot snapshot = progressTracker.snapshot(project.getId());
+                if ("completed".equals(project.getStatus())) {
+                    progress = 100;
+                } else if (snapshot != null) {
+                    progress = snapshot.getProgress();
+                    currentStep = snapshot.getCurrentStep();
+                }
+                progressSum += progress;
+                statusCounts.merge(project.getStatus(), 1, Integer::sum);
+                
+                Map<String, Object> item = new HashMap<>();
+                item.put("projectId", project.getId());
+                item.put("appName", project.getAppName());
+                item.put("status", project.getStatus());
+                item.put("progress", progress);
+                item.put("currentStep", currentStep);
+                items.add(item);
+            }
+            
+            int finished = statusCounts.getOrDefault("completed", 0) + statusCounts.getOrDefault("error", 0)
+                + statusCounts.getOrDefault("cancelled", 0);
+            Map<String, Object> result = new HashMap<>();
+            result.put("batchId", batchId);
+            result.put("total", projects.size());
+            result.put("finished", finished);
+            result.put("statusCounts", statusCounts);
+            result.put("progress", progressSum / projects.size());
+            result.put("status", finished == projects.size() ? "finished" : "generating");
+            result.put("projects", items);
+            return Result.OK("获取批次状态成功", result);
+        } catch (Exception e) {
+            log.error("获取批次状态失败", e);
+            return Result.error("获取批次状态失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 获取版权项目列表
      */
@@ -229,6 +370,7 @@ public class CopyrightAIController {
                 map.put("domain", project.getDomain());
                 map.put("appPrompt", project.getAppPrompt() != null ? project.getAppPrompt() : "");
                 map.put("modelId", project.getModelId());
+                map.put("batchId", project.getBatchId());
     
                 map.put("status", project.getStatus());
                 map.put("progress", project.getProgress());
@@ -253,9 +395,11 @@ public class CopyrightAIController {
 
     /**
      * 启动项目生成
+     * @param resume 是否断点续跑，复用输入未变化的已有产物；不传时失败或取消的项目默认续跑，其余重新生成
      */
     @PostMapping("/copyright/projects/{projectId}/generate")
-    public Result<Map<String, Object>> startProjectGeneration(@PathVariable String projectId) {
+    public Result<Map<String, Object>> startProjectGeneration(@PathVariable String projectId,
+                                                              @RequestParam(required = false) Boolean resume) {
         try {
             String currentUserId = getCurrentUserId();
             String currentUserInfo = getCurrentUserInfo();
@@ -276,7 +420,8 @@ public class CopyrightAIController {
             String currentStatus = project.getStatus();
             boolean updated = false;
             
-            if ("pending".equals(currentStatus) || "error".equals(currentStatus) || "completed".equals(currentStatus)) {
+            ProjectStatus current = ProjectStatus.of(currentStatus);
+            if (current != null && current.canTransitionTo(ProjectStatus.GENERATING)) {
                 
                 updated = copyrightProjectService.checkAndUpdateStatus(projectId, currentStatus, "generating");
                 
@@ -297,35 +442,14 @@ public class CopyrightAIController {
             copyrightProjectService.updateCurrentStep(projectId, "开始生成软著材料...");
             
             
-            CompletableFuture.runAsync(() -> {
-                boolean acquired = false;
-                try {
-                    
-                    generationSemaphore.acquire();
-                    acquired = true;
-                    log.info("项目 {} 获取到生成许可，当前可用许可: {}", projectId, generationSemaphore.availablePermits());
-                    
-                    executeFullGenerationProcess(project, currentUserInfo);
-                } catch (InterruptedException e) {
-                    log.error("等待生成许可被中断", e);
-                    Thread.currentThread().interrupt();
-                    copyrightProjectService.updateStatus(projectId, "error");
-                    copyrightProjectService.updateCurrentStep(projectId, "生成失败: 系统繁忙");
-                } catch (Exception e) {
-                    log.error("生成流程执行失败", e);
-                    copyrightProjectService.updateStatus(projectId, "error");
-                    copyrightProjectService.updateCurrentStep(projectId, "生成失败: " + e.getMessage());
-                } finally {
-                    if (acquired) {
-                        generationSemaphore.release();
-                        log.info("项目 {} 释放生成许可，当前可用许可: {}", projectId, generationSemaphore.availablePermits());
-                    }
-                }
-            });
+            // 写入持久化任务表，由GenerationJobRunner认领执行；节点重启后任务会被重新认领并从已保存的产物继续
+            boolean resumeMode = resume != null ? resume : "error".equals(currentStatus) || "cancelled".equals(currentStatus);
+            generationJobRunner.submit(projectId, project.getCreateBy(), currentUserInfo, resumeMode);
             
             Map<String, Object> result = new HashMap<>();
             result.put("projectId", projectId);
             result.put("status", "generating");
+            result.put("resume", resumeMode);
             result.put("message", "项目生成已启动");
             
             return Result.OK("项目生成已启动", result);
@@ -337,366 +461,436 @@ public class CopyrightAIController {
     
     /**
      * 执行完整的生成流程
+     * 各阶段按依赖关系组成StageGraph，依赖满足即开始，互不依赖的阶段并发执行，每个产物生成后立即保存；
+     * 等待大模型响应期间不占用线程，数据库读写切换到db线程池，Word/PDF渲染切换到document-render线程池
      */
-    private void executeFullGenerationProcess(CopyrightProject project, String currentUser) {
+    private Mono<Void> executeFullGenerationProcess(CopyrightProject project, String currentUser, Date since) {
         String projectId = project.getId();
         String appName = project.getAppName();
-        String appPrompt = project.getAppPrompt();
         
         log.info("开始执行完整生成流程，项目ID: {}, 项目名称: {}", projectId, appName);
         
-        
-        startProgressSimulation(projectId);
-        
+        return onDb(() -> copyrightProjectService.getById(projectId))
+            .switchIfEmpty(Mono.fromRunnable(() -> log.error("项目不存在，停止生成流程，项目ID: {}", projectId)))
+            .filter(currentProject -> {
+                if (!"generating".equals(currentProject.getStatus())) {
+                    log.error("项目状态不正确，停止生成流程，项目ID: {}, 当前状态: {}", projectId, currentProject.getStatus());
+                    return false;
+                }
+                return true;
+            })
+            .flatMap(currentProject -> buildGenerationGraph(currentProject, currentUser, since).execute()
+                // 全部阶段完成后停止进度跟踪，再更新项目状态为完成；项目已被取消时不覆盖取消状态
+                .then(onDbRun(() -> {
+                    progressTracker.finish(projectId);
+                    if (copyrightProjectService.checkAndUpdateStatus(projectId, "generating", "completed")) {
+                        copyrightProjectService.updateProgress(projectId, 100, "生成完成");
+                        log.info("项目 {} 生成流程完成", projectId);
+                    }
+                })))
+            // 先把项目标记为失败，再把异常交给GenerationJobRunner，任务记录为failed而不是completed
+            .onErrorResume(e -> {
+                log.error("项目 {} 生成流程执行失败", projectId, e);
+                return onDbRun(() -> {
+                    progressTracker.finish(projectId);
+                    if (copyrightProjectService.checkAndUpdateStatus(projectId, "generating", "error")) {
+                        copyrightProjectService.updateCurrentStep(projectId, "生成失败: " + e.getMessage());
+                    }
+                }).then(Mono.error(e));
+            })
+            .doFinally(signal -> progressTracker.finish(projectId))
+            .contextWrite(LlmCallContext.forProject(projectId))
+            .then();
+    }
+
+    /**
+     * 生成流程的阶段依赖图：
+     * 前端 → Part1 → Part2/Part3并发 → 合并后端 → 四个章节并发，第一章完成后即生成软著申请表；
+     * 截图只依赖前端，与后端生成并行；源代码文档只依赖前后端代码，与章节并行。
+     * 阶段事件交给ProgressTracker计算进度，当前步骤为正在执行的阶段
+     */
+    private StageGraph buildGenerationGraph(CopyrightProject project, String currentUser, Date since) {
+        String projectId = project.getId();
+        String appName = project.getAppName();
+        String appPrompt = project.getAppPrompt();
+
+        Map<String, String> stageLabels = new LinkedHashMap<>();
+        stageLabels.put("frontend_code", "前端代码");
+        stageLabels.put("backend_part1", "后端基础架构层代码");
+        stageLabels.put("backend_part2", "后端中间件和认证层代码");
+        stageLabels.put("backend_part3", "后端业务和API层代码");
+        stageLabels.put("backend_code", "后端服务代码");
+        stageLabels.put("screenshots", "界面截图");
+        stageLabels.put("source_code_pdf", "源代码文档");
+
+        StageGraph graph = new StageGraph("项目" + projectId)
+            .stage("frontend_code", results -> saveStage(projectId, currentUser, since,
+                    inputHash("frontend_code", appName, appPrompt),
+                    "frontend_code", "前端界面代码.txt", "前端界面代码",
+                    generateFrontendCodeAsync(appName, appPrompt)))
+            .stage("backend_part1", results -> saveStage(projectId, currentUser, since,
+                    inputHash("backend_part1", appName, results.get("frontend_code")),
+                    "backend_part1", "后端Part1代码.txt", "基础架构层代码",
+                    generateBackendPart1Async(appName, results.get("frontend_code"))),
+                "frontend_code")
+            .stage("backend_part2", results -> saveStage(projectId, currentUser, since,
+                    inputHash("backend_part2", appName, results.get("frontend_code"), results.get("backend_part1")),
+                    "backend_part2", "后端Part2代码.txt", "中间件和认证层代码",
+                    generateBackendPart2Async(appName, results.get("frontend_code"), results.get("backend_part1"))),
+                "frontend_code", "backend_part1")
+            .stage("backend_part3", results -> saveStage(projectId, currentUser, since,
+                    inputHash("backend_part3", appName, results.get("frontend_code"), results.get("backend_part1")),
+                    "backend_part3", "后端Part3代码.txt", "业务和API层代码",
+                    generateBackendPart3Async(appName, results.get("frontend_code"), results.get("backend_part1"))),
+                "frontend_code", "backend_part1")
+            .stage("backend_code", results -> saveStage(projectId, currentUser, since,
+                    inputHash("backend_code", results.get("backend_part1"), results.get("backend_part2"), results.get("backend_part3")),
+                    "backend_code", "后端服务代码.txt", "后端服务代码（合并）",
+                    Mono.fromSupplier(() -> mergeBackendParts(results.get("backend_part1"), results.get("backend_part2"), results.get("backend_part3")))),
+                "backend_part1", "backend_part2", "backend_part3")
+            .stage("screenshots", results -> generateAndAwaitScreenshots(projectId, appName, results.get("frontend_code"), since),
+                "frontend_code")
+            .stage("source_code_pdf", results -> {
+                String hash = inputHash("source_code_pdf", appName, results.get("frontend_code"), results.get("backend_code"));
+                return savedArtifact(projectId, "source_code_pdf", since, hash)
+                    .switchIfEmpty(Mono.<CopyrightFile>fromRunnable(() ->
+                            generateAndSaveSourceCodePdf(projectId, appName, results.get("frontend_code"), results.get("backend_code"), currentUser, hash))
+                        .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.DOCUMENT_RENDER)))
+                    .then();
+            }, "frontend_code", "backend_code");
+
+        for (int i = 1; i <= 4; i++) {
+            int chapterNumber = i;
+            String chapterTitle = getChapterTitle(String.valueOf(chapterNumber));
+            stageLabels.put("chapter" + chapterNumber, chapterTitle.split(" ")[0]);
+            graph.stage("chapter" + chapterNumber, results -> {
+                String combinedCode = results.get("frontend_code") + "\n\n" + results.get("backend_code");
+                return saveStage(projectId, currentUser, since, inputHash("chapter" + chapterNumber, appName, combinedCode),
+                    "chapter" + chapterNumber, chapterTitle.replace(' ', '_') + ".txt", chapterTitle,
+                    generateChapterAsync(chapterNumber, appName, combinedCode));
+            }, "frontend_code", "backend_code");
+        }
+        stageLabels.put("copyright_application", "软著申请表");
+
+        // 软著申请表从数据库读取第一章和前后端代码，需等它们保存后再开始
+        return graph.stage("copyright_application", results -> {
+                String hash = inputHash("copyright_application", appName, results.get("chapter1"),
+                    results.get("frontend_code"), results.get("backend_code"));
+                return savedArtifact(projectId, "copyright_application", since, hash)
+                    .switchIfEmpty(Mono.<CopyrightFile>fromRunnable(() -> generateApplicationFormQuietly(projectId, appName, currentUser, hash))
+                        .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.DOCUMENT_RENDER)))
+                    .then();
+            }, "chapter1", "frontend_code", "backend_code")
+            .listener(progressTracker.track(projectId, project.getCreateBy(), project.getStartTime(), stageLabels));
+    }
+
+    /**
+     * 阶段输入的哈希：阶段名和全部输入内容的SHA-256，任一输入变化都会让已有产物失效
+     */
+    private static String inputHash(String... parts) {
         try {
-            
-            CopyrightProject currentProject = copyrightProjectService.getById(projectId);
-            if (currentProject == null) {
-                log.error("项目不存在，停止生成流程，项目ID: {}", projectId);
-                return;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                byte[] bytes = (part != null ? part : "").getBytes(StandardCharsets.UTF_8);
+                digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+                digest.update(bytes);
             }
-            if (!"generating".equals(currentProject.getStatus())) {
-                log.error("项目状态不正确，停止生成流程，项目ID: {}, 当前状态: {}", projectId, currentProject.getStatus());
-                return;
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 启动界面截图并等待截图完成，最多等待5分钟；截图失败不影响后续步骤
+     * 截图随前端代码的输入哈希保存，只复用哈希一致的截图（断点续跑时since为空，前端代码变化后不会误用旧截图）
+     */
+    private Mono<Void> generateAndAwaitScreenshots(String projectId, String appName, String frontendCode, Date since) {
+        String hash = inputHash("screenshots", appName, frontendCode);
+        Mono<Long> savedCount = onDb(() -> copyrightFileService.lambdaQuery()
+            .eq(CopyrightFile::getProjectId, projectId)
+            .eq(CopyrightFile::getFileType, "screenshot")
+            .eq(CopyrightFile::getInputHash, hash)
+            .ge(since != null, CopyrightFile::getCreateTime, since)
+            .count());
+        return savedCount.flatMap(saved -> {
+            if (saved >= 5) {
+                log.info("项目 {} 已有 {} 张可复用的截图，跳过截图阶段", projectId, saved);
+                progressTracker.markReused(projectId, "screenshots");
+                return Mono.<Void>empty();
             }
-            
-            // 1. 生成前端代码
-            copyrightProjectService.updateCurrentStep(projectId, "正在生成前端代码...");
-            String frontendCode = generateFrontendCodeSync(appName, appPrompt);
-            copyrightFileService.saveGeneratedFile(projectId, "frontend_code", "前端界面代码.txt", "前端界面代码", frontendCode, currentUser);
-            log.info("项目 {} 前端代码生成完成", projectId);
-            
-            // 2. 生成后端代码（分三次生成并分别保存）
-            copyrightProjectService.updateCurrentStep(projectId, "正在生成后端代码...");
-            
-            
-            log.info("项目 {} 开始生成Part1：基础架构层", projectId);
-            String part1 = generateBackendPart1(appName, frontendCode);
-            copyrightFileService.saveGeneratedFile(projectId, "backend_part1", "后端Part1代码.txt", "基础架构层代码", part1, currentUser);
-            log.info("项目 {} Part1代码生成完成", projectId);
-            
-            
-            log.info("项目 {} 开始生成Part2：中间件和认证层", projectId);
-            String part2 = generateBackendPart2(appName, frontendCode, part1);
-            copyrightFileService.saveGeneratedFile(projectId, "backend_part2", "后端Part2代码.txt", "中间件和认证层代码", part2, currentUser);
-            log.info("项目 {} Part2代码生成完成", projectId);
-            
-            
-            log.info("项目 {} 开始生成Part3：业务和API层", projectId);
-            String part3 = generateBackendPart3(appName, frontendCode, part1);
-            copyrightFileService.saveGeneratedFile(projectId, "backend_part3", "后端Part3代码.txt", "业务和API层代码", part3, currentUser);
-            log.info("项目 {} Part3代码生成完成", projectId);
-            
-            
-            String backendCode = mergeBackendParts(part1, part2, part3);
-            copyrightFileService.saveGeneratedFile(projectId, "backend_code", "后端服务代码.txt", "后端服务代码（合并）", backendCode, currentUser);
-            log.info("项目 {} 后端代码生成完成（三次生成已全部保存）", projectId);
-            
-            // 3. 生成文档章节
-            String combinedCode = frontendCode + "\n\n" + backendCode;
-            
-            
-            copyrightProjectService.updateCurrentStep(projectId, "正在生成第一章...");
-            String chapter1 = generateChapterSync(1, appName, combinedCode);
-            copyrightFileService.saveGeneratedFile(projectId, "chapter1", "第一章_系统概述.txt", "第一章 系统概述", chapter1, currentUser);
-            log.info("项目 {} 第一章生成完成", projectId);
-            
-            
-            copyrightProjectService.updateCurrentStep(projectId, "正在生成第二章...");
-            String chapter2 = generateChapterSync(2, appName, combinedCode);
-            copyrightFileService.saveGeneratedFile(projectId, "chapter2", "第二章_程序建立过程.txt", "第二章 程序建立过程", chapter2, currentUser);
-            log.info("项目 {} 第二章生成完成", projectId);
+            log.info("项目 {} 开始生成界面截图...", projectId);
+            return awaitScreenshots(projectId, appName, frontendCode, hash);
+        });
+    }
+
+    /**
+     * 截图完成后立即继续，每个功能页截图保存后记录日志
+     */
+    private Mono<Void> awaitScreenshots(String projectId, String appName, String frontendCode, String inputHash) {
+        return Mono.fromFuture(() -> screenshotService.generateScreenshots(appName, frontendCode, null, projectId, inputHash,
+                (functionName, fileName) -> log.info("项目 {} 截图已保存: {}", projectId, functionName),
+                cancellationRegistry.get(projectId)))
+            .doOnNext(result -> log.info("项目 {} 截图生成完成，方式: {}，已保存 {} 张截图",
+                projectId, result.getMode(), result.getSavedCount()))
+            .timeout(Duration.ofSeconds(300), Mono.fromRunnable(() -> log.warn("项目 {} 截图生成超时，继续完成项目", projectId)))
+            .onErrorResume(e -> {
+                log.error("项目 {} 生成界面截图失败", projectId, e);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    /**
+     * 生成并裁剪源代码Word文档，保存PDF到数据库（阻塞操作，需在document-render线程池上执行）
+     */
+    private void generateAndSaveSourceCodePdf(String projectId, String appName, String frontendCode, String backendCode,
+                                              String currentUser, String inputHash) {
+        CancellationToken cancellation = cancellationRegistry.get(projectId);
+        try {
+            log.info("项目 {} 开始生成并裁剪源代码Word文档", projectId);
             
             
-            copyrightProjectService.updateCurrentStep(projectId, "正在生成第三章...");
-            String chapter3 = generateChapterSync(3, appName, combinedCode);
-            copyrightFileService.saveGeneratedFile(projectId, "chapter3", "第三章_程序功能介绍.txt", "第三章 程序功能介绍", chapter3, currentUser);
-            log.info("项目 {} 第三章生成完成", projectId);
+            StringBuilder completeSourceCode = new StringBuilder();
+            completeSourceCode.append(frontendCode).append("\n\n");
+            completeSourceCode.append(backendCode).append("\n");
             
             
-            copyrightProjectService.updateCurrentStep(projectId, "正在生成第四章...");
-            String chapter4 = generateChapterSync(4, appName, combinedCode);
-            copyrightFileService.saveGeneratedFile(projectId, "chapter4", "第四章_总结与展望.txt", "第四章 总结与展望", chapter4, currentUser);
-            log.info("项目 {} 第四章生成完成", projectId);
+            String tempDir = System.getProperty("java.io.tmpdir");
+            String tempWordPath = tempDir + File.separator + "source_code_" + projectId + ".docx";
             
-            log.info("项目 {} 所有章节生成完成", projectId);
+            byte[] sourceDoc = generateWordDocumentWithType(appName, 
+                completeSourceCode.toString(), "source", cancellation);
+            Files.write(Paths.get(tempWordPath), sourceDoc);
+            log.info("项目 {} 初始Word文档已生成", projectId);
             
             
-            log.info("项目 {} 开始生成界面截图...", projectId);
+            byte[] sourcePdf = null;
             try {
-                
-                screenshotService.generateScreenshots(appName, frontendCode, null, projectId);
-                log.info("项目 {} 界面截图生成已启动", projectId);
+                trimWordToMaxPages(tempWordPath, 60, cancellation);
+                log.info("项目 {} Word文档已裁剪到60页以内", projectId);
                 
                 
-                log.info("项目 {} 等待截图生成完成...", projectId);
-                int maxWaitSeconds = 300; // 5分钟
-                int waitedSeconds = 0;
-                boolean screenshotsCompleted = false;
-                
-                while (waitedSeconds < maxWaitSeconds && !screenshotsCompleted) {
-                    Thread.sleep(5000); 
-                    waitedSeconds += 5;
-                    
-                    
-                    List<CopyrightFile> screenshots = copyrightFileService.lambdaQuery()
-                        .eq(CopyrightFile::getProjectId, projectId)
-                        .eq(CopyrightFile::getFileType, "screenshot")
-                        .list();
-                    
-                    if (screenshots.size() >= 5) { 
-                        screenshotsCompleted = true;
-                        log.info("项目 {} 截图生成完成，共生成 {} 张截图", projectId, screenshots.size());
+                String tempPdfPath = tempWordPath.replace(".docx", ".pdf");
+                try {
+                    if (Files.exists(Paths.get(tempPdfPath))) {
+                        sourcePdf = Files.readAllBytes(Paths.get(tempPdfPath));
+                        log.info("项目 {} 源代码PDF文档已读取", projectId);
                     } else {
-                        log.info("项目 {} 截图生成中... 当前已生成 {} 张截图", projectId, screenshots.size());
+                        log.warn("项目 {} 未找到PDF文件: {}", projectId, tempPdfPath);
                     }
+                } catch (Exception pdfEx) {
+                    log.warn("项目 {} 读取PDF文件失败: {}", projectId, pdfEx.getMessage());
                 }
                 
-                if (!screenshotsCompleted) {
-                    log.warn("项目 {} 截图生成超时，继续完成项目", projectId);
-                }
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception trimEx) {
+                log.warn("项目 {} Word裁剪失败，使用原文档: {}", projectId, trimEx.getMessage());
+            } finally {
                 
-            } catch (Exception e) {
-                log.error("项目 {} 生成界面截图失败", projectId, e);
-                
-            }
-            
-            // 4. 生成并裁剪源代码Word文档，保存到数据库
-            try {
-                copyrightProjectService.updateCurrentStep(projectId, "正在生成源代码文档...");
-                log.info("项目 {} 开始生成并裁剪源代码Word文档", projectId);
-                
-                
-                StringBuilder completeSourceCode = new StringBuilder();
-                completeSourceCode.append(frontendCode).append("\n\n");
-                completeSourceCode.append(backendCode).append("\n");
-                
-                
-                String tempDir = System.getProperty("java.io.tmpdir");
-                String tempWordPath = tempDir + File.separator + "source_code_" + projectId + ".docx";
-                
-                byte[] sourceDoc = generateWordDocumentWithType(appName, 
-                    completeSourceCode.toString(), "source");
-                Files.write(Paths.get(tempWordPath), sourceDoc);
-                log.info("项目 {} 初始Word文档已生成", projectId);
-                
-                
-                byte[] sourcePdf = null;
                 try {
-                    trimWordToMaxPages(tempWordPath, 60);
-                    log.info("项目 {} Word文档已裁剪到60页以内", projectId);
-                    sourceDoc = Files.readAllBytes(Paths.get(tempWordPath));
-                    
+                    Files.deleteIfExists(Paths.get(tempWordPath));
                     
                     String tempPdfPath = tempWordPath.replace(".docx", ".pdf");
-                    try {
-                        if (Files.exists(Paths.get(tempPdfPath))) {
-                            sourcePdf = Files.readAllBytes(Paths.get(tempPdfPath));
-                            log.info("项目 {} 源代码PDF文档已读取", projectId);
-                        } else {
-                            log.warn("项目 {} 未找到PDF文件: {}", projectId, tempPdfPath);
-                        }
-                    } catch (Exception pdfEx) {
-                        log.warn("项目 {} 读取PDF文件失败: {}", projectId, pdfEx.getMessage());
-                    }
-                    
-                } catch (Exception trimEx) {
-                    log.warn("项目 {} Word裁剪失败，使用原文档: {}", projectId, trimEx.getMessage());
-                } finally {
-                    
-                    try {
-                        Files.deleteIfExists(Paths.get(tempWordPath));
-                        
-                        String tempPdfPath = tempWordPath.replace(".docx", ".pdf");
-                        Files.deleteIfExists(Paths.get(tempPdfPath));
-                    } catch (Exception ignored) {}
-                }
-                
-                
-                if (sourcePdf != null) {
-                    String base64Pdf = java.util.Base64.getEncoder().encodeToString(sourcePdf);
-                    copyrightFileService.saveGeneratedFile(projectId, "source_code_pdf", 
-                        appName + "-源代码文档.pdf", "源代码PDF文档", base64Pdf, currentUser);
-                    log.info("项目 {} 源代码PDF文档已保存到数据库", projectId);
-                } else {
-                    log.warn("项目 {} PDF文档生成失败，未保存", projectId);
-                }
-                
-            } catch (Exception e) {
-                log.error("项目 {} 生成源代码Word文档失败", projectId, e);
-                
+                    Files.deleteIfExists(Paths.get(tempPdfPath));
+                } catch (Exception ignored) {}
             }
             
-            // 5. 生成软著申请表（在完成前生成）
-            try {
-                log.info("项目 {} 开始生成软著申请表...", projectId);
-                copyrightProjectService.updateCurrentStep(projectId, "正在生成软著申请表...");
-                
-                
-                generateAndSaveCopyrightApplicationForm(projectId, appName, currentUser);
-                
-                log.info("项目 {} 软著申请表生成完成", projectId);
-            } catch (Exception e) {
-                log.error("项目 {} 生成软著申请表失败", projectId, e);
-                
+            
+            if (sourcePdf != null) {
+                copyrightFileService.saveGeneratedBinaryFile(projectId, "source_code_pdf",
+                    appName + "-源代码文档.pdf", "源代码PDF文档", sourcePdf, MediaType.APPLICATION_PDF_VALUE, currentUser, inputHash);
+                log.info("项目 {} 源代码PDF文档已保存到数据库", projectId);
+            } else {
+                log.warn("项目 {} PDF文档生成失败，未保存", projectId);
             }
             
-            // 6. 更新项目状态为完成（进度会自动更新为100%）
-            copyrightProjectService.updateStatus(projectId, "completed");
-            copyrightProjectService.updateCurrentStep(projectId, "生成完成");
-            copyrightProjectService.updateProgress(projectId, 100);
+        } catch (CancellationException e) {
+            log.info("项目 {} 已取消，停止生成源代码文档", projectId);
+        } catch (Exception e) {
+            log.error("项目 {} 生成源代码Word文档失败", projectId, e);
+            
+        }
+    }
+
+    /**
+     * 生成软著申请表，失败只记录日志（阻塞操作，需在document-render线程池上执行）
+     */
+    private void generateApplicationFormQuietly(String projectId, String appName, String currentUser, String inputHash) {
+        try {
+            log.info("项目 {} 开始生成软著申请表...", projectId);
+            
             
-            log.info("项目 {} 生成流程完成", projectId);
+            LlmCallContext.runForProject(projectId,
+                () -> generateAndSaveCopyrightApplicationForm(projectId, appName, currentUser, inputHash));
             
+            log.info("项目 {} 软著申请表生成完成", projectId);
+        } catch (CancellationException e) {
+            log.info("项目 {} 已取消，停止生成软著申请表", projectId);
         } catch (Exception e) {
-            log.error("项目 {} 生成流程执行失败", projectId, e);
-            copyrightProjectService.updateStatus(projectId, "error");
-            copyrightProjectService.updateCurrentStep(projectId, "生成失败: " + e.getMessage());
-            throw e;
+            log.error("项目 {} 生成软著申请表失败", projectId, e);
+            
         }
     }
-    
+
     /**
-     * 启动进度模拟任务（15分钟内从0%到99%）
+     * 生成内容后连同输入哈希保存到数据库，返回生成的内容；已有有效产物时直接复用
      */
-    private void startProgressSimulation(String projectId) {
-        log.info("启动进度模拟任务，项目ID: {}", projectId);
-        CompletableFuture.runAsync(() -> {
-            try {
-                int totalDurationMs = 15 * 60 * 1000; // 15分钟
-                int updateIntervalMs = 5 * 1000; 
-                int totalUpdates = totalDurationMs / updateIntervalMs; 
-                
-                log.info("进度模拟参数 - 总时长: {}ms, 更新间隔: {}ms, 总更新次数: {}", 
-                    totalDurationMs, updateIntervalMs, totalUpdates);
-                
-                for (int i = 1; i <= totalUpdates; i++) {
-                    Thread.sleep(updateIntervalMs);
-                    
-                    
-                    CopyrightProject project = copyrightProjectService.getById(projectId);
-                    if (project == null) {
-                        log.warn("项目 {} 不存在，停止进度模拟", projectId);
-                        break;
-                    }
-                    if (!"generating".equals(project.getStatus())) {
-                        log.info("项目 {} 状态已变更为 {}，停止进度模拟", projectId, project.getStatus());
-                        break; 
-                    }
-                    
-                    
-                    int progress = Math.min(99, (i * 99) / totalUpdates);
-                    
-                    
-                    copyrightProjectService.updateProgress(projectId, progress);
-                    log.debug("项目 {} 进度更新: {}% (第{}次更新)", projectId, progress, i);
-                    
-                    
-                    if (progress >= 99) {
-                        log.info("项目 {} 进度模拟已达到99%，等待实际生成完成", projectId);
-                        break;
-                    }
+    private Mono<String> saveStage(String projectId, String currentUser, Date since, String inputHash, String fileType,
+                                   String fileName, String description, Mono<String> generation) {
+        return savedArtifact(projectId, fileType, since, inputHash)
+            .flatMap(file -> onDb(() -> copyrightFileService.getContent(file.getId())))
+            .switchIfEmpty(generation.flatMap(content -> onDbRun(() ->
+                    copyrightFileService.saveGeneratedFile(projectId, fileType, fileName, description, content, currentUser, inputHash))
+                .thenReturn(content)));
+    }
+
+    /**
+     * 查询可复用的已有产物：输入哈希必须一致；since不为空时还要求产物在since之后保存
+     * （普通任务只复用本次任务生成的产物，断点续跑的任务since为空，复用输入未变化的全部产物）
+     * 只查询元数据，需要内容时由调用方单独读取
+     */
+    private Mono<CopyrightFile> savedArtifact(String projectId, String fileType, Date since, String inputHash) {
+        return onDb(() -> copyrightFileService.getFileMetaByProjectIdAndType(projectId, fileType))
+            .filter(file -> {
+                boolean hasContent = file.getContentSize() != null && file.getContentSize() > 0;
+                if (!hasContent || !inputHash.equals(file.getInputHash())) {
+                    return false;
                 }
-            } catch (InterruptedException e) {
-                log.warn("项目 {} 进度模拟任务被中断: {}", projectId, e.getMessage());
-                Thread.currentThread().interrupt();
-            } catch (Exception e) {
-                log.error("项目 {} 进度模拟任务异常: {}", projectId, e.getMessage(), e);
-            }
-        });
+                Date savedAt = file.getUpdateTime() != null ? file.getUpdateTime() : file.getCreateTime();
+                return since == null || (savedAt != null && !savedAt.before(since));
+            })
+            .doOnNext(file -> {
+                log.info("项目 {} 复用已保存的产物: {}", projectId, fileType);
+                progressTracker.markReused(projectId, fileType);
+            });
+    }
+
+    /**
+     * 在数据库调度器上执行查询，结果为null时返回空Mono
+     */
+    private <T> Mono<T> onDb(Callable<T> query) {
+        return Mono.fromCallable(query).subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.DB));
+    }
+
+    private Mono<Void> onDbRun(Runnable update) {
+        return Mono.fromRunnable(update).subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.DB)).then();
     }
     
     /**
      * 同步生成前端代码
      */
     public String generateFrontendCodeSync(String appName, String appPrompt) {
-        log.info("开始同步生成前端代码: appName={}", appName);
+        return generateFrontendCodeAsync(appName, appPrompt).block();
+    }
+
+    /**
+     * 异步生成前端代码
+     */
+    public Mono<String> generateFrontendCodeAsync(String appName, String appPrompt) {
+        log.info("开始生成前端代码: appName={}", appName);
         
-        String prompt = String.format(
-            "请为我创建一个名为%s的完整前端HTML界面，要满足以下条件：\n" +
+        return callDeepSeekAsync(buildFrontendCodePrompt(appName), HIGH_COST_MODEL, 60000)
+            .map(completeCode -> {
+                log.info("前端代码生成完成: {}", appName);
+                return ensureCompleteHtml(completeCode, appName);
+            });
+    }
+
+    /**
+     * 校验生成的HTML，不完整时先修复，修复失败使用默认HTML
+     */
+    private String ensureCompleteHtml(String completeCode, String appName) {
+        if (!validateCompleteHtml(completeCode)) {
+            log.warn("生成的HTML验证失败，尝试修复");
+            completeCode = fixCompleteHtml(completeCode, appName);
+            
+            
+            if (!validateCompleteHtml(completeCode)) {
+                log.warn("修复失败，使用默认HTML");
+                completeCode = generateDefaultCompleteHtml(appName);
+            }
+        }
+        return completeCode;
+    }
+
+    /**
+     * 前端代码提示词：固定要求在前，应用名称放在最后，保证各项目共享同一前缀
+     */
+    private LlmPrompt buildFrontendCodePrompt(String appName) {
+        return LlmPrompt.builder("frontend").instruction(
+            "请为用户消息中【应用名称】给出的应用创建完整的前端HTML界面，要满足以下条件：\n" +
             "1. 必须包含完整的HTML文档结构：<!DOCTYPE html><html lang=\"zh-CN\"><head>...</head><body>...</body></html>\n" +
             "2. 使用Bootstrap 5 CSS框架：<link href=\"https://cdnjs.cloudflare.com/ajax/libs/bootstrap/5.3.0/css/bootstrap.min.css\" rel=\"stylesheet\">\n" +
             "3. 使用Font Awesome图标：<link rel=\"stylesheet\" href=\"https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.0.0/css/all.min.css\">\n" +
             "4. 使用Bootstrap JS：<script src=\"https://cdnjs.cloudflare.com/ajax/libs/bootstrap/5.3.0/js/bootstrap.bundle.min.js\"></script>\n" +
-            "4. 包含完整的CSS样式定义在<style>标签中，实现现代化美观界面\n" +
-            "5. **必须包含导航栏和5个主要功能区域**：首页、用户管理、数据分析、系统设置、消息中心\n" +
-            "6. **每个功能必须可点击切换**：使用JavaScript实现功能切换，每个功能显示不同的内容\n" +
-            "7. **功能按钮要求**：每个功能按钮必须有唯一的id属性，格式为：home-btn, user-btn, data-btn, settings-btn, message-btn\n" +
-            "8. **内容区域要求**：每个功能对应的内容区域必须有唯一的id属性，格式为：home-content, user-content, data-content, settings-content, message-content\n" +
-            "6. 每个功能区域都要有3-4个可视化的子功能，使用Bootstrap组件（卡片、表格、按钮等）\n" +
-            "7. 必须包含这一行：<h4 class='text-center mb-4'><i class='fas fa-industry'></i> %s</h4>\n" +
-            "8. 界面要美观、响应式，使用现代化设计风格和合理的色彩搭配\n" +
-            "9. 数据分析页面使用纯数字展示，不要图表，用数字和进度条表示\n" +
-            "10. 所有文本和注释使用中文\n" +
-            "11. **必须包含JavaScript代码**：实现功能切换，包含以下函数：\n" +
+            "5. 包含完整的CSS样式定义在<style>标签中，实现现代化美观界面\n" +
+            "6. **必须包含导航栏和5个主要功能区域**：首页、用户管理、数据分析、系统设置、消息中心\n" +
+            "7. **每个功能必须可点击切换**：使用JavaScript实现功能切换，每个功能显示不同的内容\n" +
+            "8. **功能按钮要求**：每个功能按钮必须有唯一的id属性，格式为：home-btn, user-btn, data-btn, settings-btn, message-btn\n" +
+            "9. **内容区域要求**：每个功能对应的内容区域必须有唯一的id属性，格式为：home-content, user-content, data-content, settings-content, message-content\n" +
+            "10. 每个功能区域都要有3-4个可视化的子功能，使用Bootstrap组件（卡片、表格、按钮等）\n" +
+            "11. 必须包含这一行：<h4 class='text-center mb-4'><i class='fas fa-industry'></i> 应用名称</h4>，其中\"应用名称\"替换为【应用名称】的内容\n" +
+            "12. 界面要美观、响应式，使用现代化设计风格和合理的色彩搭配\n" +
+            "13. 数据分析页面使用纯数字展示，不要图表，用数字和进度条表示\n" +
+            "14. 所有文本和注释使用中文\n" +
+            "15. **必须包含JavaScript代码**：实现功能切换，包含以下函数：\n" +
             "    - showContent(contentId): 切换显示指定的功能内容\n" +
             "    - 每个功能按钮的点击事件处理\n" +
             "    - 确保默认显示首页内容\n" +
-            "12. 确保HTML结构完整且有效，可以直接在浏览器中渲染\n" +
-            "13. 控制在合理长度内，但要内容丰富\n" +
-            "14. **重要约束**：\n" +
+            "16. 确保HTML结构完整且有效，可以直接在浏览器中渲染\n" +
+            "17. 控制在合理长度内，但要内容丰富\n" +
+            "18. **重要约束**：\n" +
             "    - 直接以<!DOCTYPE html>开头，不要有任何中文说明\n" +
             "    - 直接以</html>结尾，不要有任何中文说明\n" +
             "    - 不要使用```html或```代码块标记\n" +
             "    - 不要在HTML代码前后添加任何解释文字\n" +
             "    - 只返回纯HTML代码，不要任何其他内容\n" +
-            "请提供完整的HTML代码。",
-            appName, appName
-        );
-        
-        
-        String completeCode = callDeepSeekAPIWithHighTokens(prompt, 60000);
-        log.info("前端代码同步生成完成: {}", appName);
-        
-        
-        if (!validateCompleteHtml(completeCode)) {
-            log.warn("生成的HTML验证失败，尝试修复");
-            completeCode = fixCompleteHtml(completeCode, appName);
-            
-            
-            if (!validateCompleteHtml(completeCode)) {
-                log.warn("修复失败，使用默认HTML");
-                completeCode = generateDefaultCompleteHtml(appName);
-            }
-        }
-        
-        return completeCode;
+            "请提供完整的HTML代码。")
+            .payload("应用名称", appName)
+            .build();
     }
     
     /**
      * 同步生成后端代码 - 分三次生成策略
      */
     public String generateBackendCodeSync(String appName, String frontendCode) {
+        return generateBackendCodeAsync(appName, frontendCode).block();
+    }
+
+    /**
+     * 异步生成后端代码 - 分三次生成策略
+     */
+    public Mono<String> generateBackendCodeAsync(String appName, String frontendCode) {
         log.info("开始分三次生成后端代码: appName={}", appName);
         
         
         log.info("第1次生成：基础架构层（config, models, utils）");
-        String part1 = generateBackendPart1(appName, frontendCode);
-        log.info("第1次生成完成，长度: {} 字符", part1.length());
-        
-        
-        log.info("第2次生成：中间件和认证层（middleware, validators, auth）");
-        String part2 = generateBackendPart2(appName, frontendCode, part1);
-        log.info("第2次生成完成，长度: {} 字符", part2.length());
-        
-        
-        log.info("第3次生成：业务和API层（services, api_routes, app）");
-        String part3 = generateBackendPart3(appName, frontendCode, part1);
-        log.info("第3次生成完成，长度: {} 字符", part3.length());
-        
-        
-        String mergedCode = mergeBackendParts(part1, part2, part3);
-        log.info("后端代码合并完成，总长度: {} 字符（约{}行）", mergedCode.length(), mergedCode.split("\n").length);
-        
-        return mergedCode;
+        return generateBackendPart1Async(appName, frontendCode)
+            .flatMap(part1 -> {
+                log.info("第1次生成完成，长度: {} 字符", part1.length());
+                log.info("第2次生成：中间件和认证层（middleware, validators, auth）");
+                return generateBackendPart2Async(appName, frontendCode, part1)
+                    .flatMap(part2 -> {
+                        log.info("第2次生成完成，长度: {} 字符", part2.length());
+                        log.info("第3次生成：业务和API层（services, api_routes, app）");
+                        return generateBackendPart3Async(appName, frontendCode, part1)
+                            .map(part3 -> {
+                                log.info("第3次生成完成，长度: {} 字符", part3.length());
+                                return mergeBackendParts(part1, part2, part3);
+                            });
+                    });
+            })
+            .doOnNext(mergedCode -> log.info("后端代码合并完成，总长度: {} 字符（约{}行）", mergedCode.length(), mergedCode.split("\n").length));
     }
     
     /**
      * 第1次生成：基础架构层（config, models, utils）
      */
-    private String generateBackendPart1(String appName, String frontendCode) {
-        String prompt = String.format(
-            "为%s生成Python Flask后端的基础架构层代码（第1/2部分）。\n\n" +
+    private Mono<String> generateBackendPart1Async(String appName, String frontendCode) {
+        LlmPrompt prompt = LlmPrompt.builder("backend_part1").instruction(
+            "为用户消息中【应用名称】给出的应用生成Python Flask后端的基础架构层代码（第1/2部分）。\n\n" +
             "【生成内容】：\n" +
             "1. config.py - 配置管理（200行）\n" +
             "2. models.py - SQLAlchemy数据模型，12-15个表（650行）\n" +
@@ -725,26 +919,24 @@ public class CopyrightAIController {
             "   ✓ 正确：result = (\n" +
             "            service.get(\n" +
             "            user_id))\n" +
-            "4. **检查每一行，确保没有任何一行超过70字符**\n\n" +
-            "前端代码参考：\n%s",
-            appName,
-            frontendCode.length() > 8000 ? frontendCode.substring(0, 8000) : frontendCode
-        );
+            "4. **检查每一行，确保没有任何一行超过70字符**")
+            .payload("应用名称", appName)
+            .payload("前端代码参考", frontendCode.length() > 8000 ? frontendCode.substring(0, 8000) : frontendCode)
+            .build();
         
         
-        return callDeepSeekAPIWithHighTokens(prompt, 16000);
+        return callDeepSeekAsync(prompt, HIGH_COST_MODEL, 16000);
     }
     
     /**
      * 第2次生成：中间件和认证层（middleware, validators, auth）
      */
-    private String generateBackendPart2(String appName, String frontendCode, String part1Code) {
+    private Mono<String> generateBackendPart2Async(String appName, String frontendCode, String part1Code) {
         
         String modelsCode = extractModelsFromPart1(part1Code);
         
-        String prompt = String.format(
-            "基于以下数据模型，为%s生成Python Flask后端的中间件和认证层代码（第2/3部分）。\n\n" +
-            "【已有的数据模型】：\n%s\n\n" +
+        LlmPrompt prompt = LlmPrompt.builder("backend_part2").instruction(
+            "基于用户消息中【已有的数据模型】，为【应用名称】给出的应用生成Python Flask后端的中间件和认证层代码（第2/3部分）。\n\n" +
             "【生成内容】：\n" +
             "1. middleware.py - 中间件层（日志记录、异常处理、CORS、请求限流、性能监控、缓存）（300行）\n" +
             "2. validators.py - 数据验证器（所有模型的输入验证、业务规则验证、表单验证）（250行）\n" +
@@ -772,27 +964,25 @@ public class CopyrightAIController {
             "   ❌ 错误（77字符）：logger.info(f\"User {user_id} logged in successfully at {timestamp}\")\n" +
             "   ✓ 正确：logger.info(\n" +
             "            f\"User {id}\")\n" +
-            "4. **检查每一行，确保没有任何一行超过70字符**\n\n" +
-            "前端代码参考：\n%s",
-            appName,
-            modelsCode.length() > 2000 ? modelsCode.substring(0, 2000) : modelsCode,
-            frontendCode.length() > 6000 ? frontendCode.substring(0, 6000) : frontendCode
-        );
+            "4. **检查每一行，确保没有任何一行超过70字符**")
+            .payload("应用名称", appName)
+            .payload("已有的数据模型", modelsCode.length() > 2000 ? modelsCode.substring(0, 2000) : modelsCode)
+            .payload("前端代码参考", frontendCode.length() > 6000 ? frontendCode.substring(0, 6000) : frontendCode)
+            .build();
         
         
-        return callDeepSeekAPIWithHighTokens(prompt, 16000);
+        return callDeepSeekAsync(prompt, HIGH_COST_MODEL, 16000);
     }
     
     /**
      * 第3次生成：业务和API层（services, api_routes, app）
      */
-    private String generateBackendPart3(String appName, String frontendCode, String part1Code) {
+    private Mono<String> generateBackendPart3Async(String appName, String frontendCode, String part1Code) {
         
         String modelsCode = extractModelsFromPart1(part1Code);
         
-        String prompt = String.format(
-            "基于以下数据模型，为%s生成Python Flask后端的业务和API层代码（第3/3部分）。\n\n" +
-            "【已有的数据模型】：\n%s\n\n" +
+        LlmPrompt prompt = LlmPrompt.builder("backend_part3").instruction(
+            "基于用户消息中【已有的数据模型】，为【应用名称】给出的应用生成Python Flask后端的业务和API层代码（第3/3部分）。\n\n" +
             "【生成内容】：\n" +
             "1. services.py - 业务逻辑层（完整的CRUD操作、业务规则、数据处理、事务管理）（400行）\n" +
             "2. api_routes.py - RESTful API，60-70个端点（包含所有CRUD操作、搜索、统计、导出）（900行）\n" +
@@ -823,15 +1013,14 @@ public class CopyrightAIController {
             "            Service\n" +
             "            .get(id))\n" +
             "4. **特别注意：API路由装饰器也必须遵守70字符限制**\n" +
-            "5. **检查每一行，确保没有任何一行超过70字符**\n\n" +
-            "前端代码参考：\n%s",
-            appName,
-            modelsCode.length() > 2000 ? modelsCode.substring(0, 2000) : modelsCode,
-            frontendCode.length() > 6000 ? frontendCode.substring(0, 6000) : frontendCode
-        );
+            "5. **检查每一行，确保没有任何一行超过70字符**")
+            .payload("应用名称", appName)
+            .payload("已有的数据模型", modelsCode.length() > 2000 ? modelsCode.substring(0, 2000) : modelsCode)
+            .payload("前端代码参考", frontendCode.length() > 6000 ? frontendCode.substring(0, 6000) : frontendCode)
+            .build();
         
         
-        return callDeepSeekAPIWithHighTokens(prompt, 16000);
+        return callDeepSeekAsync(prompt, HIGH_COST_MODEL, 16000);
     }
     
     /**
@@ -990,18 +1179,16 @@ public class CopyrightAIController {
     }
     
     /**
-     * 同步生成章节内容
+     * 异步生成章节内容
      */
-    private String generateChapterSync(int chapterNumber, String appName, String code) {
-        log.info("开始同步生成第{}章: appName={}", chapterNumber, appName);
-        
-        String prompt = generateChapterPrompt(chapterNumber, appName, code);
+    private Mono<String> generateChapterAsync(int chapterNumber, String appName, String code) {
+        log.info("开始生成第{}章: appName={}", chapterNumber, appName);
         
+        LlmPrompt prompt = generateChapterPrompt(chapterNumber, appName, code);
         
-        String chapterContent = callDeepSeekChatAPI(prompt, 8000);
-        log.info("第{}章同步生成完成: {}, 长度: {}", chapterNumber, appName, chapterContent.length());
         
-        return chapterContent;
+        return callDeepSeekAsync(prompt, LOW_COST_MODEL, 8000)
+            .doOnNext(chapterContent -> log.info("第{}章生成完成: {}, 长度: {}", chapterNumber, appName, chapterContent.length()));
     }
 
     /**
@@ -1014,6 +1201,23 @@ public class CopyrightAIController {
             String currentUserInfo = getCurrentUserInfo();
             log.info("获取项目状态，项目ID: {}, 用户: {}", projectId, currentUserInfo);
             
+            // 本节点正在生成的项目直接返回内存中的进度，不查询数据库
+            ProgressTracker.Snapshot snapshot = progressTracker.snapshot(projectId);
+            if (snapshot != null) {
+                if (!"system".equals(currentUserId) && !currentUserId.equals(snapshot.getCreateBy())) {
+                    return Result.error("无权限查看此项目状态");
+                }
+                Map<String, Object> result = new HashMap<>();
+                result.put("projectId", projectId);
+                result.put("status", "generating");
+                result.put("progress", snapshot.getProgress());
+                result.put("currentStep", snapshot.getCurrentStep());
+                result.put("completedFiles", snapshot.getCompletedStages());
+                result.put("generatingFiles", snapshot.getRunningStages());
+                result.put("startTime", snapshot.getStartTime());
+                result.put("endTime", null);
+                return Result.OK("获取项目状态成功", result);
+            }
             
             CopyrightProject project = copyrightProjectService.getById(projectId);
             if (project == null) {
@@ -1036,6 +1240,15 @@ public class CopyrightAIController {
             result.put("startTime", project.getStartTime());
             result.put("endTime", project.getEndTime());
             
+            // 仍在排队的项目返回排队位置和预计开始时间
+            if ("generating".equals(project.getStatus())) {
+                Map<String, Object> queueStatus = generationJobRunner.queueStatus(projectId);
+                if (queueStatus != null) {
+                    result.putAll(queueStatus);
+                    result.put("currentStep", "排队中，前面还有 " + ((int) queueStatus.get("queuePosition") - 1) + " 个任务");
+                }
+            }
+            
             return Result.OK("获取项目状态成功", result);
         } catch (Exception e) {
             log.error("获取项目状态失败", e);
@@ -1043,6 +1256,40 @@ public class CopyrightAIController {
         }
     }
 
+    /**
+     * 获取项目的大模型调用汇总（按阶段统计token、耗时、重试和费用）
+     */
+    @GetMapping("/copyright/projects/{projectId}/llm-usage")
+    public Result<Map<String, Object>> getProjectLlmUsage(@PathVariable String projectId) {
+        try {
+            String currentUserId = getCurrentUserId();
+            CopyrightProject project = copyrightProjectService.getById(projectId);
+            if (project == null) {
+                return Result.error("项目不存在");
+            }
+            if (!"system".equals(currentUserId) && !currentUserId.equals(project.getCreateBy())) {
+                return Result.error("无权限查看此项目");
+            }
+            return Result.OK("获取调用汇总成功", copyrightLlmCallService.getProjectUsage(projectId));
+        } catch (Exception e) {
+            log.error("获取项目调用汇总失败", e);
+            return Result.error("获取项目调用汇总失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取最近若干天各阶段的大模型调用汇总，用于定位耗时最长的阶段和调整token预算
+     */
+    @GetMapping("/copyright/llm-usage/stages")
+    public Result<List<Map<String, Object>>> getStageLlmUsage(@RequestParam(defaultValue = "7") int days) {
+        try {
+            return Result.OK("获取调用汇总成功", copyrightLlmCallService.getStageUsage(Math.max(1, days)));
+        } catch (Exception e) {
+            log.error("获取阶段调用汇总失败", e);
+            return Result.error("获取阶段调用汇总失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 删除项目
      */
@@ -1065,6 +1312,10 @@ public class CopyrightAIController {
                 return Result.error("无权限删除此项目");
             }
             
+            // 先取消仍在进行的生成，释放大模型请求和浏览器会话，再删除数据
+            if ("generating".equals(project.getStatus())) {
+                generationJobRunner.cancel(projectId);
+            }
             
             copyrightFileService.deleteByProjectId(projectId);
             
@@ -1078,6 +1329,41 @@ public class CopyrightAIController {
         }
     }
 
+    /**
+     * 取消项目生成：排队中的任务不再执行，执行中的任务立即断开大模型请求并关闭浏览器，已保存的产物保留，可断点续跑
+     */
+    @PostMapping("/copyright/projects/{projectId}/cancel")
+    public Result<Map<String, Object>> cancelProjectGeneration(@PathVariable String projectId) {
+        try {
+            String currentUserId = getCurrentUserId();
+            String currentUserInfo = getCurrentUserInfo();
+            log.info("取消项目生成，项目ID: {}, 用户: {}", projectId, currentUserInfo);
+            
+            CopyrightProject project = copyrightProjectService.getById(projectId);
+            if (project == null) {
+                return Result.error("项目不存在");
+            }
+            if (!"system".equals(currentUserId) && !currentUserId.equals(project.getCreateBy())) {
+                return Result.error("无权限取消此项目");
+            }
+            if (!copyrightProjectService.checkAndUpdateStatus(projectId, "generating", "cancelled")) {
+                return Result.error("项目不在生成中，无法取消");
+            }
+            
+            generationJobRunner.cancel(projectId);
+            progressTracker.finish(projectId);
+            copyrightProjectService.updateCurrentStep(projectId, "已取消");
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("projectId", projectId);
+            result.put("status", "cancelled");
+            return Result.OK("项目生成已取消", result);
+        } catch (Exception e) {
+            log.error("取消项目生成失败", e);
+            return Result.error("取消项目生成失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 流式生成前端代码 - 使用DeepSeek Reasoner
      */
@@ -1089,100 +1375,62 @@ public class CopyrightAIController {
 
         SseEmitter emitter = new SseEmitter(900000L); // 15分钟超时
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                String appName = request.get("appName");
-                String appPrompt = request.get("appPrompt");
-                String projectId = request.get("projectId");
+        String appName = request.get("appName");
+        String appPrompt = request.get("appPrompt");
+        String projectId = request.get("projectId");
+        String currentUserId = projectId != null && !projectId.isEmpty() ? getCurrentUserId() : null;
 
-                log.info("开始流式一次性生成完整前端代码: appName={}", appName);
+        log.info("开始流式一次性生成完整前端代码: appName={}", appName);
 
-                
-                sendProgress(emitter, 10, "正在生成完整前端代码...");
+        
+        sendProgress(emitter, 10, "正在生成完整前端代码...");
 
-                
-                String prompt = String.format(
-                    "请为我创建一个名为%s的完整前端HTML界面，要满足以下条件：\n" +
-                    "1. 必须包含完整的HTML文档结构：<!DOCTYPE html><html lang=\"zh-CN\"><head>...</head><body>...</body></html>\n" +
-                    "2. 使用Bootstrap 5 CSS框架：<link href=\"https://cdnjs.cloudflare.com/ajax/libs/bootstrap/5.3.0/css/bootstrap.min.css\" rel=\"stylesheet\">\n" +
-                    "3. 使用Font Awesome图标：<link rel=\"stylesheet\" href=\"https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.0.0/css/all.min.css\">\n" +
-                    "4. 使用Bootstrap JS：<script src=\"https://cdnjs.cloudflare.com/ajax/libs/bootstrap/5.3.0/js/bootstrap.bundle.min.js\"></script>\n" +
-                    "5. 包含完整的CSS样式定义在<style>标签中，实现现代化美观界面\n" +
-                    "6. **必须包含导航栏和5个主要功能区域**：首页、用户管理、数据分析、系统设置、消息中心\n" +
-                    "7. **每个功能必须可点击切换**：使用JavaScript实现功能切换，每个功能显示不同的内容\n" +
-                    "8. **功能按钮要求**：每个功能按钮必须有唯一的id属性，格式为：home-btn, user-btn, data-btn, settings-btn, message-btn\n" +
-                    "9. **内容区域要求**：每个功能对应的内容区域必须有唯一的id属性，格式为：home-content, user-content, data-content, settings-content, message-content\n" +
-                    "10. 每个功能区域都要有3-4个可视化的子功能，使用Bootstrap组件（卡片、表格、按钮等）\n" +
-                    "11. 必须包含这一行：<h4 class='text-center mb-4'><i class='fas fa-industry'></i> %s</h4>\n" +
-                    "12. 界面要美观、响应式，使用现代化设计风格和合理的色彩搭配\n" +
-                    "13. 数据分析页面使用纯数字展示，不要图表，用数字和进度条表示\n" +
-                    "14. 所有文本和注释使用中文\n" +
-                    "15. **必须包含JavaScript代码**：实现功能切换，包含以下函数：\n" +
-                    "    - showContent(contentId): 切换显示指定的功能内容\n" +
-                    "    - 每个功能按钮的点击事件处理\n" +
-                    "    - 确保默认显示首页内容\n" +
-                    "16. 确保HTML结构完整且有效，可以直接在浏览器中渲染\n" +
-                    "17. 控制在合理长度内，但要内容丰富\n" +
-                    "18. **重要约束**：\n" +
-                    "    - 直接以<!DOCTYPE html>开头，不要有任何中文说明\n" +
-                    "    - 直接以</html>结尾，不要有任何中文说明\n" +
-                    "    - 不要使用```html或```代码块标记\n" +
-                    "    - 不要在HTML代码前后添加任何解释文字\n" +
-                    "    - 只返回纯HTML代码，不要任何其他内容\n" +
-                    "请提供完整的HTML代码。",
-                    appName, appName
-                );
+        
+        LlmPrompt prompt = buildFrontendCodePrompt(appName);
 
-                
-                String completeCode = callDeepSeekAPIWithHighTokens(prompt, 60000);
-                // log.info("前端代码一次性生成完成: {}, 长度: {}", appName, completeCode.length());
-                log.info("前端代码一次性生成完成: {}", appName);
+        
+        Disposable subscription = streamDeepSeekToEmitter(emitter, prompt, HIGH_COST_MODEL, 60000, "generatedCode")
+            .publishOn(workloadExecutors.scheduler(WorkloadExecutors.SSE))
+            .subscribe(generatedCode -> {
+                try {
+                    log.info("前端代码一次性生成完成: {}", appName);
+                    String completeCode = ensureCompleteHtml(generatedCode, appName);
+
+                    
+                    if (projectId != null && !projectId.isEmpty()) {
+                        copyrightFileService.saveGeneratedFile(
+                            projectId, 
+                            "frontend_code", 
+                            "前端界面代码.html", 
+                            "前端界面代码", 
+                            completeCode, 
+                            currentUserId
+                        );
+                        log.info("前端代码已保存到数据库: projectId={}", projectId);
+                    }
 
-                
-                if (!validateCompleteHtml(completeCode)) {
-                    log.warn("生成的HTML验证失败，尝试修复");
-                    completeCode = fixCompleteHtml(completeCode, appName);
+                    
+                    sendProgress(emitter, 90, "前端代码生成完成，正在验证...");
 
                     
-                    if (!validateCompleteHtml(completeCode)) {
-                        log.warn("修复失败，使用默认HTML");
-                        completeCode = generateDefaultCompleteHtml(appName);
-                    }
-                }
+                    Map<String, Object> completeData = new HashMap<>();
+                    completeData.put("progress", 100);
+                    completeData.put("completed", true);
+                    completeData.put("fullCode", completeCode);
+                    completeData.put("stage", "前端代码生成完成");
+                    emitter.send(SseEmitter.event().name("data").data(completeData));
+                    emitter.complete();
 
-                
-                if (projectId != null && !projectId.isEmpty()) {
-                    copyrightFileService.saveGeneratedFile(
-                        projectId, 
-                        "frontend_code", 
-                        "前端界面代码.html", 
-                        "前端界面代码", 
-                        completeCode, 
-                        getCurrentUserId()
-                    );
-                    log.info("前端代码已保存到数据库: projectId={}", projectId);
+                    log.info("流式前端代码生成完成: appName={}", appName);
+                } catch (Exception e) {
+                    log.error("流式生成前端代码失败", e);
+                    sendError(emitter, "生成前端代码失败: " + e.getMessage());
                 }
-
-                
-                sendProgress(emitter, 90, "前端代码生成完成，正在验证...");
-
-                
-                Map<String, Object> completeData = new HashMap<>();
-                completeData.put("progress", 100);
-                completeData.put("completed", true);
-                completeData.put("fullCode", completeCode);
-                completeData.put("stage", "前端代码生成完成");
-                emitter.send(SseEmitter.event().name("data").data(completeData));
-                emitter.complete();
-
-                                        // log.info("流式前端代码生成完成: appName={}, 总长度={}", appName, completeCode.length());
-                log.info("流式前端代码生成完成: appName={}", appName);
-
-            } catch (Exception e) {
+            }, e -> {
                 log.error("流式生成前端代码失败", e);
                 sendError(emitter, "生成前端代码失败: " + e.getMessage());
-            }
-        });
+            });
+        disposeOnDisconnect(emitter, subscription);
 
         return emitter;
     }
@@ -1198,81 +1446,85 @@ public class CopyrightAIController {
 
         SseEmitter emitter = new SseEmitter(900000L); // 15分钟超时
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                String appName = request.get("appName");
-                String frontendCode = request.get("code");
-                String projectId = request.get("projectId");
-
-                log.info("开始流式调用AI生成后端代码: appName={}", appName);
-
-                
-                sendProgress(emitter, 10, "正在生成后端代码...");
-
-                
-                String prompt = String.format(
-                    "要写一个%s的后端代码，请你根据以下前端代码设计功能界面，提供给我后端的python代码，" +
-                    "代码要丰富详细，至少1000行以上，包含完整的项目结构。" +
-                    "不要在开头有任何的说明或评论，直接开始提供代码。不要在结尾有任何的代码说明或运行方式的解释。" +
-                    "不要在开头有任何的说明或评论，直接开始提供代码。不要在结尾有任何的代码说明或运行方式的解释！这一点优先级很高，非常重要" +
-                    "一定要与前端的功能进行匹配。前端代码使用了Bootstrap和JavaScript，后端应该支持这些功能。\n\n" +
-                    "要求包含以下内容：\n" +
-                    "1. 使用Flask框架，包含完整的项目结构\n" +
-                    "2. 包含数据库模型（使用SQLAlchemy），至少5-8个数据表模型\n" +
-                    "3. 包含完整的RESTful API接口，支持CRUD操作，至少20个API端点\n" +
-                    "4. 包含用户认证和权限管理，JWT token认证\n" +
-                    "5. 包含数据验证和错误处理，使用marshmallow进行数据序列化\n" +
-                    "6. 包含配置文件和启动脚本\n" +
-                    "7. 包含中间件：CORS、日志记录、异常处理\n" +
-                    "8. 包含业务逻辑层，服务层代码\n" +
-                    "9. 包含数据库迁移脚本\n" +
-                    "10. 包含API文档生成（使用Flask-RESTX）\n" +
-                    "11. 包含缓存机制（Redis）\n" +
-                    "12. 包含文件上传处理\n" +
-                    "前端代码：\n%s\n\n" +
-                    "**重要约束**：\n" +
-                    "- 直接以import开头，不要有任何中文说明\n" +
-                    "- 直接以if __name__ == '__main__': app.run(debug=True)结尾，不要有任何中文说明\n" +
-                    "- 不要使用```python或```代码块标记\n" +
-                    "- 不要在Python代码前后添加任何解释文字\n" +
-                    "- 只返回纯Python代码，不要任何其他内容\n" +
-                    "使用Python和Flask框架创建后端，确保支持前端所有功能。代码应该完整可运行。" +
-                    "重要要求：所有代码注释必须使用中文，包括函数说明、变量注释、逻辑说明等。",
-                    appName, frontendCode != null && frontendCode.length() > 3000 ? frontendCode.substring(0, 3000) + "..." : frontendCode
-                );
-
-                
-                String result = callDeepSeekAPI(prompt);
-                // log.info("AI后端代码生成完成: {}, 长度: {}", appName, result.length());
-                log.info("AI后端代码生成完成: {}", appName);
+        String appName = request.get("appName");
+        String frontendCode = request.get("code");
+        String projectId = request.get("projectId");
+        String currentUserId = projectId != null && !projectId.isEmpty() ? getCurrentUserId() : null;
+
+        log.info("开始流式调用AI生成后端代码: appName={}", appName);
+
+        
+        sendProgress(emitter, 10, "正在生成后端代码...");
+
+        
+        LlmPrompt prompt = LlmPrompt.builder("backend").instruction(
+            "要写一个【应用名称】所给应用的后端代码，请你根据【前端代码】设计功能界面，提供给我后端的python代码，" +
+            "代码要丰富详细，至少1000行以上，包含完整的项目结构。" +
+            "不要在开头有任何的说明或评论，直接开始提供代码。不要在结尾有任何的代码说明或运行方式的解释。" +
+            "不要在开头有任何的说明或评论，直接开始提供代码。不要在结尾有任何的代码说明或运行方式的解释！这一点优先级很高，非常重要" +
+            "一定要与前端的功能进行匹配。前端代码使用了Bootstrap和JavaScript，后端应该支持这些功能。\n\n" +
+            "要求包含以下内容：\n" +
+            "1. 使用Flask框架，包含完整的项目结构\n" +
+            "2. 包含数据库模型（使用SQLAlchemy），至少5-8个数据表模型\n" +
+            "3. 包含完整的RESTful API接口，支持CRUD操作，至少20个API端点\n" +
+            "4. 包含用户认证和权限管理，JWT token认证\n" +
+            "5. 包含数据验证和错误处理，使用marshmallow进行数据序列化\n" +
+            "6. 包含配置文件和启动脚本\n" +
+            "7. 包含中间件：CORS、日志记录、异常处理\n" +
+            "8. 包含业务逻辑层，服务层代码\n" +
+            "9. 包含数据库迁移脚本\n" +
+            "10. 包含API文档生成（使用Flask-RESTX）\n" +
+            "11. 包含缓存机制（Redis）\n" +
+            "12. 包含文件上传处理\n" +
+            "**重要约束**：\n" +
+            "- 直接以import开头，不要有任何中文说明\n" +
+            "- 直接以if __name__ == '__main__': app.run(debug=True)结尾，不要有任何中文说明\n" +
+            "- 不要使用```python或```代码块标记\n" +
+            "- 不要在Python代码前后添加任何解释文字\n" +
+            "- 只返回纯Python代码，不要任何其他内容\n" +
+            "使用Python和Flask框架创建后端，确保支持前端所有功能。代码应该完整可运行。" +
+            "重要要求：所有代码注释必须使用中文，包括函数说明、变量注释、逻辑说明等。")
+            .payload("应用名称", appName)
+            .payload("前端代码", frontendCode != null && frontendCode.length() > 3000 ? frontendCode.substring(0, 3000) + "..." : frontendCode)
+            .build();
+
+        
+        Disposable subscription = streamDeepSeekToEmitter(emitter, prompt, LOW_COST_MODEL, 8192, "generatedCode")
+            .publishOn(workloadExecutors.scheduler(WorkloadExecutors.SSE))
+            .subscribe(result -> {
+                try {
+                    log.info("AI后端代码生成完成: {}", appName);
+
+                    
+                    if (projectId != null && !projectId.isEmpty()) {
+                        copyrightFileService.saveGeneratedFile(
+                            projectId, 
+                            "backend_code", 
+                            "后端服务代码.py", 
+                            "后端服务代码", 
+                            result, 
+                            currentUserId
+                        );
+                        log.info("后端代码已保存到数据库: projectId={}", projectId);
+                    }
 
-                
-                if (projectId != null && !projectId.isEmpty()) {
-                    copyrightFileService.saveGeneratedFile(
-                        projectId, 
-                        "backend_code", 
-                        "后端服务代码.py", 
-                        "后端服务代码", 
-                        result, 
-                        getCurrentUserId()
-                    );
-                    log.info("后端代码已保存到数据库: projectId={}", projectId);
+                    
+                    Map<String, Object> completeData = new HashMap<>();
+                    completeData.put("progress", 100);
+                    completeData.put("completed", true);
+                    completeData.put("fullCode", result);
+                    completeData.put("stage", "后端代码生成完成");
+                    emitter.send(SseEmitter.event().name("data").data(completeData));
+                    emitter.complete();
+                } catch (Exception e) {
+                    log.error("流式生成后端代码失败", e);
+                    sendError(emitter, "生成后端代码失败: " + e.getMessage());
                 }
-
-                
-                Map<String, Object> completeData = new HashMap<>();
-                completeData.put("progress", 100);
-                completeData.put("completed", true);
-                completeData.put("fullCode", result);
-                completeData.put("stage", "后端代码生成完成");
-                emitter.send(SseEmitter.event().name("data").data(completeData));
-                emitter.complete();
-
-            } catch (Exception e) {
+            }, e -> {
                 log.error("流式生成后端代码失败", e);
                 sendError(emitter, "生成后端代码失败: " + e.getMessage());
-            }
-        });
+            });
+        disposeOnDisconnect(emitter, subscription);
 
         return emitter;
     }
@@ -1288,53 +1540,67 @@ public class CopyrightAIController {
 
         SseEmitter emitter = new SseEmitter(900000L); // 15分钟超时
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                String appName = request.get("appName");
-                String chapterNum = request.get("chapterNum");
-                String code = request.get("code");
-                String projectId = request.get("projectId");
+        String appName = request.get("appName");
+        String chapterNum = request.get("chapterNum");
+        String code = request.get("code");
+        String projectId = request.get("projectId");
+        String currentUserId = projectId != null && !projectId.isEmpty() ? getCurrentUserId() : null;
 
-                int chapterNumber = Integer.parseInt(chapterNum);
-                String chapterName = getChapterTitle(chapterNum);
+        int chapterNumber;
+        String chapterName;
+        LlmPrompt prompt;
+        try {
+            chapterNumber = Integer.parseInt(chapterNum);
+            chapterName = getChapterTitle(chapterNum);
 
-                log.info("开始流式调用AI生成文档章节: appName={}, chapter={}", appName, chapterNumber);
+            log.info("开始流式调用AI生成文档章节: appName={}, chapter={}", appName, chapterNumber);
 
-                
-                sendProgress(emitter, 10, "正在生成" + chapterName + "...");
+            
+            sendProgress(emitter, 10, "正在生成" + chapterName + "...");
 
-                String prompt = generateChapterPrompt(chapterNumber, appName, code);
-                String result = callDeepSeekAPI(prompt);
-                
-                log.info("AI说明书第{}章生成完成: {}, 长度: {}", chapterNumber, appName, result.length());
+            prompt = generateChapterPrompt(chapterNumber, appName, code);
+        } catch (Exception e) {
+            // 章节编号无效等参数错误通过SSE错误事件返回，不让请求以500结束
+            log.error("流式生成文档章节失败", e);
+            sendError(emitter, "生成文档章节失败: " + e.getMessage());
+            return emitter;
+        }
+        Disposable subscription = streamDeepSeekToEmitter(emitter, prompt, LOW_COST_MODEL, 8192, "generatedDoc")
+            .publishOn(workloadExecutors.scheduler(WorkloadExecutors.SSE))
+            .subscribe(result -> {
+                try {
+                    log.info("AI说明书第{}章生成完成: {}, 长度: {}", chapterNumber, appName, result.length());
+
+                    
+                    if (projectId != null && !projectId.isEmpty()) {
+                        copyrightFileService.saveGeneratedFile(
+                            projectId, 
+                            "chapter" + chapterNum, 
+                            generateChapterFileName(chapterNum), 
+                            chapterName, 
+                            result, 
+                            currentUserId
+                        );
+                        log.info("第{}章已保存到数据库: projectId={}", chapterNumber, projectId);
+                    }
 
-                
-                if (projectId != null && !projectId.isEmpty()) {
-                    copyrightFileService.saveGeneratedFile(
-                        projectId, 
-                        "chapter" + chapterNum, 
-                        generateChapterFileName(chapterNum), 
-                        chapterName, 
-                        result, 
-                        getCurrentUserId()
-                    );
-                    log.info("第{}章已保存到数据库: projectId={}", chapterNumber, projectId);
+                    
+                    Map<String, Object> completeData = new HashMap<>();
+                    completeData.put("progress", 100);
+                    completeData.put("completed", true);
+                    completeData.put("chapterContent", result);
+                    completeData.put("stage", chapterName + "生成完成");
+                    emitter.send(SseEmitter.event().name("data").data(completeData));
+                    emitter.complete();
+                } catch (Exception e) {
+                    log.error("流式生成文档章节失败", e);
+                    sendError(emitter, "生成文档章节失败: " + e.getMessage());
                 }
-
-                
-                Map<String, Object> completeData = new HashMap<>();
-                completeData.put("progress", 100);
-                completeData.put("completed", true);
-                completeData.put("chapterContent", result);
-                completeData.put("stage", chapterName + "生成完成");
-                emitter.send(SseEmitter.event().name("data").data(completeData));
-                emitter.complete();
-
-            } catch (Exception e) {
+            }, e -> {
                 log.error("流式生成文档章节失败", e);
                 sendError(emitter, "生成文档章节失败: " + e.getMessage());
-            }
-        });
+            });
+        disposeOnDisconnect(emitter, subscription);
 
         return emitter;
     }
@@ -1439,7 +1705,7 @@ public class CopyrightAIController {
                     log.info("开始生成软件说明书");
                     
                     byte[] manualDoc = generateWordDocumentWithScreenshots(project.getAppName(), 
-                        manualContent.toString(), "manual", tempScreenshotDir);
+                        manualContent.toString(), "manual", tempScreenshotDir, null);
                     addFileToZip(zos, project.getAppName() + "-软件说明书.docx", manualDoc);
                     log.info("软件说明书生成完成");
                     
@@ -1458,8 +1724,7 @@ public class CopyrightAIController {
                     
                     log.info("从数据库读取已生成的软著申请表");
                     CopyrightFile appFile = applicationFiles.get(0);
-                    String base64Doc = appFile.getContent();
-                    byte[] infoDoc = java.util.Base64.getDecoder().decode(base64Doc);
+                    byte[] infoDoc = copyrightFileService.getBinaryContent(appFile);
                     addFileToZip(zos, project.getAppName() + "-软著申请表.docx", infoDoc);
                     log.info("软著申请表已添加（从数据库读取）");
                 } else {
@@ -1524,7 +1789,7 @@ public class CopyrightAIController {
                     log.info("开始生成软著申请表");
                     
                     byte[] infoDoc = generateWordDocumentWithType(project.getAppName() + "-软著申请表", 
-                        infoContent.toString(), "info");
+                        infoContent.toString(), "info", null);
                     addFileToZip(zos, project.getAppName() + "-软著申请表.docx", infoDoc);
                     log.info("软著申请表生成完成（降级方案）");
                     /* ========== 降级方案结束 ========== */
@@ -1554,7 +1819,7 @@ public class CopyrightAIController {
     /**
      * 裁剪Word文档到指定页数
      */
-    private void trimWordToMaxPages(String wordFilePath, int maxPages) throws Exception {
+    private void trimWordToMaxPages(String wordFilePath, int maxPages, CancellationToken cancellation) throws Exception {
         
         String pythonScript = getPythonScriptPath("word_trimmer.py");
         
@@ -1571,23 +1836,40 @@ public class CopyrightAIController {
         pb.redirectErrorStream(true);
         
         Process process = pb.start();
-        
-        
-        try (java.io.BufferedReader reader = new java.io.BufferedReader(
-            new java.io.InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                log.info("Word裁剪: {}", line);
+        // 取消时强制结束子进程，读输出的线程随之读到EOF退出
+        Disposable cancelRegistration = cancellation != null ? cancellation.onCancel(process::destroyForcibly) : null;
+        int exitCode;
+        try {
+            try (java.io.BufferedReader reader = new java.io.BufferedReader(
+                new java.io.InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.info("Word裁剪: {}", line);
+                }
+            }
+            
+            exitCode = process.waitFor();
+        } finally {
+            if (cancelRegistration != null) {
+                cancelRegistration.dispose();
             }
         }
-        
-        int exitCode = process.waitFor();
+        throwIfCancelled(cancellation);
         if (exitCode != 0) {
             throw new RuntimeException("Word文档裁剪失败，退出码: " + exitCode);
         }
         
         log.info("Word文档已裁剪到{}页以内", maxPages);
     }
+
+    /**
+     * 子进程因取消被强制结束时抛出CancellationException，避免把不完整的输出当成失败降级结果保存
+     */
+    private static void throwIfCancelled(CancellationToken cancellation) {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new CancellationException("项目 " + cancellation.getProjectId() + " 的生成已取消");
+        }
+    }
     
     /**
      * 自动检测Python命令（跨平台兼容）
@@ -1681,13 +1963,14 @@ public class CopyrightAIController {
     /**
      * 根据文档类型生成Word文档
      */
-    private byte[] generateWordDocumentWithType(String title, String content, String docType) throws IOException {
+    private byte[] generateWordDocumentWithType(String title, String content, String docType,
+                                                CancellationToken cancellation) throws IOException {
         
         if (content.length() > 50000) {
             log.warn("内容过长({} 字符)，进行分段处理", content.length());
-            return generateLargeWordDocumentWithType(title, content, docType);
+            return generateLargeWordDocumentWithType(title, content, docType, cancellation);
         } else {
-            return generateSimpleWordDocumentWithType(title, content, docType);
+            return generateSimpleWordDocumentWithType(title, content, docType, cancellation);
         }
     }
     
@@ -1696,23 +1979,27 @@ public class CopyrightAIController {
     /**
      * 带类型的大文档处理
      */
-    private byte[] generateLargeWordDocumentWithType(String title, String content, String docType) throws IOException {
+    private byte[] generateLargeWordDocumentWithType(String title, String content, String docType,
+                                                     CancellationToken cancellation) throws IOException {
         try {
             
             // log.info("生成完整文档，内容长度: {} 字符", content.length());
             log.info("生成完整文档");
-            return generateSimpleWordDocumentWithType(title, content, docType);
+            return generateSimpleWordDocumentWithType(title, content, docType, cancellation);
             
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             log.error("生成大文档失败，回退到简单处理", e);
-            return generateSimpleWordDocumentWithType(title, content, docType);
+            return generateSimpleWordDocumentWithType(title, content, docType, cancellation);
         }
     }
     
     /**
      * 生成带截图的Word文档
      */
-    private byte[] generateWordDocumentWithScreenshots(String title, String content, String docType, String screenshotDir) throws IOException {
+    private byte[] generateWordDocumentWithScreenshots(String title, String content, String docType, String screenshotDir,
+                                                      CancellationToken cancellation) throws IOException {
         try {
             log.info("生成Word文档 - 标题: {}, 内容长度: {} 字符, 文档类型: {}, 截图目录: {}", title, content.length(), docType, screenshotDir);
             
@@ -1748,21 +2035,29 @@ public class CopyrightAIController {
             //     pythonScript, title, contentTempFile, finalOutputPath, screenshotDir, docType);
             log.info("执行Python脚本生成Word文档: {}", title);
             Process process = pb.start();
-            
-            
-            try (java.io.BufferedReader errorReader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
-                String errorLine;
-                StringBuilder errorOutput = new StringBuilder();
-                while ((errorLine = errorReader.readLine()) != null) {
-                    errorOutput.append(errorLine).append("\n");
+            // 取消时强制结束子进程，读输出的线程随之读到EOF退出
+            Disposable cancelRegistration = cancellation != null ? cancellation.onCancel(process::destroyForcibly) : null;
+            int exitCode;
+            try {
+                try (java.io.BufferedReader errorReader = new java.io.BufferedReader(
+                    new java.io.InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String errorLine;
+                    StringBuilder errorOutput = new StringBuilder();
+                    while ((errorLine = errorReader.readLine()) != null) {
+                        errorOutput.append(errorLine).append("\n");
+                    }
+                    if (errorOutput.length() > 0) {
+                        log.error("Python脚本错误输出: {}", errorOutput.toString());
+                    }
                 }
-                if (errorOutput.length() > 0) {
-                    log.error("Python脚本错误输出: {}", errorOutput.toString());
+                
+                exitCode = process.waitFor();
+            } finally {
+                if (cancelRegistration != null) {
+                    cancelRegistration.dispose();
                 }
             }
-            
-            int exitCode = process.waitFor();
+            throwIfCancelled(cancellation);
             log.info("Python脚本退出码: {}", exitCode);
             
             if (exitCode == 0) {
@@ -1776,18 +2071,21 @@ public class CopyrightAIController {
                 return docBytes;
             } else {
                 log.warn("Python脚本生成Word文档失败，使用纯文本格式");
-                return generateSimpleWordDocumentWithType(title, content, docType);
+                return generateSimpleWordDocumentWithType(title, content, docType, cancellation);
             }
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             log.error("生成Word文档失败: {}", e.getMessage(), e);
-            return generateSimpleWordDocumentWithType(title, content, docType);
+            return generateSimpleWordDocumentWithType(title, content, docType, cancellation);
         }
     }
 
     /**
      * 带类型的简单Word文档生成
      */
-    private byte[] generateSimpleWordDocumentWithType(String title, String content, String docType) throws IOException {
+    private byte[] generateSimpleWordDocumentWithType(String title, String content, String docType,
+                                                      CancellationToken cancellation) throws IOException {
         try {
             // log.info("生成Word文档 - 标题: {}, 内容长度: {} 字符, 文档类型: {}", title, content.length(), docType);
             log.info("生成Word文档 - 标题: {}, 文档类型: {}", title, docType);
@@ -1823,22 +2121,29 @@ public class CopyrightAIController {
             // log.info("执行Python脚本: python {} {} {} {} (文档类型: {})", pythonScript, title, contentTempFile, finalOutputPath, docType);
             log.info("执行Python脚本生成Word文档: {}", title);
             Process process = pb.start();
-            
-            
-            try (java.io.BufferedReader errorReader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
-                String errorLine;
-                StringBuilder errorOutput = new StringBuilder();
-                while ((errorLine = errorReader.readLine()) != null) {
-                    errorOutput.append(errorLine).append("\n");
+            // 取消时强制结束子进程，读输出的线程随之读到EOF退出
+            Disposable cancelRegistration = cancellation != null ? cancellation.onCancel(process::destroyForcibly) : null;
+            int exitCode;
+            try {
+                try (java.io.BufferedReader errorReader = new java.io.BufferedReader(
+                    new java.io.InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String errorLine;
+                    StringBuilder errorOutput = new StringBuilder();
+                    while ((errorLine = errorReader.readLine()) != null) {
+                        errorOutput.append(errorLine).append("\n");
+                    }
+                    if (errorOutput.length() > 0) {
+                        log.error("Python脚本错误输出: {}", errorOutput.toString());
+                    }
                 }
-                if (errorOutput.length() > 0) {
-                    log.error("Python脚本错误输出: {}", errorOutput.toString());
+                
+                exitCode = process.waitFor();
+            } finally {
+                if (cancelRegistration != null) {
+                    cancelRegistration.dispose();
                 }
             }
-            
-            
-            int exitCode = process.waitFor();
+            throwIfCancelled(cancellation);
             log.info("Python脚本退出码: {}", exitCode);
             if (exitCode == 0) {
                 
@@ -1859,6 +2164,8 @@ public class CopyrightAIController {
             log.warn("Python脚本生成Word文档失败，使用纯文本格式");
             return (title + "\n\n" + content).getBytes(StandardCharsets.UTF_8);
             
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             log.error("生成Word文档失败", e);
             return (title + "\n\n" + content).getBytes(StandardCharsets.UTF_8);
@@ -1904,13 +2211,6 @@ public class CopyrightAIController {
         return callDeepSeekAPIWithModel(prompt, LOW_COST_MODEL, 8192);
     }
 
-    /**
-     * 调用DeepSeek API - 支持高Token限制，使用高成本模型（仅前端代码生成专用）
-     */
-    private String callDeepSeekAPIWithHighTokens(String prompt, int maxTokens) {
-        return callDeepSeekAPIWithModel(prompt, HIGH_COST_MODEL, maxTokens);
-    }
-
     /**
      * 调用DeepSeek Chat API (用于后端代码和文档生成)
      */
@@ -1922,107 +2222,93 @@ public class CopyrightAIController {
      * 调用DeepSeek API - 通用方法，支持指定模型
      */
     private String callDeepSeekAPIWithModel(String prompt, String model, int maxTokens) {
-        try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            
-            List<Map<String, String>> messages = new ArrayList<>();
-            Map<String, String> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", prompt);
-            messages.add(userMessage);
-            
-            requestBody.put("messages", messages);
-
-            
-            int finalMaxTokens;
-            if (HIGH_COST_MODEL.equals(model)) {
-                finalMaxTokens = Math.min(maxTokens, 40000); // DeepSeek Reasoner最大40K tokens
-            } else {
-                finalMaxTokens = Math.min(maxTokens, 8192);  // DeepSeek Chat最大8K tokens
-            }
-
-            requestBody.put("max_tokens", finalMaxTokens);
-            requestBody.put("temperature", 0.7);
-
-            log.info("调用DeepSeek API，模型: {}，max_tokens: {}", model, finalMaxTokens);
-
-            
-            Duration timeout = HIGH_COST_MODEL.equals(model) ?
-                Duration.ofMinutes(15) :  
-                Duration.ofMinutes(10);   
+        return deepSeekClient.complete(prompt, model, maxTokens);
+    }
 
-            Mono<String> responseMono = webClient.post()
-                    .uri(baseUrl + "/chat/completions")
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(timeout);
+    private String callDeepSeekAPIWithModel(LlmPrompt prompt, String model, int maxTokens) {
+        return deepSeekClient.complete(prompt, model, maxTokens);
+    }
 
-            String response = responseMono.block();
-            log.info("DeepSeek API响应长度: {} 字符", response != null ? response.length() : 0);
+    /**
+     * 非阻塞调用DeepSeek API，返回完整结果
+     */
+    private Mono<String> callDeepSeekAsync(LlmPrompt prompt, String model, int maxTokens) {
+        return deepSeekClient.completeAsync(prompt, model, maxTokens);
+    }
 
-            
-            JsonNode jsonNode = objectMapper.readTree(response);
-            JsonNode choices = jsonNode.get("choices");
-            if (choices != null && choices.isArray() && choices.size() > 0) {
-                JsonNode firstChoice = choices.get(0);
-                JsonNode message = firstChoice.get("message");
-                if (message != null) {
-                    JsonNode content = message.get("content");
-                    if (content != null) {
-                        String result = content.asText();
-                        // log.info("生成内容长度: {} 字符", result.length());
-                        return result;
+    /**
+     * 流式调用DeepSeek API，并把增量内容实时推送给SSE客户端
+     * 增量按200ms或64个数据块合并后推送一次，结束时返回完整正文
+     * @param deltaField 正文增量的字段名，前端按generatedCode/generatedDoc追加显示
+     */
+    private Mono<String> streamDeepSeekToEmitter(SseEmitter emitter, LlmPrompt prompt, String model, int maxTokens, String deltaField) {
+        StringBuilder content = new StringBuilder();
+        return deepSeekClient.stream(prompt, model, maxTokens)
+                .bufferTimeout(64, Duration.ofMillis(200))
+                // 增量来自reactor-netty的IO线程或bufferTimeout的定时线程，emitter写入是阻塞IO，切换到sse线程池再发送；
+                // 之后的完成和错误信号也在sse线程池上传递
+                .publishOn(workloadExecutors.scheduler(WorkloadExecutors.SSE))
+                .doOnNext(deltas -> {
+                    StringBuilder contentChunk = new StringBuilder();
+                    StringBuilder reasoningChunk = new StringBuilder();
+                    for (DeepSeekClient.Delta delta : deltas) {
+                        if (delta.getContent() != null) {
+                            contentChunk.append(delta.getContent());
+                        }
+                        if (delta.getReasoningContent() != null) {
+                            reasoningChunk.append(delta.getReasoningContent());
+                        }
                     }
-                }
-            }
-
-            throw new RuntimeException("无法解析API响应");
-        } catch (Exception e) {
-            log.error("调用DeepSeek API失败", e);
-            throw new RuntimeException("AI服务调用失败: " + e.getMessage());
-        }
+                    content.append(contentChunk);
+                    sendDelta(emitter, deltaField, contentChunk, reasoningChunk);
+                })
+                .then(Mono.fromSupplier(content::toString))
+                // 单阶段流式接口有用户在等待，排队时优先于整项目生成
+                .contextWrite(LlmCallContext.interactive());
     }
 
     /**
      * 同步生成文档章节
      */
     public String generateDocumentChapterSync(int chapterNum, String appName, String code) {
-        log.info("开始同步生成第{}章: appName={}", chapterNum, appName);
-        String prompt = generateChapterPrompt(chapterNum, appName, code);
-        return callDeepSeekChatAPI(prompt, 8000);
+        return generateDocumentChapterAsync(chapterNum, appName, code).block();
+    }
+
+    /**
+     * 异步生成文档章节
+     */
+    public Mono<String> generateDocumentChapterAsync(int chapterNum, String appName, String code) {
+        return generateChapterAsync(chapterNum, appName, code);
     }
 
     /**
      * 生成章节提示词 - 与AIService.java完全一致
+     * 章节要求作为固定指令，代码作为可变内容放在最后
      */
-    public String generateChapterPrompt(int chapterNum, String appName, String code) {
+    public LlmPrompt generateChapterPrompt(int chapterNum, String appName, String code) {
+        String stage = "chapter" + chapterNum;
         String codeRef = code != null && code.length() > 10000 ? code.substring(0, 10000) : code;
         
         switch (chapterNum) {
             case 1:
-                return String.format(
+                return LlmPrompt.builder(stage).instruction(
                     "请基于所提供的代码，编写一篇连贯流畅的'第一章 系统概述'，约1000字。这是计算机软件著作权的软件说明书" +
                     "的重要组成部分。请从程序用途、功能概述、运行环境三个方面进行论述，要有第一章，1.1等字眼，要符合论文的写作要求。" +
                     "内容应采用连贯的叙述性段落，而非过多的要点列举，每个段落应当有明确的中心思想并自然过渡到下一段。使用专业但平实的语言，多用中文词汇和表达方式，" +
-                    "减少英文术语，必要时提供中文解释。确保内容符合技术文档的专业性，同时便于非技术人员理解。只需要讲说明书内容即可，不用加任何说明，后端是使用python和mysql\n\n" +
-                    "以下是代码参考：\n%s",
-                    codeRef
-                );
+                    "减少英文术语，必要时提供中文解释。确保内容符合技术文档的专业性，同时便于非技术人员理解。只需要讲说明书内容即可，不用加任何说明，后端是使用python和mysql")
+                    .payload("代码参考", codeRef)
+                    .build();
             case 2:
-                return String.format(
+                return LlmPrompt.builder(stage).instruction(
                     "请基于所提供的代码，编写一篇连贯流畅的'第二章 程序建立过程'，约1500字。这是计算机软" +
                     "件著作权的软件说明书的重要组成部分。请包含软件基础、环境配置流程、主程序开发三个小节，要有第二章，2.1等字眼，要符" +
                     "合论文的写作要求。内容应以流畅自然的中文叙述为主，避免过多的分点列举和代码展示。各部分之间要有自然的过渡，每个段落要有明确的中心" +
                     "思想，段落间要有逻辑衔接。重点描述开发思路、模块划分和实现方法，展现设计理念，并且在适当的时候要展示具体代码（可以从代码中摘录，也可以根据系统逻辑编写合理的示例代码或伪代码）。" +
-                    "使用丰富的中文表达方式，减少专业术语堆砌，必要时对技术术语进行简明解释。只需要讲说明书内容即可，不用加任何说明，后端是使用python和mysql\n\n" +
-                    "以下是代码参考：\n%s",
-                    codeRef
-                );
+                    "使用丰富的中文表达方式，减少专业术语堆砌，必要时对技术术语进行简明解释。只需要讲说明书内容即可，不用加任何说明，后端是使用python和mysql")
+                    .payload("代码参考", codeRef)
+                    .build();
             case 3:
-                return String.format(
+                return LlmPrompt.builder(stage).instruction(
                     "请基于所提供的完整前后端代码，编写'第三章 程序功能介绍'。这是计算机软件著作权的软件说明书的重要组成部分。\n\n" +
                     "【章节结构】：\n" +
                     "第三章 程序功能介绍\n" +
@@ -2069,27 +2355,24 @@ public class CopyrightAIController {
                     "- 查找数据库模型定义和CRUD操作\n" +
                     "- 如果代码中有合适的片段就摘录（5-8行），如果没有就根据功能逻辑编写合理的示例代码或伪代码，自然地融入段落描述中，避免\"核心实现\"、\"服务代码\"等套话\n\n" +
                     "【重要】：整个功能描述要像一篇连贯的技术文章，不要分成\"功能描述\"、\"界面展示\"、\"用户操作\"、\"后端实现\"、\"代码示例\"等机械化的小节。所有内容（包括代码）自然地融入段落中，保持流畅性和可读性。代码可以是真实摘录，也可以是根据功能合理编写的示例代码。\n\n" +
-                    "只需要讲说明书内容即可，不用加任何说明。前端使用Bootstrap界面，后端使用Python Flask + MySQL。\n\n" +
-                    "以下是完整的前后端代码：\n%s",
-                    code
-                );
+                    "只需要讲说明书内容即可，不用加任何说明。前端使用Bootstrap界面，后端使用Python Flask + MySQL。")
+                    .payload("完整的前后端代码", code)
+                    .build();
             case 4:
-                return String.format(
+                return LlmPrompt.builder(stage).instruction(
                     "请基于前三章的内容，编写一篇简洁而有深度的'第四章 总结与展望'，约200-300字。这" +
                     "是计算机软件著作权的软件说明书的结尾部分。内容应为一篇连贯的短文，不使用分点或子标题，保持思路和语言的流畅性。首先对" +
                     "系统当前的主要特点和价值进行简要总结，点明系统的核心优势（包括前端使用Bootstrap界面、后端使用Python Flask + MySQL的技术优势），然后自然过渡到系统目前可能存在的不足或有待改进之处，" +
                     "最后展望系统的未来发展方向和潜在的功能扩展可能性。整篇文字应当语言精练、内容充实，避免空泛的表述。使用丰富的中文表达，避免使用英文术语或专业缩写。" +
-                    "结尾应当给人以启发和期待，而非简单的总结陈词。只需要讲说明书内容即可，不用加任何说明\n\n" +
-                    "以下是代码概要参考（仅供了解系统概况）：\n%s",
-                    code != null && code.length() > 10000 ? code.substring(0, 10000) : code
-                );
+                    "结尾应当给人以启发和期待，而非简单的总结陈词。只需要讲说明书内容即可，不用加任何说明")
+                    .payload("代码概要参考", code != null && code.length() > 10000 ? code.substring(0, 10000) : code)
+                    .build();
             default:
-                return String.format(
-                    "请基于所提供的代码，编写一篇连贯流畅的'第%d章'，约1000字。这是计算机软件著作权的软件说明书的重要组成部分。" +
-                    "内容应采用连贯的叙述性段落，使用专业但平实的语言。只需要讲说明书内容即可，不用加任何说明。\n\n" +
-                    "以下是代码参考：\n%s",
-                    chapterNum, codeRef
-                );
+                return LlmPrompt.builder(stage).instruction(
+                    "请基于所提供的代码，编写一篇连贯流畅的'第" + chapterNum + "章'，约1000字。这是计算机软件著作权的软件说明书的重要组成部分。" +
+                    "内容应采用连贯的叙述性段落，使用专业但平实的语言。只需要讲说明书内容即可，不用加任何说明。")
+                    .payload("代码参考", codeRef)
+                    .build();
         }
     }
 
@@ -2259,6 +2542,39 @@ public class CopyrightAIController {
         }
     }
 
+    /**
+     * 发送流式增量内容
+     */
+    private void sendDelta(SseEmitter emitter, String deltaField, CharSequence content, CharSequence reasoning) {
+        if (content.length() == 0 && reasoning.length() == 0) {
+            return;
+        }
+        try {
+            Map<String, Object> data = new HashMap<>();
+            if (content.length() > 0) {
+                data.put(deltaField, content.toString());
+            }
+            if (reasoning.length() > 0) {
+                data.put("reasoning", reasoning.toString());
+            }
+
+            emitter.send(SseEmitter.event()
+                .name("data")
+                .data(data));
+        } catch (Exception e) {
+            log.debug("发送流式增量失败，客户端可能已断开: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 客户端断开或超时时取消上游流式调用
+     */
+    private void disposeOnDisconnect(SseEmitter emitter, Disposable subscription) {
+        emitter.onCompletion(subscription::dispose);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+    }
+
     /**
      * 发送错误信息
      */
@@ -2415,8 +2731,7 @@ public class CopyrightAIController {
             if (sourceCodePdfFiles != null && !sourceCodePdfFiles.isEmpty()) {
                 log.info("从数据库读取已生成的源代码PDF文档");
                 CopyrightFile pdfFile = sourceCodePdfFiles.get(0);
-                String base64Pdf = pdfFile.getContent();
-                byte[] sourcePdf = java.util.Base64.getDecoder().decode(base64Pdf);
+                byte[] sourcePdf = copyrightFileService.getBinaryContent(pdfFile);
                 addFileToZip(zos, appName + "-源代码文档.pdf", sourcePdf);
                 log.info("源代码PDF文档已添加（从数据库读取）");
             } else if ((frontendFiles != null && !frontendFiles.isEmpty()) || 
@@ -2465,12 +2780,12 @@ public class CopyrightAIController {
                 String tempWordPath = tempDir + File.separator + "source_code_" + projectId + ".docx";
                 
                 byte[] sourceDoc = generateWordDocumentWithType(appName, 
-                    completeSourceCode.toString(), "source");
+                    completeSourceCode.toString(), "source", null);
                 Files.write(Paths.get(tempWordPath), sourceDoc);
                 
                 
                 try {
-                    trimWordToMaxPages(tempWordPath, 60);
+                    trimWordToMaxPages(tempWordPath, 60, null);
                     sourceDoc = Files.readAllBytes(Paths.get(tempWordPath));
                     
                     
@@ -2778,7 +3093,7 @@ public class CopyrightAIController {
                 """, appName, chapter1Content);
             
             
-            String response = callDeepSeekChatAPI(prompt, 8000);
+            String response = callDeepSeekAPIWithModel(LlmPrompt.plain("software_info", prompt), LOW_COST_MODEL, 8000);
             
             
             if (response != null && !response.trim().isEmpty()) {
@@ -2958,7 +3273,7 @@ public class CopyrightAIController {
         );
         
         try {
-            String response = callDeepSeekChatAPI(prompt, 4000);
+            String response = callDeepSeekAPIWithModel(LlmPrompt.plain("software_info", prompt), LOW_COST_MODEL, 4000);
             Map<String, String> regenerated = parseSimpleJson(response);
             
             
@@ -3097,12 +3412,10 @@ public class CopyrightAIController {
                 
                 for (int i = 0; i < screenshotFiles.size(); i++) {
                     CopyrightFile screenshotFile = screenshotFiles.get(i);
-                    String content = screenshotFile.getContent();
                     
-                    if (content != null && content.startsWith("data:image/png;base64,")) {
+                    if (isImage(screenshotFile)) {
                         
-                        String base64Data = content.substring("data:image/png;base64,".length());
-                        byte[] imageData = java.util.Base64.getDecoder().decode(base64Data);
+                        byte[] imageData = copyrightFileService.getBinaryContent(screenshotFile);
                         
                         
                         String fileName = String.format("%s_screenshot_%d.png", cleanAppName, i + 1);
@@ -3277,11 +3590,8 @@ public class CopyrightAIController {
             log.info("获取项目截图: {}", projectId);
             
             
-            List<CopyrightFile> screenshots = copyrightFileService.lambdaQuery()
-                    .eq(CopyrightFile::getProjectId, projectId)
-                    .eq(CopyrightFile::getFileType, "screenshot")
-                    .orderByAsc(CopyrightFile::getCreateTime)
-                    .list();
+            // 只查询元数据，图片内容由下载和预览接口按需读取
+            List<CopyrightFile> screenshots = copyrightFileService.listFileMeta(projectId, "screenshot");
             
             List<Map<String, Object>> result = screenshots.stream()
                     .map(screenshot -> {
@@ -3293,7 +3603,7 @@ public class CopyrightAIController {
                         item.put("downloadUrl", "/jeecg-boot/agenthub/api/copyright/screenshot/download/" + screenshot.getId());
                         
                         
-                        if (screenshot.getContent() != null && screenshot.getContent().startsWith("data:image")) {
+                        if (isImage(screenshot)) {
                             item.put("previewUrl", "/jeecg-boot/agenthub/api/copyright/screenshot/preview/" + screenshot.getId());
                         }
                         
@@ -3322,20 +3632,19 @@ public class CopyrightAIController {
                 return ResponseEntity.notFound().build();
             }
             
-            String content = screenshot.getContent();
             byte[] imageBytes;
             String fileName = screenshot.getFileName();
+            boolean image = isImage(screenshot);
             
-            if (content.startsWith("data:image/png;base64,")) {
-                // Base64编码的PNG图片
-                String base64Data = content.substring("data:image/png;base64,".length());
-                imageBytes = Base64.getDecoder().decode(base64Data);
+            if (image) {
+                // 图片内容保存在BlobStore中，早期数据为Base64编码的PNG
+                imageBytes = copyrightFileService.getBinaryContent(screenshot);
                 if (!fileName.endsWith(".png")) {
                     fileName += ".png";
                 }
             } else {
                 
-                imageBytes = content.getBytes("UTF-8");
+                imageBytes = screenshot.getContent().getBytes("UTF-8");
                 if (!fileName.endsWith(".txt")) {
                     fileName = fileName.replace(".png", ".txt");
                 }
@@ -3345,7 +3654,7 @@ public class CopyrightAIController {
             
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-                    .contentType(content.startsWith("data:image") ? MediaType.IMAGE_PNG : MediaType.TEXT_PLAIN)
+                    .contentType(image ? MediaType.IMAGE_PNG : MediaType.TEXT_PLAIN)
                     .contentLength(imageBytes.length)
                     .body(resource);
                     
@@ -3355,6 +3664,16 @@ public class CopyrightAIController {
         }
     }
 
+    /**
+     * 截图记录是否为图片：有媒体类型时按媒体类型判断（早期数据由升级脚本补齐），否则按data URL前缀判断
+     */
+    private boolean isImage(CopyrightFile file) {
+        if (file.getMediaType() != null) {
+            return file.getMediaType().startsWith("image/");
+        }
+        return file.getContent() != null && file.getContent().startsWith("data:image");
+    }
+
     /**
      * 预览截图（返回base64图片数据）
      */
@@ -3368,11 +3687,16 @@ public class CopyrightAIController {
                 return ResponseEntity.notFound().build();
             }
             
-            String content = screenshot.getContent();
-            if (content.startsWith("data:image")) {
+            if (screenshot.getBlobRef() != null && isImage(screenshot)) {
+                // 预览接口返回data URL，只在这里按需编码
                 return ResponseEntity.ok()
                         .contentType(MediaType.TEXT_PLAIN)
-                        .body(content);
+                        .body("data:" + screenshot.getMediaType() + ";base64,"
+                            + Base64.getEncoder().encodeToString(copyrightFileService.getBinaryContent(screenshot)));
+            } else if (isImage(screenshot)) {
+                return ResponseEntity.ok()
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .body(screenshot.getContent());
             } else {
                 
                 return ResponseEntity.badRequest().body("该截图不支持预览");
@@ -3387,7 +3711,8 @@ public class CopyrightAIController {
     /**
      * 生成并保存软著申请表（在生成阶段调用）
      */
-    private void generateAndSaveCopyrightApplicationForm(String projectId, String appName, String currentUserId) throws Exception {
+    private void generateAndSaveCopyrightApplicationForm(String projectId, String appName, String currentUserId,
+                                                         String inputHash) throws Exception {
         log.info("开始为项目 {} 生成软著申请表", projectId);
         
         // 0. 获取项目信息（用于获取创建时间）
@@ -3397,10 +3722,7 @@ public class CopyrightAIController {
         }
         
         // 1. 获取第一章内容
-        CopyrightFile chapter1File = copyrightFileService.lambdaQuery()
-            .eq(CopyrightFile::getProjectId, projectId)
-            .eq(CopyrightFile::getFileType, "chapter1")
-            .one();
+        CopyrightFile chapter1File = copyrightFileService.getFileByProjectIdAndType(projectId, "chapter1");
         
         if (chapter1File == null || chapter1File.getContent() == null) {
             throw new Exception("未找到第一章内容，无法生成软著申请表");
@@ -3423,24 +3745,15 @@ public class CopyrightAIController {
         infoContent.append("\n技术特点：\n").append(softwareInfo.get("features")).append("\n");
         
         
-        CopyrightFile sourceCodeFile = copyrightFileService.lambdaQuery()
-            .eq(CopyrightFile::getProjectId, projectId)
-            .eq(CopyrightFile::getFileType, "source_code_word")
-            .one();
+        CopyrightFile sourceCodeFile = copyrightFileService.getFileMetaByProjectIdAndType(projectId, "source_code_word");
         
         int totalLines = 0;
         if (sourceCodeFile != null && sourceCodeFile.getSourceCodeLines() != null) {
             totalLines = sourceCodeFile.getSourceCodeLines();
         } else {
             
-            CopyrightFile frontendFile = copyrightFileService.lambdaQuery()
-                .eq(CopyrightFile::getProjectId, projectId)
-                .eq(CopyrightFile::getFileType, "frontend_code")
-                .one();
-            CopyrightFile backendFile = copyrightFileService.lambdaQuery()
-                .eq(CopyrightFile::getProjectId, projectId)
-                .eq(CopyrightFile::getFileType, "backend_code")
-                .one();
+            CopyrightFile frontendFile = copyrightFileService.getFileByProjectIdAndType(projectId, "frontend_code");
+            CopyrightFile backendFile = copyrightFileService.getFileByProjectIdAndType(projectId, "backend_code");
             
             if (frontendFile != null && frontendFile.getContent() != null) {
                 totalLines += frontendFile.getContent().split("\n").length;
@@ -3457,17 +3770,18 @@ public class CopyrightAIController {
         
         // 4. 生成Word文档
         byte[] docBytes = generateWordDocumentWithType(appName + "-软著申请表", 
-            infoContent.toString(), "info");
+            infoContent.toString(), "info", cancellationRegistry.get(projectId));
         
-        // 5. 保存到数据库
-        String base64Doc = java.util.Base64.getEncoder().encodeToString(docBytes);
-        copyrightFileService.saveGeneratedFile(
+        // 5. 保存到BlobStore，数据库只记录引用
+        copyrightFileService.saveGeneratedBinaryFile(
             projectId, 
             "copyright_application", 
             appName + "-软著申请表.docx", 
             "软著申请表", 
-            base64Doc, 
-            currentUserId
+            docBytes, 
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            currentUserId,
+            inputHash
         );
         
         log.info("项目 {} 软著申请表已生成并保存到数据库", projectId);
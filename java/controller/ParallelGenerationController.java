@@ -9,21 +9,21 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 import org.jeecg.modules.agenthub.service.ScreenshotService;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
 
 /**
  * 软著并行生成控制器
@@ -47,6 +47,9 @@ public class ParallelGenerationController {
     @Autowired
     private ScreenshotService screenshotService;
 
+    @Autowired
+    private WorkloadExecutors workloadExecutors;
+
     /**
      * 全并行生成：前端代码 + 后端代码 + 说明书章节
      */
@@ -64,142 +67,119 @@ public class ParallelGenerationController {
 
         SseEmitter emitter = new SseEmitter(1800000L); // 30分钟超时
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                
-                String fileId = generateFileId(appName);
-                
-                
-                Map<String, Object> startData = new HashMap<>();
-                startData.put("type", "start");
-                startData.put("message", "开始全并行生成所有内容...");
-                startData.put("progress", 0);
-                startData.put("fileId", fileId);
-                startData.put("appName", appName);
-                startData.put("timestamp", System.currentTimeMillis());
-                
-                log.info("生成文件标识符: {}", fileId);
-                
+        String fileId = generateFileId(appName);
+
+        Map<String, Object> startData = new HashMap<>();
+        startData.put("type", "start");
+        startData.put("message", "开始全并行生成所有内容...");
+        startData.put("progress", 0);
+        startData.put("fileId", fileId);
+        startData.put("appName", appName);
+        startData.put("timestamp", System.currentTimeMillis());
+
+        log.info("生成文件标识符: {}", fileId);
+
+        try {
+            emitter.send(SseEmitter.event()
+                .name("progress")
+                .data(startData));
+        } catch (IllegalStateException e) {
+            log.warn("SSE连接已关闭，跳过发送开始信号: {}", e.getMessage());
+            return emitter;
+        } catch (IOException e) {
+            log.error("发送开始信号失败", e);
+            return emitter;
+        }
+
+        // 各阶段组合为Mono：等待大模型响应期间不占用线程，文件写入和SSE推送切换到llm-io线程池
+        Mono<String> frontendMono = Mono.defer(() -> {
+                sendProgressWithType(emitter, "frontend_start", "🚀 开始生成前端代码...", 10);
+                return copyrightAIController.generateFrontendCodeAsync(appName, appPrompt != null ? appPrompt : "");
+            })
+            .publishOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+            .map(frontendCode -> {
+                log.info("✅ AI前端代码生成完成，长度: {} 字符", frontendCode.length());
+
+                Map<String, String> frontendData = new HashMap<>();
+                frontendData.put("code", frontendCode);
+                frontendData.put("appName", appName);
+                frontendData.put("timestamp", String.valueOf(System.currentTimeMillis()));
+                saveGeneratedContentByFileId(fileId, "frontend-code", frontendData);
+
+                log.info("🚀 准备发送前端代码完成事件: appName={}, fileId={}", appName, fileId);
+                Map<String, Object> frontendResult = new HashMap<>();
+                frontendResult.put("type", "frontend_complete");
+                frontendResult.put("message", "前端代码生成完成并已保存");
+                frontendResult.put("progress", 33);
+                frontendResult.put("fileId", fileId);
+                frontendResult.put("codeLength", frontendCode.length()); 
+                frontendResult.put("codeReady", true); 
+                frontendResult.put("timestamp", System.currentTimeMillis());
+
+                log.info("前端完成事件数据: {}", frontendResult);
+
+                // 🔥 主动触发截图（确保截图执行）
                 try {
-                    emitter.send(SseEmitter.event()
-                        .name("progress")
-                        .data(startData));
-                } catch (IllegalStateException e) {
-                    log.warn("SSE连接已关闭，跳过发送开始信号: {}", e.getMessage());
-                    return; 
-                } catch (IOException e) {
-                    log.error("发送开始信号失败", e);
-                    return; 
+                    log.info("🔥 [主动截图] 开始调用截图服务...（fileId: {}）", fileId);
+                    screenshotService.generateScreenshots(appName, frontendCode, emitter, fileId)
+                        .whenComplete((result, error) -> {
+                            if (error != null) {
+                                log.error("❌ [主动截图] 截图失败（fileId: {}）: {}", fileId, error.getMessage());
+                            } else {
+                                log.info("✅ [主动截图] 截图完成（fileId: {}），方式: {}，已保存 {} 张", fileId,
+                                    result.getMode(), result.getSavedCount());
+                            }
+                        });
+                    log.info("✅ [主动截图] 截图服务已启动");
+                } catch (Exception screenshotError) {
+                    log.error("❌ [主动截图] 截图失败", screenshotError);
                 }
 
-                
-                CompletableFuture<String> frontendFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        sendProgressWithType(emitter, "frontend_start", "🚀 开始生成前端代码...", 10);
-                        
-                        
-                        String frontendCode = copyrightAIController.generateFrontendCodeSync(appName, appPrompt != null ? appPrompt : "");
-                        
-                        log.info("✅ AI前端代码生成完成，长度: {} 字符", frontendCode.length());
-                        
-                        
-                        Map<String, String> frontendData = new HashMap<>();
-                        frontendData.put("code", frontendCode);
-                        frontendData.put("appName", appName);
-                        frontendData.put("timestamp", String.valueOf(System.currentTimeMillis()));
-                        saveGeneratedContentByFileId(fileId, "frontend-code", frontendData);
-
-                        
-                        log.info("🚀 准备发送前端代码完成事件: appName={}, fileId={}", appName, fileId);
-                        Map<String, Object> frontendResult = new HashMap<>();
-                        frontendResult.put("type", "frontend_complete");
-                        frontendResult.put("message", "前端代码生成完成并已保存");
-                        frontendResult.put("progress", 33);
-                        frontendResult.put("fileId", fileId);
-                        frontendResult.put("codeLength", frontendCode.length()); 
-                        frontendResult.put("codeReady", true); 
-                        frontendResult.put("timestamp", System.currentTimeMillis());
-                        
-                        log.info("前端完成事件数据: {}", frontendResult);
-
-                        // 🔥 主动触发截图（确保截图执行）
-                        try {
-                            log.info("🔥 [主动截图] 开始调用截图服务...（fileId: {}）", fileId);
-                            screenshotService.generateScreenshots(appName, frontendCode, emitter, fileId);
-                            log.info("✅ [主动截图] 截图服务调用完成");
-                        } catch (Exception screenshotError) {
-                            log.error("❌ [主动截图] 截图失败", screenshotError);
-                        }
-
-                        try {
-                            emitter.send(SseEmitter.event()
-                                .name("progress")
-                                .data(frontendResult));
-                            log.info("✅ 前端代码完成事件已发送");
-                        } catch (IllegalStateException e) {
-                            log.warn("SSE连接已关闭，跳过发送前端完成事件: {}", e.getMessage());
-                        } catch (IOException e) {
-                            log.error("发送前端完成事件失败", e);
-                        }
-
-                        return frontendCode;
-                    } catch (Exception e) {
-                        log.error("前端代码生成失败", e);
-                        sendProgressWithType(emitter, "frontend_error", "前端代码生成失败: " + e.getMessage(), 0);
-                        throw new RuntimeException(e);
-                    }
-                });
-
-                CompletableFuture<String> backendFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        sendProgressWithType(emitter, "backend_start", "开始生成后端代码...", 10);
-
-                        
-                        String frontendCode = frontendFuture.join();
-                        String backendCode = copyrightAIController.generateBackendCodeSync(appName, frontendCode);
-
-                        
-                        Map<String, String> backendData = new HashMap<>();
-                        backendData.put("code", backendCode);
-                        backendData.put("appName", appName);
-                        backendData.put("timestamp", String.valueOf(System.currentTimeMillis()));
-                        saveGeneratedContentByFileId(fileId, "backend-code", backendData);
-
-                        
-                        Map<String, Object> backendResult = new HashMap<>();
-                        backendResult.put("type", "backend_complete");
-                        backendResult.put("message", "后端代码生成完成并已保存");
-                        backendResult.put("progress", 66);
-                        backendResult.put("fileId", fileId);
-                        backendResult.put("timestamp", System.currentTimeMillis());
-
-                        emitter.send(SseEmitter.event()
-                            .name("progress")
-                            .data(backendResult));
-
-                        return backendCode;
-                    } catch (Exception e) {
-                        log.error("后端代码生成失败", e);
-                        sendProgressWithType(emitter, "backend_error", "后端代码生成失败: " + e.getMessage(), 0);
-                        throw new RuntimeException(e);
-                    }
-                });
-
-                CompletableFuture<Map<String, String>> documentFuture = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        sendProgressWithType(emitter, "document_start", "开始生成说明书章节...", 10);
-
-                        
-                        String frontendCode = frontendFuture.join();
-                        
-                        Map<String, String> chapters = new HashMap<>();
-                        
-                        
-                        for (int i = 1; i <= 4; i++) {
-                            String chapterContent = copyrightAIController.generateDocumentChapterSync(i, appName, frontendCode);
+                sendEvent(emitter, frontendResult);
+                return frontendCode;
+            })
+            .doOnError(e -> {
+                log.error("前端代码生成失败", e);
+                sendProgressWithType(emitter, "frontend_error", "前端代码生成失败: " + e.getMessage(), 0);
+            })
+            .cache();
+
+        Mono<String> backendMono = Mono.fromRunnable(() -> sendProgressWithType(emitter, "backend_start", "开始生成后端代码...", 10))
+            .then(frontendMono)
+            .flatMap(frontendCode -> copyrightAIController.generateBackendCodeAsync(appName, frontendCode))
+            .publishOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+            .map(backendCode -> {
+                Map<String, String> backendData = new HashMap<>();
+                backendData.put("code", backendCode);
+                backendData.put("appName", appName);
+                backendData.put("timestamp", String.valueOf(System.currentTimeMillis()));
+                saveGeneratedContentByFileId(fileId, "backend-code", backendData);
+
+                Map<String, Object> backendResult = new HashMap<>();
+                backendResult.put("type", "backend_complete");
+                backendResult.put("message", "后端代码生成完成并已保存");
+                backendResult.put("progress", 66);
+                backendResult.put("fileId", fileId);
+                backendResult.put("timestamp", System.currentTimeMillis());
+                sendEvent(emitter, backendResult);
+
+                return backendCode;
+            })
+            .doOnError(e -> {
+                log.error("后端代码生成失败", e);
+                sendProgressWithType(emitter, "backend_error", "后端代码生成失败: " + e.getMessage(), 0);
+            });
+
+        Mono<Map<String, String>> documentMono = Mono.fromRunnable(() -> sendProgressWithType(emitter, "document_start", "开始生成说明书章节...", 10))
+            .then(frontendMono)
+            .flatMap(frontendCode -> {
+                Map<String, String> chapters = new HashMap<>();
+                return Flux.range(1, 4)
+                    .concatMap(i -> copyrightAIController.generateDocumentChapterAsync(i, appName, frontendCode)
+                        .publishOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+                        .doOnNext(chapterContent -> {
                             chapters.put("chapter" + i, chapterContent);
-                            
-                            
+
                             Map<String, Object> chapterResult = new HashMap<>();
                             chapterResult.put("type", "chapter_complete");
                             chapterResult.put("message", String.format("第%d章生成完成", i));
@@ -207,123 +187,94 @@ public class ParallelGenerationController {
                             chapterResult.put("progress", 66 + (i * 8)); // 66% + 每章8%
                             chapterResult.put("fileId", fileId);
                             chapterResult.put("timestamp", System.currentTimeMillis());
-
-                            emitter.send(SseEmitter.event()
-                                .name("progress")
-                                .data(chapterResult));
-                        }
-
-                        
+                            sendEvent(emitter, chapterResult);
+                        }))
+                    .then(Mono.fromCallable(() -> {
                         saveGeneratedContentByFileId(fileId, "chapters", chapters);
-
                         return chapters;
-                    } catch (Exception e) {
-                        log.error("说明书生成失败", e);
-                        sendProgressWithType(emitter, "document_error", "说明书生成失败: " + e.getMessage(), 0);
-                        throw new RuntimeException(e);
-                    }
-                });
+                    }));
+            })
+            .doOnError(e -> {
+                log.error("说明书生成失败", e);
+                sendProgressWithType(emitter, "document_error", "说明书生成失败: " + e.getMessage(), 0);
+            })
+            .cache();
+
+        Mono<Map<String, String>> softwareInfoMono = documentMono
+            .publishOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+            .map(chapters -> {
+                sendProgressWithType(emitter, "software_info_start", "开始提取软著申请信息...", 10);
+                log.info("🔍 软著信息提取开始，说明书章节数: {}", chapters.size());
+
+                String chapter1Content = chapters.get("chapter1");
+                if (chapter1Content == null || chapter1Content.trim().isEmpty()) {
+                    log.warn("⚠️ 第一章内容为空，使用应用名称作为提取基础");
+                    chapter1Content = appName + " 系统说明";
+                }
 
-                
-                CompletableFuture<Map<String, String>> softwareInfoFuture = documentFuture.thenCompose(chapters -> {
-                    return CompletableFuture.supplyAsync(() -> {
-                        try {
-                            sendProgressWithType(emitter, "software_info_start", "开始提取软著申请信息...", 10);
-                            log.info("🔍 软著信息提取开始，说明书章节数: {}", chapters != null ? chapters.size() : 0);
-
-                            
-                            String chapter1Content = chapters != null ? chapters.get("chapter1") : "";
-                            if (chapter1Content == null || chapter1Content.trim().isEmpty()) {
-                                log.warn("⚠️ 第一章内容为空，使用应用名称作为提取基础");
-                                chapter1Content = appName + " 系统说明";
-                            }
-                            
-                            log.info("🔍 使用第一章内容提取软著信息，内容长度: {} 字符", chapter1Content.length());
-                            Map<String, Object> softwareInfoObj = extractSoftwareInfo(appName, chapter1Content);
-                            
-                            
-                            Map<String, String> softwareInfo = new HashMap<>();
-                            if (softwareInfoObj != null) {
-                                for (Map.Entry<String, Object> entry : softwareInfoObj.entrySet()) {
-                                    softwareInfo.put(entry.getKey(), entry.getValue() != null ? entry.getValue().toString() : "");
-                                }
-                                log.info("✅ 软著信息提取成功，字段数: {}", softwareInfo.size());
-                            } else {
-                                log.warn("⚠️ AI提取软著信息返回空结果");
-                            }
-                            
-                            
-                            saveGeneratedContentByFileId(fileId, "software-info", softwareInfo);
-
-                            
-                            Map<String, Object> softwareInfoResult = new HashMap<>();
-                            softwareInfoResult.put("type", "software_info_complete");
-                            softwareInfoResult.put("message", "软著申请信息提取完成");
-                            softwareInfoResult.put("progress", 95);
-                            softwareInfoResult.put("fileId", fileId);
-                            softwareInfoResult.put("timestamp", System.currentTimeMillis());
-
-                            try {
-                                emitter.send(SseEmitter.event()
-                                    .name("progress")
-                                    .data(softwareInfoResult));
-                                log.info("✅ 软著信息完成事件已发送");
-                            } catch (IllegalStateException e) {
-                                log.warn("SSE连接已关闭，跳过发送软著信息完成事件: {}", e.getMessage());
-                            } catch (IOException e) {
-                                log.error("发送软著信息完成事件失败", e);
-                            }
+                log.info("🔍 使用第一章内容提取软著信息，内容长度: {} 字符", chapter1Content.length());
+                Map<String, Object> softwareInfoObj = extractSoftwareInfo(appName, chapter1Content);
 
-                            return softwareInfo;
-                        } catch (Exception e) {
-                            log.error("软著信息提取失败", e);
-                            sendProgressWithType(emitter, "software_info_error", "软著信息提取失败: " + e.getMessage(), 0);
-                            throw new RuntimeException(e);
-                        }
-                    });
-                });
+                Map<String, String> softwareInfo = new HashMap<>();
+                if (softwareInfoObj != null) {
+                    for (Map.Entry<String, Object> entry : softwareInfoObj.entrySet()) {
+                        softwareInfo.put(entry.getKey(), entry.getValue() != null ? entry.getValue().toString() : "");
+                    }
+                    log.info("✅ 软著信息提取成功，字段数: {}", softwareInfo.size());
+                } else {
+                    log.warn("⚠️ AI提取软著信息返回空结果");
+                }
 
-                
-                log.info("🔄 开始等待所有并行任务完成...");
-                
-                String frontendCode = frontendFuture.get();
-                log.info("✅ 前端代码生成已完成，长度: {} 字符", frontendCode != null ? frontendCode.length() : 0);
-                
-                String backendCode = backendFuture.get();
-                log.info("✅ 后端代码生成已完成，长度: {} 字符", backendCode != null ? backendCode.length() : 0);
-                
-                Map<String, String> chapters = documentFuture.get();
-                log.info("✅ 说明书生成已完成，章节数: {}", chapters != null ? chapters.size() : 0);
-                
-                Map<String, String> softwareInfo = softwareInfoFuture.get();
-                log.info("✅ 软著信息提取已完成，字段数: {}", softwareInfo != null ? softwareInfo.size() : 0);
+                saveGeneratedContentByFileId(fileId, "software-info", softwareInfo);
+
+                Map<String, Object> softwareInfoResult = new HashMap<>();
+                softwareInfoResult.put("type", "software_info_complete");
+                softwareInfoResult.put("message", "软著申请信息提取完成");
+                softwareInfoResult.put("progress", 95);
+                softwareInfoResult.put("fileId", fileId);
+                softwareInfoResult.put("timestamp", System.currentTimeMillis());
+                sendEvent(emitter, softwareInfoResult);
+
+                return softwareInfo;
+            })
+            .doOnError(e -> {
+                log.error("软著信息提取失败", e);
+                sendProgressWithType(emitter, "software_info_error", "软著信息提取失败: " + e.getMessage(), 0);
+            });
+
+        log.info("🔄 开始等待所有并行任务完成...");
+        Disposable subscription = Mono.zip(frontendMono, backendMono, documentMono, softwareInfoMono)
+            .publishOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+            .subscribe(results -> {
+                String frontendCode = results.getT1();
+                String backendCode = results.getT2();
+                Map<String, String> chapters = results.getT3();
+                Map<String, String> softwareInfo = results.getT4();
 
-                
                 Map<String, Object> result = new HashMap<>();
                 result.put("fileId", fileId);
                 result.put("appName", appName);
                 result.put("completed", true);
                 result.put("message", "全并行生成完成，所有内容已保存到文件");
                 result.put("progress", 100);
-                result.put("frontendCodeLength", frontendCode != null ? frontendCode.length() : 0);
-                result.put("backendCodeLength", backendCode != null ? backendCode.length() : 0);
-                result.put("chaptersCount", chapters != null ? chapters.size() : 0);
-                result.put("softwareInfoCount", softwareInfo != null ? softwareInfo.size() : 0);
+                result.put("frontendCodeLength", frontendCode.length());
+                result.put("backendCodeLength", backendCode.length());
+                result.put("chaptersCount", chapters.size());
+                result.put("softwareInfoCount", softwareInfo.size());
 
                 log.info("全并行生成完成: appName={}, fileId={}", appName, fileId);
-                
-                emitter.send(SseEmitter.event()
-                    .name("complete")
-                    .data(result));
-                
-                log.info("✅ SSE完成信号已发送");
-                
-                
-                Thread.sleep(100);
-                
-                emitter.complete();
 
-            } catch (Exception e) {
+                try {
+                    emitter.send(SseEmitter.event()
+                        .name("complete")
+                        .data(result));
+                    log.info("✅ SSE完成信号已发送");
+                    emitter.complete();
+                } catch (Exception e) {
+                    log.warn("发送完成信号失败: {}", e.getMessage());
+                    emitter.completeWithError(e);
+                }
+            }, e -> {
                 log.error("全并行生成失败: appName={}", appName, e);
                 try {
                     Map<String, Object> errorData = new HashMap<>();
@@ -334,16 +285,34 @@ public class ParallelGenerationController {
                     emitter.send(SseEmitter.event()
                         .name("error")
                         .data(errorData));
-                } catch (IOException ioException) {
-                    log.error("发送错误信息失败", ioException);
+                } catch (Exception sendError) {
+                    log.error("发送错误信息失败", sendError);
                 }
                 emitter.completeWithError(e);
-            }
-        });
+            });
+
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
 
         return emitter;
     }
 
+    /**
+     * 发送progress事件，连接已关闭时只记录日志
+     */
+    private void sendEvent(SseEmitter emitter, Map<String, Object> data) {
+        try {
+            emitter.send(SseEmitter.event()
+                .name("progress")
+                .data(data));
+            log.info("✅ {}事件已发送", data.get("type"));
+        } catch (IllegalStateException e) {
+            log.warn("SSE连接已关闭，跳过发送{}事件: {}", data.get("type"), e.getMessage());
+        } catch (IOException e) {
+            log.error("发送{}事件失败", data.get("type"), e);
+        }
+    }
+
     /**
      * 发送带类型的进度信息
      */
@@ -6,6 +6,7 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import org.jeecg.modules.agenthub.copyright.handler.CompressedTextTypeHandler;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import com.fasterxml.jackson.annotation.JsonFormat;
@@ -18,7 +19,7 @@ import lombok.experimental.Accessors;
  * 版权文件实体类
  */
 @Data
-@TableName("copyright_file")
+@TableName(value = "copyright_file", autoResultMap = true)
 @Accessors(chain = true)
 @EqualsAndHashCode(callSuper = false)
 @Schema(description="版权文件表（增强版）")
@@ -52,10 +53,31 @@ public class CopyrightFile implements Serializable {
     @Schema(description = "文件类型")
     private String fileType;
     
-    /**文件完整内容（代码、文档等）*/
+    /**文件完整内容（代码、文档等），较大的文本压缩后保存*/
     @Schema(description = "文件完整内容（代码、文档等）")
+    @TableField(typeHandler = CompressedTextTypeHandler.class)
     private String content;
 
+    /**二进制产物（截图、PDF、Word）在BlobStore中的引用，此时content为空*/
+    @Schema(description = "二进制产物引用")
+    private String blobRef;
+
+    /**二进制产物大小（字节）*/
+    @Schema(description = "二进制产物大小（字节）")
+    private Long contentSize;
+
+    /**二进制产物的媒体类型，如image/png、application/pdf*/
+    @Schema(description = "媒体类型")
+    private String mediaType;
+
+    /**单实例文件类型的唯一键，与project_id组成唯一约束；截图等一个项目有多条记录的类型为空*/
+    @Schema(description = "单实例唯一键")
+    private String singletonKey;
+
+    /**生成该文件所用输入的哈希，输入不变时断点续跑可直接复用*/
+    @Schema(description = "生成输入哈希")
+    private String inputHash;
+
     // ==================== 简单状态 ====================
     
     /**文件状态：pending待生成, generating生成中, completed已完成, error错误*/
@@ -153,7 +175,7 @@ public class CopyrightFile implements Serializable {
      * 检查是否有实际内容
      */
     public Boolean hasContent() {
-        return content != null && !content.trim().isEmpty();
+        return blobRef != null || (content != null && !content.trim().isEmpty());
     }
 
     // ==================== 软著信息字段 ====================
@@ -0,0 +1,91 @@
+package org.jeecg.modules.agenthub.copyright.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import org.springframework.format.annotation.DateTimeFormat;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+/**
+ * 项目生成任务实体类
+ * 工作节点通过租约认领任务并定期续租，节点宕机后租约过期，任务可被其他节点重新认领
+ */
+@Data
+@TableName("copyright_generation_job")
+@Accessors(chain = true)
+@EqualsAndHashCode(callSuper = false)
+@Schema(description="项目生成任务表")
+public class CopyrightGenerationJob implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**主键*/
+    @TableId(type = IdType.ASSIGN_ID)
+    @Schema(description = "主键")
+    private String id;
+
+    /**项目ID*/
+    @Schema(description = "项目ID")
+    private String projectId;
+
+    /**任务状态：queued排队中, running执行中, completed已完成, failed失败, cancelled已取消*/
+    @Schema(description = "任务状态")
+    private String status;
+
+    /**持有租约的工作节点*/
+    @Schema(description = "持有租约的工作节点")
+    private String owner;
+
+    /**租约到期时间，过期后任务可被重新认领*/
+    @JsonFormat(timezone = "GMT+8",pattern = "yyyy-MM-dd HH:mm:ss")
+    @DateTimeFormat(pattern="yyyy-MM-dd HH:mm:ss")
+    @Schema(description = "租约到期时间")
+    private Date leaseUntil;
+
+    /**最近一次认领时间*/
+    @JsonFormat(timezone = "GMT+8",pattern = "yyyy-MM-dd HH:mm:ss")
+    @DateTimeFormat(pattern="yyyy-MM-dd HH:mm:ss")
+    @Schema(description = "最近一次认领时间")
+    private Date startTime;
+
+    /**是否断点续跑：复用输入哈希一致的已有产物，而不只是本次任务生成的产物*/
+    @Schema(description = "是否断点续跑")
+    private Boolean resume;
+
+    /**批次ID，批量提交的任务填写；批量任务和交互任务分别计算单用户并发上限*/
+    @Schema(description = "批次ID")
+    private String batchId;
+
+    /**已认领次数*/
+    @Schema(description = "已认领次数")
+    private Integer attempts;
+
+    /**失败原因*/
+    @Schema(description = "失败原因")
+    private String errorMessage;
+
+    /**提交人显示名称，写入生成文件的创建人；按用户公平调度使用createBy（用户ID）*/
+    @Schema(description = "提交人")
+    private String submittedBy;
+
+    /**创建人（用户ID）*/
+    @Schema(description = "创建人")
+    private String createBy;
+
+    /**创建日期*/
+    @JsonFormat(timezone = "GMT+8",pattern = "yyyy-MM-dd HH:mm:ss")
+    @DateTimeFormat(pattern="yyyy-MM-dd HH:mm:ss")
+    @Schema(description = "创建日期")
+    private Date createTime;
+
+    /**更新日期*/
+    @JsonFormat(timezone = "GMT+8",pattern = "yyyy-MM-dd HH:mm:ss")
+    @DateTimeFormat(pattern="yyyy-MM-dd HH:mm:ss")
+    @Schema(description = "更新日期")
+    private Date updateTime;
+}
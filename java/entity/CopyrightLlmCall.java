@@ -0,0 +1,85 @@
+package org.jeecg.modules.agenthub.copyright.entity;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import org.springframework.format.annotation.DateTimeFormat;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+/**
+ * 大模型调用记录实体类（每次上游调用一行）
+ */
+@Data
+@TableName("copyright_llm_call")
+@Accessors(chain = true)
+@EqualsAndHashCode(callSuper = false)
+@Schema(description="大模型调用记录表")
+public class CopyrightLlmCall implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**主键*/
+    @TableId(type = IdType.ASSIGN_ID)
+    @Schema(description = "主键")
+    private String id;
+
+    /**项目ID，非流水线调用为空*/
+    @Schema(description = "项目ID")
+    private String projectId;
+
+    /**生成阶段：frontend, backend_part1..3, chapter1..4, software_info等*/
+    @Schema(description = "生成阶段")
+    private String stage;
+
+    /**模型名称*/
+    @Schema(description = "模型名称")
+    private String model;
+
+    /**提示词token数*/
+    @Schema(description = "提示词token数")
+    private Long promptTokens;
+
+    /**命中上游前缀缓存的提示词token数*/
+    @Schema(description = "命中上游前缀缓存的提示词token数")
+    private Long promptCacheHitTokens;
+
+    /**生成token数*/
+    @Schema(description = "生成token数")
+    private Long completionTokens;
+
+    /**上游耗时（毫秒，从首次发出请求到结束，含重试）*/
+    @Schema(description = "上游耗时（毫秒，含重试）")
+    private Long latencyMs;
+
+    /**发出请求前的排队时间（毫秒，熔断、本节点限流和集群许可）*/
+    @Schema(description = "排队时间（毫秒）")
+    private Long queueWaitMs;
+
+    /**重试和对冲的额外请求次数*/
+    @Schema(description = "重试次数")
+    private Integer retries;
+
+    /**估算费用（元）*/
+    @Schema(description = "估算费用（元）")
+    private BigDecimal cost;
+
+    /**调用结果：success成功, error失败, cancelled流式调用被取消*/
+    @Schema(description = "调用结果")
+    private String status;
+
+    /**失败原因*/
+    @Schema(description = "失败原因")
+    private String errorMessage;
+
+    /**创建日期*/
+    @JsonFormat(timezone = "GMT+8",pattern = "yyyy-MM-dd HH:mm:ss")
+    @DateTimeFormat(pattern="yyyy-MM-dd HH:mm:ss")
+    @Schema(description = "创建日期")
+    private Date createTime;
+}
@@ -0,0 +1,59 @@
+package org.jeecg.modules.agenthub.copyright.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import org.springframework.format.annotation.DateTimeFormat;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+/**
+ * 集群许可实体类
+ * 每种资源按集群上限预先建好许可槽位，节点以租约方式占用槽位，节点宕机后租约过期，槽位自动空出
+ */
+@Data
+@TableName("copyright_permit")
+@Accessors(chain = true)
+@EqualsAndHashCode(callSuper = false)
+@Schema(description="集群许可表")
+public class CopyrightPermit implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**主键，格式为 资源:槽位序号*/
+    @TableId(type = IdType.INPUT)
+    @Schema(description = "主键")
+    private String id;
+
+    /**资源名称：llm-reasoner/llm-chat/browser*/
+    @Schema(description = "资源名称")
+    private String resource;
+
+    /**槽位序号，序号不小于当前上限的槽位不再分配*/
+    @Schema(description = "槽位序号")
+    private Integer slot;
+
+    /**占用槽位的工作节点*/
+    @Schema(description = "占用槽位的工作节点")
+    private String owner;
+
+    /**本次占用的令牌，空闲槽位为空*/
+    @Schema(description = "占用令牌")
+    private String token;
+
+    /**租约到期时间，过期后槽位可被重新占用*/
+    @JsonFormat(timezone = "GMT+8",pattern = "yyyy-MM-dd HH:mm:ss")
+    @DateTimeFormat(pattern="yyyy-MM-dd HH:mm:ss")
+    @Schema(description = "租约到期时间")
+    private Date leaseUntil;
+
+    /**更新日期*/
+    @JsonFormat(timezone = "GMT+8",pattern = "yyyy-MM-dd HH:mm:ss")
+    @DateTimeFormat(pattern="yyyy-MM-dd HH:mm:ss")
+    @Schema(description = "更新日期")
+    private Date updateTime;
+}
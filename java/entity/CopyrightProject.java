@@ -6,6 +6,7 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.Version;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import com.fasterxml.jackson.annotation.JsonFormat;
@@ -57,6 +58,10 @@ public class CopyrightProject implements Serializable {
     @Schema(description = "使用的AI模型")
     private String modelId;
     
+    /**批量提交的批次ID，单独创建的项目为空*/
+    @Schema(description = "批次ID")
+    private String batchId;
+    
     // ==================== 生成状态 ====================
     
     /**项目状态：pending待生成, generating生成中, completed已完成, error错误, cancelled取消*/
@@ -88,6 +93,11 @@ public class CopyrightProject implements Serializable {
     @Schema(description = "生成中文件数量")
     private Integer generatingFiles;
 
+    /**乐观锁版本号，每次状态转换递增；按整行更新时由乐观锁插件校验，只更新部分字段的写入不带版本号*/
+    @Version
+    @Schema(description = "版本号")
+    private Integer version;
+
 
 
     // ==================== 时间信息 ====================
@@ -162,13 +172,7 @@ public class CopyrightProject implements Serializable {
      */
     public String getStatusDesc() {
         if (status == null) return "未知";
-        switch (status) {
-            case "pending": return "待生成";
-            case "generating": return "生成中";
-            case "completed": return "已完成";
-            case "error": return "错误";
-            case "cancelled": return "已取消";
-            default: return "未知状态";
-        }
+        ProjectStatus projectStatus = ProjectStatus.of(status);
+        return projectStatus != null ? projectStatus.getDesc() : "未知状态";
     }
 } 
\ No newline at end of file
@@ -0,0 +1,66 @@
+package org.jeecg.modules.agenthub.copyright.entity;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 项目状态及允许的状态转换：
+ * pending → generating；generating → completed/error/cancelled；completed/error/cancelled → generating（重新生成或断点续跑）
+ */
+public enum ProjectStatus {
+
+    PENDING("pending", "待生成"),
+    GENERATING("generating", "生成中"),
+    COMPLETED("completed", "已完成"),
+    ERROR("error", "错误"),
+    CANCELLED("cancelled", "已取消");
+
+    private final String code;
+    private final String desc;
+
+    ProjectStatus(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    /**
+     * 是否允许从当前状态转换到目标状态
+     */
+    public boolean canTransitionTo(ProjectStatus target) {
+        return targets().contains(target);
+    }
+
+    private Set<ProjectStatus> targets() {
+        switch (this) {
+            case PENDING:
+            case COMPLETED:
+            case ERROR:
+            case CANCELLED:
+                return EnumSet.of(GENERATING);
+            case GENERATING:
+                return EnumSet.of(COMPLETED, ERROR, CANCELLED);
+            default:
+                return EnumSet.noneOf(ProjectStatus.class);
+        }
+    }
+
+    /**
+     * 按状态码查找，未知状态返回null
+     */
+    public static ProjectStatus of(String code) {
+        for (ProjectStatus status : values()) {
+            if (status.code.equals(code)) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
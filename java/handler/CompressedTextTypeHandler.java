@@ -0,0 +1,126 @@
+package org.jeecg.modules.agenthub.copyright.handler;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 文本内容压缩存储
+ * 写入时超过MIN_COMPRESS_BYTES且压缩后更小的文本以 MAGIC + deflate 数据保存，否则保存UTF-8原文；
+ * 读取时按开头的MAGIC判断格式，没有MAGIC的早期数据按UTF-8原文读取。
+ * MAGIC以0x00开头，合法的UTF-8文本不会以它开头，两种格式不会混淆。
+ * 压缩前后字节数和编解码耗时累计在静态计数器中，由TextCodecMetrics导出。
+ * 只通过@TableField指定给具体字段，不做全局注册，避免影响其他String字段。
+ */
+public class CompressedTextTypeHandler extends BaseTypeHandler<String> {
+
+    private static final byte[] MAGIC = {0x00, 'Z', 'D', 0x01};
+
+    /**小于该字节数的文本不压缩*/
+    private static final int MIN_COMPRESS_BYTES = 512;
+
+    static final AtomicLong RAW_BYTES = new AtomicLong();
+    static final AtomicLong STORED_BYTES = new AtomicLong();
+    static final AtomicLong ENCODE_NANOS = new AtomicLong();
+    static final AtomicLong DECODE_NANOS = new AtomicLong();
+    static final AtomicLong LEGACY_READS = new AtomicLong();
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBytes(i, encode(parameter));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decode(rs.getBytes(columnName));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decode(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public String getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decode(cs.getBytes(columnIndex));
+    }
+
+    static byte[] encode(String text) {
+        long start = System.nanoTime();
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] stored = raw;
+        if (raw.length >= MIN_COMPRESS_BYTES) {
+            byte[] compressed = compress(raw);
+            if (compressed.length < raw.length) {
+                stored = compressed;
+            }
+        }
+        RAW_BYTES.addAndGet(raw.length);
+        STORED_BYTES.addAndGet(stored.length);
+        ENCODE_NANOS.addAndGet(System.nanoTime() - start);
+        return stored;
+    }
+
+    static String decode(byte[] stored) throws SQLException {
+        if (stored == null) {
+            return null;
+        }
+        if (!hasMagic(stored)) {
+            LEGACY_READS.incrementAndGet();
+            return new String(stored, StandardCharsets.UTF_8);
+        }
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, MAGIC.length, stored.length - MAGIC.length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SQLException("压缩内容不完整");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new SQLException("解压文本内容失败: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+            DECODE_NANOS.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private static byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + MAGIC.length);
+            out.write(MAGIC, 0, MAGIC.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean hasMagic(byte[] stored) {
+        return stored.length >= MAGIC.length && Arrays.equals(stored, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+}
@@ -0,0 +1,59 @@
+package org.jeecg.modules.agenthub.copyright.handler;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文本压缩的统计指标：原文和实际写入的字节数、压缩比、编解码耗时，以copyright.text.codec为前缀
+ */
+@Component
+public class TextCodecMetrics implements MeterBinder {
+
+    private static final String PREFIX = "copyright.text.codec";
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        counter(registry, PREFIX + ".raw.bytes", "写入前的文本字节数", CompressedTextTypeHandler.RAW_BYTES);
+        counter(registry, PREFIX + ".stored.bytes", "实际写入数据库的字节数", CompressedTextTypeHandler.STORED_BYTES);
+        counter(registry, PREFIX + ".legacy.reads", "读取到未压缩早期数据的次数", CompressedTextTypeHandler.LEGACY_READS);
+        FunctionCounter.builder(PREFIX + ".encode.seconds", CompressedTextTypeHandler.ENCODE_NANOS,
+                nanos -> nanos.get() / (double) TimeUnit.SECONDS.toNanos(1))
+            .description("压缩累计耗时").register(registry);
+        FunctionCounter.builder(PREFIX + ".decode.seconds", CompressedTextTypeHandler.DECODE_NANOS,
+                nanos -> nanos.get() / (double) TimeUnit.SECONDS.toNanos(1))
+            .description("解压累计耗时").register(registry);
+        Gauge.builder(PREFIX + ".ratio", this, metrics -> ratio())
+            .description("累计压缩比（原文字节数/写入字节数）").register(registry);
+    }
+
+    /**
+     * 本节点启动以来的压缩统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rawBytes", CompressedTextTypeHandler.RAW_BYTES.get());
+        stats.put("storedBytes", CompressedTextTypeHandler.STORED_BYTES.get());
+        stats.put("ratio", ratio());
+        stats.put("encodeMillis", TimeUnit.NANOSECONDS.toMillis(CompressedTextTypeHandler.ENCODE_NANOS.get()));
+        stats.put("decodeMillis", TimeUnit.NANOSECONDS.toMillis(CompressedTextTypeHandler.DECODE_NANOS.get()));
+        stats.put("legacyReads", CompressedTextTypeHandler.LEGACY_READS.get());
+        return stats;
+    }
+
+    private static double ratio() {
+        long stored = CompressedTextTypeHandler.STORED_BYTES.get();
+        return stored > 0 ? (double) CompressedTextTypeHandler.RAW_BYTES.get() / stored : 1.0;
+    }
+
+    private static void counter(MeterRegistry registry, String name, String description, AtomicLong value) {
+        FunctionCounter.builder(name, value, AtomicLong::get).description(description).register(registry);
+    }
+}
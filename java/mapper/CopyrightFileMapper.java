@@ -1,20 +1,79 @@
 package org.jeecg.modules.agenthub.copyright.mapper;
 
 import java.util.List;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultMap;
 import org.apache.ibatis.annotations.Select;
 import org.jeecg.modules.agenthub.copyright.entity.CopyrightFile;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
 /**
  * 软著文件数据访问接口
+ * 列表和状态类查询只取元数据列，content按需单独读取；
+ * 读取content的查询需使用实体的autoResultMap，才会经过CompressedTextTypeHandler解压
  */
 public interface CopyrightFileMapper extends BaseMapper<CopyrightFile> {
 
     /**
-     * 根据项目ID查询文件列表
+     * 元数据列，不含content等大字段，也不能出现引用content的表达式，否则InnoDB会读取每一行的溢出页；
+     * 早期数据的content_size和media_type由sql/init.sql中的升级脚本一次性补齐
      */
-    @Select("SELECT * FROM copyright_file WHERE project_id = #{projectId} ORDER BY create_time DESC")
-    List<CopyrightFile> selectByProjectId(@Param("projectId") String projectId);
+    String META_COLUMNS = "id, project_id, file_name, title, file_type, input_hash, blob_ref, content_size, media_type, " +
+            "status, source_code_lines, create_by, create_time, update_by, update_time";
 
-} 
\ No newline at end of file
+    /**
+     * 根据项目ID查询文件元数据列表
+     */
+    @Select("SELECT " + META_COLUMNS + " FROM copyright_file WHERE project_id = #{projectId} ORDER BY create_time DESC")
+    List<CopyrightFile> selectMetaByProjectId(@Param("projectId") String projectId);
+
+    /**
+     * 查询项目某类型的全部文件元数据（如截图），按创建时间排序
+     */
+    @Select("SELECT " + META_COLUMNS + " FROM copyright_file WHERE project_id = #{projectId} AND file_type = #{fileType} " +
+            "ORDER BY create_time")
+    List<CopyrightFile> selectMetaListByProjectIdAndType(@Param("projectId") String projectId, @Param("fileType") String fileType);
+
+    /**
+     * 查询项目某类型最新一个文件的元数据
+     */
+    @Select("SELECT " + META_COLUMNS + " FROM copyright_file WHERE project_id = #{projectId} AND file_type = #{fileType} " +
+            "ORDER BY create_time DESC LIMIT 1")
+    CopyrightFile selectMetaByProjectIdAndType(@Param("projectId") String projectId, @Param("fileType") String fileType);
+
+    /**
+     * 查询项目某类型最新一个文件（含内容）
+     */
+    @Select("SELECT * FROM copyright_file WHERE project_id = #{projectId} AND file_type = #{fileType} " +
+            "ORDER BY create_time DESC LIMIT 1")
+    @ResultMap("mybatis-plus_CopyrightFile")
+    CopyrightFile selectByProjectIdAndType(@Param("projectId") String projectId, @Param("fileType") String fileType);
+
+    /**
+     * 批量写入生成文件，(project_id, singleton_key)已存在时原地更新内容，保留原记录的id、创建人和创建时间
+     */
+    @Insert("<script>" +
+            "INSERT INTO copyright_file (id, project_id, file_type, singleton_key, file_name, title, content, blob_ref, " +
+            "content_size, media_type, input_hash, status, create_by, create_time, update_by, update_time) VALUES " +
+            "<foreach collection='files' item='f' separator=','>" +
+            "(#{f.id}, #{f.projectId}, #{f.fileType}, #{f.singletonKey}, #{f.fileName}, #{f.title}, " +
+            "#{f.content, typeHandler=org.jeecg.modules.agenthub.copyright.handler.CompressedTextTypeHandler}, " +
+            "#{f.blobRef}, #{f.contentSize}, #{f.mediaType}, #{f.inputHash}, #{f.status}, " +
+            "#{f.createBy}, #{f.createTime}, #{f.updateBy}, #{f.updateTime})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE file_name = VALUES(file_name), title = VALUES(title), content = VALUES(content), " +
+            "blob_ref = VALUES(blob_ref), content_size = VALUES(content_size), media_type = VALUES(media_type), " +
+            "input_hash = VALUES(input_hash), status = VALUES(status), update_by = VALUES(update_by), " +
+            "update_time = VALUES(update_time)" +
+            "</script>")
+    int upsertBatch(@Param("files") List<CopyrightFile> files);
+
+    /**
+     * 只读取文件的文本内容
+     */
+    @Select("SELECT id, content FROM copyright_file WHERE id = #{id}")
+    @ResultMap("mybatis-plus_CopyrightFile")
+    CopyrightFile selectContentById(@Param("id") String id);
+
+}
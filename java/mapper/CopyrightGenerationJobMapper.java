@@ -0,0 +1,131 @@
+package org.jeecg.modules.agenthub.copyright.mapper;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightGenerationJob;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * 项目生成任务数据访问接口
+ * 租约时间统一使用数据库时间，避免各节点时钟不一致
+ */
+public interface CopyrightGenerationJobMapper extends BaseMapper<CopyrightGenerationJob> {
+
+    /**
+     * 查询每个用户最早的一个可认领交互任务和批量任务（排队中，或执行中但租约已过期），由调用方按公平策略排序；
+     * 两类任务各取一个，批量任务达到上限时不会挡住同一用户的交互任务
+     */
+    @Select("SELECT j.* FROM copyright_generation_job j WHERE j.attempts < #{maxAttempts} " +
+            "AND (j.status = 'queued' OR (j.status = 'running' AND j.lease_until < NOW())) " +
+            "AND NOT EXISTS (SELECT 1 FROM copyright_generation_job o WHERE o.create_by = j.create_by " +
+            "AND (o.batch_id IS NULL) = (j.batch_id IS NULL) " +
+            "AND o.attempts < #{maxAttempts} AND (o.status = 'queued' OR (o.status = 'running' AND o.lease_until < NOW())) " +
+            "AND (o.create_time < j.create_time OR (o.create_time = j.create_time AND o.id < j.id))) " +
+            "ORDER BY j.create_time LIMIT #{limit}")
+    List<CopyrightGenerationJob> selectClaimableHeads(@Param("maxAttempts") int maxAttempts, @Param("limit") int limit);
+
+    /**
+     * 按用户统计租约有效的执行中任务数，batchRunning为其中的批量任务数
+     */
+    @Select("SELECT create_by AS createBy, COUNT(*) AS running, " +
+            "SUM(CASE WHEN batch_id IS NOT NULL THEN 1 ELSE 0 END) AS batchRunning FROM copyright_generation_job " +
+            "WHERE status = 'running' AND lease_until >= NOW() GROUP BY create_by")
+    List<Map<String, Object>> countRunningByUser();
+
+    /**
+     * 按用户统计排队中的任务数
+     */
+    @Select("SELECT create_by AS createBy, COUNT(*) AS queued FROM copyright_generation_job " +
+            "WHERE status = 'queued' GROUP BY create_by")
+    List<Map<String, Object>> countQueuedByUser();
+
+    /**
+     * 统计指定用户在某时间点及之前创建的排队任务数，即该任务在用户自己队列中的序号
+     */
+    @Select("SELECT COUNT(*) FROM copyright_generation_job WHERE status = 'queued' " +
+            "AND create_by = #{createBy} AND create_time <= #{createTime}")
+    int countQueuedUpTo(@Param("createBy") String createBy, @Param("createTime") Date createTime);
+
+    /**
+     * 查询项目最近一次排队中的任务
+     */
+    @Select("SELECT * FROM copyright_generation_job WHERE project_id = #{projectId} AND status = 'queued' " +
+            "ORDER BY create_time DESC LIMIT 1")
+    CopyrightGenerationJob selectQueuedByProject(@Param("projectId") String projectId);
+
+    /**
+     * 最近完成任务的平均执行时长（秒）
+     */
+    @Select("SELECT AVG(TIMESTAMPDIFF(SECOND, start_time, update_time)) FROM copyright_generation_job " +
+            "WHERE status = 'completed' AND start_time IS NOT NULL AND update_time >= #{since}")
+    Double avgRunSeconds(@Param("since") Date since);
+
+    /**
+     * 当前持有租约的工作节点数
+     */
+    @Select("SELECT COUNT(DISTINCT owner) FROM copyright_generation_job WHERE status = 'running' AND lease_until >= NOW()")
+    int countActiveOwners();
+
+    /**
+     * 认领任务，条件更新保证多个节点同时认领时只有一个成功
+     */
+    @Update("UPDATE copyright_generation_job SET status = 'running', owner = #{owner}, " +
+            "lease_until = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND), attempts = attempts + 1, " +
+            "start_time = NOW(), update_time = NOW() " +
+            "WHERE id = #{id} AND attempts = #{attempts} " +
+            "AND (status = 'queued' OR (status = 'running' AND lease_until < NOW()))")
+    int claim(@Param("id") String id, @Param("owner") String owner,
+              @Param("leaseSeconds") int leaseSeconds, @Param("attempts") int attempts);
+
+    /**
+     * 续租，返回0说明租约已被其他节点接管
+     */
+    @Update("UPDATE copyright_generation_job SET lease_until = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND), update_time = NOW() " +
+            "WHERE id = #{id} AND owner = #{owner} AND status = 'running'")
+    int renewLease(@Param("id") String id, @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+
+    /**
+     * 结束任务，只有仍持有租约的节点可以结束
+     */
+    @Update("UPDATE copyright_generation_job SET status = #{status}, error_message = #{errorMessage}, " +
+            "lease_until = NULL, update_time = NOW() " +
+            "WHERE id = #{id} AND owner = #{owner} AND status = 'running'")
+    int finish(@Param("id") String id, @Param("owner") String owner,
+               @Param("status") String status, @Param("errorMessage") String errorMessage);
+
+    /**
+     * 取消项目的排队中和执行中的任务，执行中的任务由持有节点的取消轮询发现后停止
+     */
+    @Update("UPDATE copyright_generation_job SET status = 'cancelled', lease_until = NULL, update_time = NOW() " +
+            "WHERE project_id = #{projectId} AND status IN ('queued', 'running')")
+    int cancelByProject(@Param("projectId") String projectId);
+
+    /**
+     * 节点停机时归还租约，任务立即可被其他节点认领，本次认领不计入次数
+     */
+    @Update("UPDATE copyright_generation_job SET status = 'queued', owner = NULL, lease_until = NULL, " +
+            "attempts = GREATEST(attempts - 1, 0), update_time = NOW() " +
+            "WHERE owner = #{owner} AND status = 'running'")
+    int releaseByOwner(@Param("owner") String owner);
+
+    /**
+     * 查询认领次数已用完但仍未结束的任务
+     */
+    @Select("SELECT * FROM copyright_generation_job WHERE attempts >= #{maxAttempts} " +
+            "AND (status = 'queued' OR (status = 'running' AND lease_until < NOW()))")
+    List<CopyrightGenerationJob> selectExhausted(@Param("maxAttempts") int maxAttempts);
+
+    /**
+     * 把认领次数已用完的任务标记为失败
+     */
+    @Update("UPDATE copyright_generation_job SET status = 'failed', error_message = #{errorMessage}, " +
+            "lease_until = NULL, update_time = NOW() " +
+            "WHERE id = #{id} AND attempts >= #{maxAttempts} " +
+            "AND (status = 'queued' OR (status = 'running' AND lease_until < NOW()))")
+    int failExhausted(@Param("id") String id, @Param("maxAttempts") int maxAttempts, @Param("errorMessage") String errorMessage);
+
+}
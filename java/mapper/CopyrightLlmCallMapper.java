@@ -0,0 +1,40 @@
+package org.jeecg.modules.agenthub.copyright.mapper;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightLlmCall;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * 大模型调用记录数据访问接口
+ */
+public interface CopyrightLlmCallMapper extends BaseMapper<CopyrightLlmCall> {
+
+    /**
+     * 按阶段汇总单个项目的调用，耗时最长的阶段排在前面
+     */
+    @Select("SELECT stage, model, COUNT(*) AS calls, SUM(prompt_tokens) AS promptTokens, " +
+            "SUM(prompt_cache_hit_tokens) AS promptCacheHitTokens, SUM(completion_tokens) AS completionTokens, " +
+            "SUM(latency_ms) AS totalLatencyMs, MAX(latency_ms) AS maxLatencyMs, SUM(queue_wait_ms) AS totalQueueWaitMs, " +
+            "SUM(retries) AS retries, SUM(cost) AS cost, SUM(CASE WHEN status = 'error' THEN 1 ELSE 0 END) AS errors " +
+            "FROM copyright_llm_call WHERE project_id = #{projectId} " +
+            "GROUP BY stage, model ORDER BY totalLatencyMs DESC")
+    List<Map<String, Object>> sumByStageForProject(@Param("projectId") String projectId);
+
+    /**
+     * 按阶段汇总指定时间之后的全部调用，平均耗时只统计成功的调用
+     */
+    @Select("SELECT stage, model, COUNT(*) AS calls, COUNT(DISTINCT project_id) AS projects, " +
+            "AVG(prompt_tokens) AS avgPromptTokens, AVG(completion_tokens) AS avgCompletionTokens, " +
+            "SUM(prompt_cache_hit_tokens) AS promptCacheHitTokens, SUM(prompt_tokens) AS promptTokens, " +
+            "AVG(CASE WHEN status = 'success' THEN latency_ms END) AS avgLatencyMs, MAX(latency_ms) AS maxLatencyMs, " +
+            "AVG(queue_wait_ms) AS avgQueueWaitMs, " +
+            "SUM(retries) AS retries, SUM(cost) AS cost, SUM(CASE WHEN status = 'error' THEN 1 ELSE 0 END) AS errors " +
+            "FROM copyright_llm_call WHERE create_time >= #{since} " +
+            "GROUP BY stage, model ORDER BY avgLatencyMs DESC")
+    List<Map<String, Object>> sumByStageSince(@Param("since") Date since);
+
+}
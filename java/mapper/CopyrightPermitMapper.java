@@ -0,0 +1,61 @@
+package org.jeecg.modules.agenthub.copyright.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightPermit;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * 集群许可数据访问接口
+ * 租约时间统一使用数据库时间，避免各节点时钟不一致
+ */
+public interface CopyrightPermitMapper extends BaseMapper<CopyrightPermit> {
+
+    /**
+     * 创建许可槽位，已存在时忽略
+     */
+    @Insert("INSERT IGNORE INTO copyright_permit (id, resource, slot, update_time) " +
+            "VALUES (#{id}, #{resource}, #{slot}, NOW())")
+    int insertSlot(@Param("id") String id, @Param("resource") String resource, @Param("slot") int slot);
+
+    /**
+     * 占用一个空闲或租约已过期的槽位，条件更新加行锁，多个节点同时占用同一槽位时只有一个成功
+     */
+    @Update("UPDATE copyright_permit SET owner = #{owner}, token = #{token}, " +
+            "lease_until = TIMESTAMPADD(SECOND, #{leaseSeconds}, NOW()), update_time = NOW() " +
+            "WHERE resource = #{resource} AND slot < #{limit} AND (token IS NULL OR lease_until < NOW()) " +
+            "LIMIT 1")
+    int acquire(@Param("resource") String resource, @Param("limit") int limit, @Param("owner") String owner,
+                @Param("token") String token, @Param("leaseSeconds") int leaseSeconds);
+
+    /**
+     * 释放本次占用的槽位
+     */
+    @Update("UPDATE copyright_permit SET owner = NULL, token = NULL, lease_until = NULL, update_time = NOW() " +
+            "WHERE token = #{token}")
+    int release(@Param("token") String token);
+
+    /**
+     * 续租指定节点占用的全部槽位
+     */
+    @Update("UPDATE copyright_permit SET lease_until = TIMESTAMPADD(SECOND, #{leaseSeconds}, NOW()), update_time = NOW() " +
+            "WHERE owner = #{owner} AND token IS NOT NULL")
+    int renewByOwner(@Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+
+    /**
+     * 节点停机时释放其占用的全部槽位
+     */
+    @Update("UPDATE copyright_permit SET owner = NULL, token = NULL, lease_until = NULL, update_time = NOW() " +
+            "WHERE owner = #{owner}")
+    int releaseByOwner(@Param("owner") String owner);
+
+    /**
+     * 统计资源当前被占用的槽位数
+     */
+    @Select("SELECT COUNT(*) FROM copyright_permit WHERE resource = #{resource} " +
+            "AND token IS NOT NULL AND lease_until >= NOW()")
+    int countHeld(@Param("resource") String resource);
+
+}
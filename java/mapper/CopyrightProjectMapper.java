@@ -3,6 +3,7 @@ package org.jeecg.modules.agenthub.copyright.mapper;
 import java.util.List;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 import org.jeecg.modules.agenthub.copyright.entity.CopyrightProject;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
@@ -17,4 +18,20 @@ public interface CopyrightProjectMapper extends BaseMapper<CopyrightProject> {
     @Select("SELECT * FROM copyright_project WHERE create_by = #{createBy} ORDER BY create_time DESC")
     List<CopyrightProject> selectByCreateBy(@Param("createBy") String createBy);
 
+    /**
+     * 查询批次内的项目，按提交顺序
+     */
+    @Select("SELECT * FROM copyright_project WHERE batch_id = #{batchId} ORDER BY create_time, id")
+    List<CopyrightProject> selectByBatchId(@Param("batchId") String batchId);
+
+    /**
+     * 状态比较并设置：只有当前状态等于期望状态时才更新，同时递增版本号，返回影响行数
+     */
+    @Update("UPDATE copyright_project SET status = #{newStatus}, version = version + 1, update_time = NOW(), " +
+            "start_time = CASE WHEN #{newStatus} = 'generating' THEN NOW() ELSE start_time END, " +
+            "end_time = CASE WHEN #{newStatus} = 'completed' THEN NOW() ELSE end_time END " +
+            "WHERE id = #{id} AND status = #{expectedStatus}")
+    int compareAndSetStatus(@Param("id") String id, @Param("expectedStatus") String expectedStatus,
+                            @Param("newStatus") String newStatus);
+
 } 
\ No newline at end of file
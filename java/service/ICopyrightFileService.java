@@ -10,14 +10,61 @@ import java.util.List;
 public interface ICopyrightFileService extends IService<CopyrightFile> {
 
     /**
-     * 保存生成的文件
+     * 保存生成的文件，已存在同类型文件时原地更新
      */
-    CopyrightFile saveGeneratedFile(String projectId, String fileType, String fileName, String title, String fileContent, String createBy);
+    void saveGeneratedFile(String projectId, String fileType, String fileName, String title, String fileContent, String createBy);
 
     /**
-     * 根据项目ID和文件类型获取文件
+     * 保存生成的文件，同时记录生成该文件所用输入的哈希，用于断点续跑时判断产物是否仍然有效
+     */
+    void saveGeneratedFile(String projectId, String fileType, String fileName, String title, String fileContent, String createBy, String inputHash);
+
+    /**
+     * 保存生成的二进制文件（PDF、Word等），内容写入BlobStore，数据库只记录引用、大小和媒体类型
+     */
+    void saveGeneratedBinaryFile(String projectId, String fileType, String fileName, String title, byte[] data,
+                                 String mediaType, String createBy, String inputHash);
+
+    /**
+     * 用一条INSERT ... ON DUPLICATE KEY UPDATE语句保存多个生成文件，单实例类型已存在时原地更新，截图等多实例类型总是新增
+     * @param files 需填写projectId、fileType、fileName、title、内容和createBy，其余字段由本方法填写
+     */
+    void saveGeneratedFiles(List<CopyrightFile> files);
+
+    /**
+     * 把二进制内容写入BlobStore并填写文件的引用、大小和媒体类型，不保存文件记录
+     */
+    void storeBinary(CopyrightFile file, byte[] data, String mediaType);
+
+    /**
+     * 读取二进制内容：有引用时从BlobStore读取，早期数据从content中的Base64解码；没有内容时返回null
+     */
+    byte[] getBinaryContent(CopyrightFile file);
+
+    /**
+     * 根据项目ID和文件类型获取最新的文件（含内容）
      */
     CopyrightFile getFileByProjectIdAndType(String projectId, String fileType);
+
+    /**
+     * 根据项目ID和文件类型获取最新文件的元数据，不含内容
+     */
+    CopyrightFile getFileMetaByProjectIdAndType(String projectId, String fileType);
+
+    /**
+     * 项目全部文件的元数据，不含内容
+     */
+    List<CopyrightFile> listFileMeta(String projectId);
+
+    /**
+     * 项目某类型全部文件的元数据（如截图），按创建时间排序，不含内容
+     */
+    List<CopyrightFile> listFileMeta(String projectId, String fileType);
+
+    /**
+     * 按需读取文件的文本内容
+     */
+    String getContent(String fileId);
     
     /**
      * 根据项目ID删除文件
@@ -0,0 +1,69 @@
+package org.jeecg.modules.agenthub.copyright.service;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightGenerationJob;
+import com.baomidou.mybatisplus.extension.service.IService;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 项目生成任务服务接口
+ */
+public interface ICopyrightGenerationJobService extends IService<CopyrightGenerationJob> {
+
+    /**
+     * 创建排队中的生成任务
+     * @param createBy 项目创建人（用户ID），按用户公平调度以此为准
+     * @param submittedBy 提交人显示名称，写入生成文件的创建人
+     * @param resume 是否断点续跑
+     */
+    CopyrightGenerationJob enqueue(String projectId, String createBy, String submittedBy, boolean resume);
+
+    /**
+     * 创建排队中的批量任务，批量任务按单独的单用户并发上限认领
+     */
+    CopyrightGenerationJob enqueueBatch(String projectId, String createBy, String submittedBy, String batchId);
+
+    /**
+     * 按用户公平认领一个可执行的任务：执行中任务数与权重之比最小的用户优先，
+     * 交互任务和批量任务分别达到单用户并发上限时跳过；
+     * 没有可认领的任务时返回null
+     */
+    CopyrightGenerationJob claimNext(String owner, int leaseSeconds, int maxAttempts);
+
+    /**
+     * 续租，返回false说明租约已丢失
+     */
+    boolean renewLease(String jobId, String owner, int leaseSeconds);
+
+    /**
+     * 结束任务
+     */
+    boolean finish(String jobId, String owner, String status, String errorMessage);
+
+    /**
+     * 取消项目的排队中和执行中的任务，返回被取消的任务数
+     */
+    int cancelByProject(String projectId);
+
+    /**
+     * 在给定任务中查询已被取消的任务ID，用于执行节点及时发现其他节点发起的取消
+     */
+    List<String> findCancelled(Collection<String> jobIds);
+
+    /**
+     * 归还指定节点持有的全部租约
+     */
+    int releaseByOwner(String owner);
+
+    /**
+     * 把认领次数已用完的任务标记为失败，返回这些任务
+     */
+    List<CopyrightGenerationJob> failExhausted(int maxAttempts);
+
+    /**
+     * 项目排队中任务的预计排队位置和开始时间，项目没有排队中的任务时返回null
+     * @param workersPerNode 每个节点的并发任务数
+     */
+    Map<String, Object> getQueueStatus(String projectId, int workersPerNode);
+}
@@ -0,0 +1,27 @@
+package org.jeecg.modules.agenthub.copyright.service;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightLlmCall;
+import com.baomidou.mybatisplus.extension.service.IService;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 大模型调用记录服务接口
+ */
+public interface ICopyrightLlmCallService extends IService<CopyrightLlmCall> {
+
+    /**
+     * 记录一次上游调用，按配置的单价估算费用
+     */
+    void recordCall(CopyrightLlmCall call);
+
+    /**
+     * 单个项目按阶段汇总的token、耗时和费用
+     */
+    Map<String, Object> getProjectUsage(String projectId);
+
+    /**
+     * 最近若干天按阶段汇总的token、耗时和费用
+     */
+    List<Map<String, Object>> getStageUsage(int days);
+}
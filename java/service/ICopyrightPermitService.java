@@ -0,0 +1,40 @@
+package org.jeecg.modules.agenthub.copyright.service;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightPermit;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * 集群许可服务接口
+ */
+public interface ICopyrightPermitService extends IService<CopyrightPermit> {
+
+    /**
+     * 确保资源的槽位不少于limit个
+     */
+    void ensureSlots(String resource, int limit);
+
+    /**
+     * 占用一个槽位，返回本次占用的令牌；槽位已满时返回null
+     */
+    String tryAcquire(String resource, int limit, String owner, int leaseSeconds);
+
+    /**
+     * 释放令牌对应的槽位
+     */
+    void release(String token);
+
+    /**
+     * 续租节点占用的全部槽位，返回续租的槽位数
+     */
+    int renewByOwner(String owner, int leaseSeconds);
+
+    /**
+     * 释放节点占用的全部槽位，返回释放的槽位数
+     */
+    int releaseByOwner(String owner);
+
+    /**
+     * 资源当前在整个集群中被占用的槽位数
+     */
+    int countHeld(String resource);
+}
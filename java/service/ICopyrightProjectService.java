@@ -14,6 +14,20 @@ public interface ICopyrightProjectService extends IService<CopyrightProject> {
      */
     CopyrightProject createProject(String projectName, String appName, String domain, String appPrompt, String modelId, String createBy);
 
+    /**
+     * 在同一事务中批量创建项目并为每个项目写入生成任务，任一项目失败则全部回滚
+     * @param projects 项目信息，需填写appName、domain、appPrompt、modelId
+     * @param createBy 项目创建人（用户ID）
+     * @param submittedBy 提交人显示名称，写入生成文件的创建人
+     * @return 批次ID
+     */
+    String createBatch(List<CopyrightProject> projects, String createBy, String submittedBy);
+
+    /**
+     * 查询批次内的项目
+     */
+    List<CopyrightProject> getProjectsByBatch(String batchId);
+
     /**
      * 更新项目进度
      */
@@ -40,11 +54,11 @@ public interface ICopyrightProjectService extends IService<CopyrightProject> {
     List<CopyrightProject> getProjectsByUser(String createBy);
 
     /**
-     * 原子性检查并更新项目状态（用于并发控制）
+     * 原子性检查并更新项目状态（用于并发控制），只允许ProjectStatus中声明的状态转换
      * @param projectId 项目ID
      * @param expectedStatus 期望的当前状态
      * @param newStatus 新状态
-     * @return 是否更新成功
+     * @return 是否更新成功，当前状态已不是期望状态或转换不被允许时返回false
      */
     boolean checkAndUpdateStatus(String projectId, String expectedStatus, String newStatus);
 } 
\ No newline at end of file
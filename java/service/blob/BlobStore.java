@@ -0,0 +1,25 @@
+package org.jeecg.modules.agenthub.service.blob;
+
+import java.io.IOException;
+
+/**
+ * 二进制产物存储（截图、PDF、Word等），按内容的SHA-256寻址，相同内容只存一份；
+ * 数据库中只保存引用、大小和媒体类型
+ */
+public interface BlobStore {
+
+    /**
+     * 保存内容，返回引用，格式为 sha256:十六进制摘要；内容已存在时直接返回引用
+     */
+    String put(byte[] data) throws IOException;
+
+    /**
+     * 按引用读取内容，引用不存在时抛出IOException
+     */
+    byte[] get(String ref) throws IOException;
+
+    /**
+     * 引用对应的内容是否存在
+     */
+    boolean exists(String ref);
+}
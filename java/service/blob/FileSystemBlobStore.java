@@ -0,0 +1,100 @@
+package org.jeecg.modules.agenthub.service.blob;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 基于本地文件系统的二进制产物存储
+ * 文件按摘要前两级各两个字符分目录保存；先写临时文件再原子重命名，并发写入相同内容时结果一致。
+ * 多节点部署时root需指向共享存储（如NFS），否则其他节点读不到本节点写入的内容
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "copyright.blob.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final String PREFIX = "sha256:";
+
+    @Value("${copyright.blob.filesystem.root:./data/blobs}")
+    private String root;
+
+    private Path rootPath;
+
+    @PostConstruct
+    public void init() throws IOException {
+        rootPath = Paths.get(root).toAbsolutePath().normalize();
+        Files.createDirectories(rootPath.resolve("tmp"));
+        log.info("二进制产物存储目录: {}", rootPath);
+    }
+
+    @Override
+    public String put(byte[] data) throws IOException {
+        String hash = sha256(data);
+        Path target = pathOf(hash);
+        if (Files.exists(target)) {
+            return PREFIX + hash;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(rootPath.resolve("tmp"), hash, ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // 其他线程已写入相同内容
+            log.debug("二进制产物已存在: {}", hash);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return PREFIX + hash;
+    }
+
+    @Override
+    public byte[] get(String ref) throws IOException {
+        try {
+            return Files.readAllBytes(pathOf(hashOf(ref)));
+        } catch (NoSuchFileException e) {
+            throw new IOException("二进制产物不存在: " + ref, e);
+        }
+    }
+
+    @Override
+    public boolean exists(String ref) {
+        return Files.exists(pathOf(hashOf(ref)));
+    }
+
+    private Path pathOf(String hash) {
+        return rootPath.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    /**
+     * 校验引用格式，避免拼接出存储目录以外的路径
+     */
+    private static String hashOf(String ref) {
+        if (ref == null || !ref.startsWith(PREFIX) || !ref.substring(PREFIX.length()).matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("无效的二进制产物引用: " + ref);
+        }
+        return ref.substring(PREFIX.length());
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.jeecg.modules.agenthub.service.cluster;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightPermitService;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 集群级并发许可
+ * 本节点的限流器和线程池只约束单个节点，多节点部署时上游并发和浏览器数会随节点数成倍增加；
+ * 这里用copyright_permit表的槽位做全局上限：每个许可占用一个槽位并以租约方式持有，由心跳统一续租，
+ * 节点宕机后租约过期，槽位自动空出。槽位已满时按退避间隔重试，等待期间不占用线程。
+ * 许可表不可用时放行并告警，此时只受本节点的并发限制。
+ */
+@Slf4j
+@Component
+public class ClusterPermits {
+
+    public static final String LLM_REASONER = "llm-reasoner";
+    public static final String LLM_CHAT = "llm-chat";
+    public static final String BROWSER = "browser";
+
+    private static final long MIN_BACKOFF_MILLIS = 100;
+
+    @Value("${copyright.permit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${copyright.permit.lease-seconds:60}")
+    private int leaseSeconds;
+
+    /**心跳间隔应明显小于租约时长*/
+    @Value("${copyright.permit.heartbeat-seconds:15}")
+    private int heartbeatSeconds;
+
+    /**槽位已满时重试的最大间隔（毫秒）*/
+    @Value("${copyright.permit.max-backoff-millis:2000}")
+    private long maxBackoffMillis;
+
+    /**等待许可的最长时间，超过后调用失败*/
+    @Value("${copyright.permit.acquire-timeout-seconds:600}")
+    private int acquireTimeoutSeconds;
+
+    @Value("${copyright.permit.llm-reasoner.limit:32}")
+    private int reasonerLimit;
+
+    @Value("${copyright.permit.llm-chat.limit:64}")
+    private int chatLimit;
+
+    /**整个集群同时打开的浏览器数*/
+    @Value("${copyright.permit.browser.limit:4}")
+    private int browserLimit;
+
+    @Autowired
+    private ICopyrightPermitService permitService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private WorkloadExecutors workloadExecutors;
+
+    private final String owner = resolveOwner();
+
+    /**各资源的集群上限，初始化后不再修改*/
+    private Map<String, Integer> limits = Map.of();
+
+    /**本节点持有的许可数，按资源统计*/
+    private final Map<String, AtomicInteger> held = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> waitTimers = new ConcurrentHashMap<>();
+
+    private Disposable heartbeat;
+
+    /**
+     * 上限在其他组件启动前确定，启动阶段的调用不会因上限缺失而绕过集群许可
+     */
+    @PostConstruct
+    public void init() {
+        Map<String, Integer> configured = new LinkedHashMap<>();
+        configured.put(LLM_REASONER, reasonerLimit);
+        configured.put(LLM_CHAT, chatLimit);
+        configured.put(BROWSER, browserLimit);
+        limits = Collections.unmodifiableMap(configured);
+    }
+
+    /**
+     * 创建槽位并开始续租；槽位创建前的获取请求会按退避间隔等待
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("集群许可未启用，并发只受本节点限制");
+            return;
+        }
+        limits.forEach((resource, limit) -> {
+            try {
+                permitService.ensureSlots(resource, limit);
+            } catch (Exception e) {
+                log.warn("创建集群许可槽位失败: resource={}, {}", resource, e.getMessage());
+            }
+            Gauge.builder("copyright.permit.held", held.computeIfAbsent(resource, r -> new AtomicInteger()), AtomicInteger::get)
+                .tag("resource", resource).description("本节点持有的集群许可数").register(meterRegistry);
+        });
+        heartbeat = Flux.interval(Duration.ofSeconds(heartbeatSeconds), Duration.ofSeconds(heartbeatSeconds))
+            .onBackpressureDrop()
+            .concatMap(tick -> Mono.fromRunnable(this::renew).subscribeOn(permitScheduler())
+                .onErrorResume(e -> {
+                    log.warn("集群许可续租失败: {}", e.getMessage());
+                    return Mono.empty();
+                }))
+            .subscribe(null, e -> log.error("集群许可续租任务异常", e));
+        log.info("集群许可已启用: 节点={}, 上限={}, 租约={}秒", owner, limits, leaseSeconds);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (heartbeat != null) {
+            heartbeat.dispose();
+        }
+        if (enabled) {
+            try {
+                int released = permitService.releaseByOwner(owner);
+                if (released > 0) {
+                    log.info("节点停机，已释放 {} 个集群许可", released);
+                }
+            } catch (Exception e) {
+                log.warn("释放集群许可失败，等待租约过期: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 在集群许可内执行单次调用
+     */
+    public <T> Mono<T> run(String resource, Supplier<Mono<T>> call) {
+        return Mono.usingWhen(acquire(resource), permit -> call.get(),
+            permit -> permit.releaseAsync(),
+            (permit, error) -> permit.releaseAsync(),
+            permit -> permit.releaseAsync());
+    }
+
+    /**
+     * 在集群许可内执行流式调用，流结束后才释放许可
+     */
+    public <T> Flux<T> runMany(String resource, Supplier<Flux<T>> call) {
+        return Flux.usingWhen(acquire(resource), permit -> call.get(),
+            permit -> permit.releaseAsync(),
+            (permit, error) -> permit.releaseAsync(),
+            permit -> permit.releaseAsync());
+    }
+
+    /**
+     * 获取许可，槽位已满时按退避间隔重试；订阅取消时已拿到的许可会被释放
+     */
+    public Mono<Permit> acquire(String resource) {
+        Integer limit = limits.get(resource);
+        if (!enabled || limit == null) {
+            return Mono.just(Permit.NONE);
+        }
+        long start = System.nanoTime();
+        AtomicInteger attempts = new AtomicInteger();
+        return Mono.fromCallable(() -> tryAcquire(resource, limit))
+            .subscribeOn(permitScheduler())
+            .repeatWhenEmpty(Integer.MAX_VALUE, empty -> empty.concatMap(i -> {
+                if (attempts.incrementAndGet() == 1) {
+                    log.debug("集群许可已满，等待空闲槽位: resource={}, 上限={}", resource, limit);
+                }
+                return Mono.delay(backoff(i));
+            }))
+            .timeout(Duration.ofSeconds(acquireTimeoutSeconds),
+                Mono.error(() -> new IllegalStateException("等待集群许可超时: " + resource)))
+            .doOnNext(permit -> waitTimer(resource).record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+            .doOnDiscard(Permit.class, Permit::release);
+    }
+
+    /**
+     * 在当前线程阻塞获取许可，供浏览器会话等本身运行在专用线程上的阻塞任务使用
+     */
+    public Permit acquireBlocking(String resource) {
+        return acquire(resource).block();
+    }
+
+    /**
+     * 各资源的集群上限和当前占用数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        limits.forEach((resource, limit) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("limit", limit);
+            item.put("heldByNode", held.computeIfAbsent(resource, r -> new AtomicInteger()).get());
+            if (enabled) {
+                try {
+                    item.put("heldByCluster", permitService.countHeld(resource));
+                } catch (Exception e) {
+                    item.put("heldByCluster", null);
+                }
+            }
+            stats.put(resource, item);
+        });
+        return stats;
+    }
+
+    private Permit tryAcquire(String resource, int limit) {
+        String token;
+        try {
+            token = permitService.tryAcquire(resource, limit, owner, leaseSeconds);
+        } catch (Exception e) {
+            log.warn("集群许可表不可用，本次只受本节点并发限制: resource={}, {}", resource, e.getMessage());
+            return Permit.NONE;
+        }
+        if (token == null) {
+            return null;
+        }
+        held.computeIfAbsent(resource, r -> new AtomicInteger()).incrementAndGet();
+        return new Permit(this, resource, token);
+    }
+
+    /**
+     * 许可表读写在permit线程池执行
+     */
+    private Scheduler permitScheduler() {
+        return workloadExecutors.scheduler(WorkloadExecutors.PERMIT);
+    }
+
+    private void renew() {
+        try {
+            permitService.renewByOwner(owner, leaseSeconds);
+        } catch (Exception e) {
+            log.warn("集群许可续租失败: {}", e.getMessage());
+        }
+    }
+
+    private void release(Permit permit) {
+        held.computeIfAbsent(permit.resource, r -> new AtomicInteger()).decrementAndGet();
+        try {
+            permitService.release(permit.token);
+        } catch (Exception e) {
+            log.warn("释放集群许可失败，等待租约过期: resource={}, {}", permit.resource, e.getMessage());
+        }
+    }
+
+    private Duration backoff(long attempt) {
+        long millis = MIN_BACKOFF_MILLIS << Math.min(attempt, 10);
+        return Duration.ofMillis(Math.min(maxBackoffMillis, millis));
+    }
+
+    private Timer waitTimer(String resource) {
+        return waitTimers.computeIfAbsent(resource, r -> Timer.builder("copyright.permit.wait")
+            .tag("resource", r).description("获取集群许可的等待时间").register(meterRegistry));
+    }
+
+    private static String resolveOwner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 集群许可，只能释放一次
+     */
+    public static class Permit {
+
+        /**未启用或许可表不可用时使用的空许可*/
+        static final Permit NONE = new Permit(null, null, null);
+
+        private final ClusterPermits permits;
+        private final String resource;
+        private final String token;
+        private boolean released;
+
+        private Permit(ClusterPermits permits, String resource, String token) {
+            this.permits = permits;
+            this.resource = resource;
+            this.token = token;
+        }
+
+        public void release() {
+            synchronized (this) {
+                if (released || permits == null) {
+                    return;
+                }
+                released = true;
+            }
+            permits.release(this);
+        }
+
+        Mono<Void> releaseAsync() {
+            if (permits == null) {
+                return Mono.empty();
+            }
+            return Mono.<Void>fromRunnable(this::release).subscribeOn(permits.permitScheduler());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.jeecg.modules.agenthub.service.executor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按负载类型划分的线程池，阻塞操作不再共用ForkJoinPool.commonPool：
+ * llm-io（大模型结果的缓存读写、同步调用和结果后处理）、browser（Selenium截图会话）、
+ * browser-launch（带超时的ChromeDriver启动）、document-render（Word/PDF渲染）、sse（SSE推送和流式结果的保存）、
+ * db（生成流程中的项目和文件读写）、job（生成任务队列的认领、续租和取消检查）、permit（集群许可表读写）、
+ * progress（进度推送等定时任务）。
+ * 每个线程池有线程数和队列上限，队列满时按拒绝策略处理并计数；指标以copyright.executor为前缀。
+ * 开启virtual-threads且运行在Java 21及以上时，线程池改用虚拟线程，线程数和队列上限仍然生效。
+ */
+@Slf4j
+@Component
+public class WorkloadExecutors {
+
+    public static final String LLM_IO = "llm-io";
+    public static final String BROWSER = "browser";
+    public static final String BROWSER_LAUNCH = "browser-launch";
+    public static final String DOCUMENT_RENDER = "document-render";
+    public static final String SSE = "sse";
+    public static final String DB = "db";
+    public static final String JOB = "job";
+    public static final String PERMIT = "permit";
+    public static final String PROGRESS = "progress";
+
+    private static final String METRIC_PREFIX = "copyright.executor";
+
+    @Value("${copyright.executor.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Value("${copyright.executor.llm-io.threads:32}")
+    private int llmIoThreads;
+
+    @Value("${copyright.executor.llm-io.queue:1000}")
+    private int llmIoQueue;
+
+    /**每个截图会话占用一个Chrome进程，线程数即同时打开的浏览器数*/
+    @Value("${copyright.executor.browser.threads:2}")
+    private int browserThreads;
+
+    @Value("${copyright.executor.browser.queue:50}")
+    private int browserQueue;
+
+    @Value("${copyright.executor.document-render.threads:4}")
+    private int documentRenderThreads;
+
+    @Value("${copyright.executor.document-render.queue:200}")
+    private int documentRenderQueue;
+
+    /**SseEmitter写入是阻塞IO，慢客户端只占用该线程池，不影响其他负载*/
+    @Value("${copyright.executor.sse.threads:16}")
+    private int sseThreads;
+
+    @Value("${copyright.executor.sse.queue:1000}")
+    private int sseQueue;
+
+    /**MyBatis调用是阻塞的，切换到该线程池执行，避免占用Netty事件循环线程*/
+    @Value("${copyright.executor.db.threads:16}")
+    private int dbThreads;
+
+    @Value("${copyright.executor.db.queue:10000}")
+    private int dbQueue;
+
+    @Value("${copyright.executor.job.threads:4}")
+    private int jobThreads;
+
+    @Value("${copyright.executor.job.queue:1000}")
+    private int jobQueue;
+
+    @Value("${copyright.executor.permit.threads:4}")
+    private int permitThreads;
+
+    @Value("${copyright.executor.permit.queue:10000}")
+    private int permitQueue;
+
+    @Value("${copyright.executor.progress.threads:2}")
+    private int progressThreads;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, ExecutorService> executors = new LinkedHashMap<>();
+    private final Map<String, Scheduler> schedulers = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        ThreadFactory virtualFactory = virtualThreads ? virtualThreadFactory() : null;
+        if (virtualThreads && virtualFactory == null) {
+            log.warn("当前JVM不支持虚拟线程（需要Java 21及以上），线程池继续使用平台线程");
+        }
+        // 大模型相关任务失败可以由调用方重试，队列满时直接拒绝，不让调用线程代为执行
+        register(LLM_IO, pool(LLM_IO, llmIoThreads, llmIoQueue, virtualFactory, new ThreadPoolExecutor.AbortPolicy()));
+        register(BROWSER, pool(BROWSER, browserThreads, browserQueue, virtualFactory, new ThreadPoolExecutor.AbortPolicy()));
+        // 每个截图会话最多同时启动一个浏览器，不排队，避免会话线程等待排在自己后面的启动任务
+        register(BROWSER_LAUNCH, pool(BROWSER_LAUNCH, browserThreads, 0, virtualFactory, new ThreadPoolExecutor.AbortPolicy()));
+        register(DOCUMENT_RENDER, pool(DOCUMENT_RENDER, documentRenderThreads, documentRenderQueue, virtualFactory,
+            new ThreadPoolExecutor.AbortPolicy()));
+        register(SSE, pool(SSE, sseThreads, sseQueue, virtualFactory, new ThreadPoolExecutor.AbortPolicy()));
+        register(DB, pool(DB, dbThreads, dbQueue, virtualFactory, new ThreadPoolExecutor.AbortPolicy()));
+        // 任务轮询被拒绝时由下一次轮询补上，续租被拒绝按续租成功处理，租约在下一次心跳时续上
+        register(JOB, pool(JOB, jobThreads, jobQueue, virtualFactory, new ThreadPoolExecutor.AbortPolicy()));
+        // 许可释放被拒绝时槽位等待租约过期后回收
+        register(PERMIT, pool(PERMIT, permitThreads, permitQueue, virtualFactory, new ThreadPoolExecutor.AbortPolicy()));
+        // 进度推送丢失一次不影响结果，执行器关闭后提交的任务直接丢弃
+        ScheduledThreadPoolExecutor progress = new ScheduledThreadPoolExecutor(progressThreads,
+            threadFactory(PROGRESS, virtualFactory), counted(PROGRESS, new ThreadPoolExecutor.DiscardPolicy()));
+        progress.setRemoveOnCancelPolicy(true);
+        executors.put(PROGRESS, progress);
+        schedulers.put(PROGRESS, Schedulers.fromExecutorService(
+            ExecutorServiceMetrics.monitor(meterRegistry, progress, PROGRESS, METRIC_PREFIX), PROGRESS));
+
+        log.info("负载线程池已初始化: llm-io={}/{}, browser={}/{}, document-render={}/{}, sse={}/{}, db={}/{}, job={}/{}, "
+                + "permit={}/{}, progress={}, 虚拟线程={}",
+            llmIoThreads, llmIoQueue, browserThreads, browserQueue, documentRenderThreads, documentRenderQueue,
+            sseThreads, sseQueue, dbThreads, dbQueue, jobThreads, jobQueue, permitThreads, permitQueue,
+            progressThreads, virtualFactory != null);
+    }
+
+    /**
+     * 指定负载的线程池，供CompletableFuture等直接提交任务的场景使用
+     */
+    public ExecutorService executor(String name) {
+        ExecutorService executor = executors.get(name);
+        if (executor == null) {
+            throw new IllegalArgumentException("未知的线程池: " + name);
+        }
+        return executor;
+    }
+
+    /**
+     * 指定负载的Reactor调度器，供subscribeOn/publishOn使用
+     */
+    public Scheduler scheduler(String name) {
+        Scheduler scheduler = schedulers.get(name);
+        if (scheduler == null) {
+            throw new IllegalArgumentException("未知的线程池: " + name);
+        }
+        return scheduler;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.forEach((name, executor) -> {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("线程池 {} 未能在10秒内结束，强制关闭", name);
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        });
+        schedulers.values().forEach(Scheduler::dispose);
+    }
+
+    private void register(String name, ThreadPoolExecutor pool) {
+        ExecutorService monitored = ExecutorServiceMetrics.monitor(meterRegistry, pool, name, METRIC_PREFIX);
+        executors.put(name, monitored);
+        schedulers.put(name, Schedulers.fromExecutorService(monitored, name));
+    }
+
+    private ThreadPoolExecutor pool(String name, int threads, int queue, ThreadFactory virtualFactory,
+                                    RejectedExecutionHandler policy) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            queue > 0 ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>(),
+            threadFactory(name, virtualFactory), counted(name, policy));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * 拒绝时先计数再交给原拒绝策略
+     */
+    private RejectedExecutionHandler counted(String name, RejectedExecutionHandler policy) {
+        return (task, executor) -> {
+            meterRegistry.counter(METRIC_PREFIX + ".rejected", "name", name).increment();
+            log.warn("线程池 {} 已满，任务被拒绝: 线程数={}, 排队数={}", name, executor.getPoolSize(), executor.getQueue().size());
+            policy.rejectedExecution(task, executor);
+        };
+    }
+
+    private ThreadFactory threadFactory(String name, ThreadFactory virtualFactory) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = virtualFactory != null ? virtualFactory.newThread(runnable) : new Thread(runnable);
+            thread.setName("copyright-" + name + "-" + counter.incrementAndGet());
+            if (virtualFactory == null) {
+                thread.setDaemon(true);
+            }
+            return thread;
+        };
+    }
+
+    /**
+     * 通过反射获取虚拟线程工厂，编译目标仍为Java 17；不支持时返回null
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
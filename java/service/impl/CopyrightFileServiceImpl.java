@@ -3,12 +3,21 @@ package org.jeecg.modules.agenthub.copyright.service.impl;
 import org.jeecg.modules.agenthub.copyright.entity.CopyrightFile;
 import org.jeecg.modules.agenthub.copyright.mapper.CopyrightFileMapper;
 import org.jeecg.modules.agenthub.copyright.service.ICopyrightFileService;
+import org.jeecg.modules.agenthub.service.blob.BlobStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 
@@ -19,52 +28,108 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 @Service
 public class CopyrightFileServiceImpl extends ServiceImpl<CopyrightFileMapper, CopyrightFile> implements ICopyrightFileService {
 
+    /**一个项目可以有多条记录的文件类型，不参与(project_id, singleton_key)唯一约束*/
+    private static final Set<String> MULTI_INSTANCE_TYPES = Set.of("screenshot");
+
+    @Autowired
+    private BlobStore blobStore;
+
     @Override
-    @Transactional
-    public CopyrightFile saveGeneratedFile(String projectId, String fileType, String fileName, String title, String fileContent, String createBy) {
-        
-        CopyrightFile existingFile = getFileByProjectIdAndType(projectId, fileType);
-        
-        if (existingFile != null) {
-            
-            log.info("文件已存在，更新现有文件: projectId={}, fileType={}, fileId={}", 
-                projectId, fileType, existingFile.getId());
-            
-            existingFile.setFileName(fileName != null ? fileName : generateFileName(fileType));
-            existingFile.setTitle(title);
-            existingFile.setContent(fileContent);
-            existingFile.setUpdateBy(createBy);
-            existingFile.setUpdateTime(new Date());
-            existingFile.setStatus("completed");
-            
-            this.updateById(existingFile);
-            return existingFile;
-        } else {
-            
-            log.info("创建新文件: projectId={}, fileType={}", projectId, fileType);
-            
-            CopyrightFile file = new CopyrightFile();
-            file.setProjectId(projectId);
-            file.setFileType(fileType);
-            file.setFileName(fileName != null ? fileName : generateFileName(fileType));
-            file.setTitle(title);
-            file.setContent(fileContent);
-            file.setCreateBy(createBy);
-            file.setCreateTime(new Date());
-            file.setStatus("completed");
-            
-            this.save(file);
-            return file;
+    public void saveGeneratedFile(String projectId, String fileType, String fileName, String title, String fileContent, String createBy) {
+        saveGeneratedFile(projectId, fileType, fileName, title, fileContent, createBy, null);
+    }
+
+    @Override
+    public void saveGeneratedFile(String projectId, String fileType, String fileName, String title, String fileContent, String createBy, String inputHash) {
+        CopyrightFile file = newFile(projectId, fileType, fileName, title, createBy, inputHash);
+        file.setContent(fileContent);
+        file.setContentSize(fileContent != null ? (long) fileContent.getBytes(StandardCharsets.UTF_8).length : null);
+        saveGeneratedFiles(List.of(file));
+    }
+
+    @Override
+    public void saveGeneratedBinaryFile(String projectId, String fileType, String fileName, String title, byte[] data,
+                                        String mediaType, String createBy, String inputHash) {
+        CopyrightFile file = newFile(projectId, fileType, fileName, title, createBy, inputHash);
+        // 先写入BlobStore，写库失败时只会留下未被引用的内容，不会出现引用指向不存在的内容
+        storeBinary(file, data, mediaType);
+        saveGeneratedFiles(List.of(file));
+    }
+
+    @Override
+    public void saveGeneratedFiles(List<CopyrightFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        Date now = new Date();
+        for (CopyrightFile file : files) {
+            if (file.getId() == null) {
+                file.setId(IdWorker.getIdStr());
+            }
+            file.setSingletonKey(MULTI_INSTANCE_TYPES.contains(file.getFileType()) ? null : file.getFileType());
+            file.setCreateTime(now);
+            file.setUpdateTime(now);
+        }
+        // 一条语句写入；已存在的单实例产物按(project_id, singleton_key)唯一键原地更新，保留原记录的id和创建信息
+        int affected = this.baseMapper.upsertBatch(files);
+        log.info("保存生成文件: projectId={}, fileTypes={}, 影响行数={}", files.get(0).getProjectId(),
+            files.stream().map(CopyrightFile::getFileType).collect(Collectors.toList()), affected);
+    }
+
+    @Override
+    public void storeBinary(CopyrightFile file, byte[] data, String mediaType) {
+        try {
+            file.setBlobRef(blobStore.put(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException("保存二进制产物失败: " + e.getMessage(), e);
+        }
+        file.setContentSize((long) data.length);
+        file.setMediaType(mediaType);
+        file.setContent(null);
+    }
+
+    @Override
+    public byte[] getBinaryContent(CopyrightFile file) {
+        if (file.getBlobRef() != null) {
+            try {
+                return blobStore.get(file.getBlobRef());
+            } catch (IOException e) {
+                throw new UncheckedIOException("读取二进制产物失败: " + e.getMessage(), e);
+            }
         }
+        String content = file.getContent();
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+        // 早期数据：截图为data URL，PDF和Word为纯Base64
+        int comma = content.startsWith("data:") ? content.indexOf(',') : -1;
+        return Base64.getDecoder().decode(comma >= 0 ? content.substring(comma + 1) : content);
     }
 
     @Override
     public CopyrightFile getFileByProjectIdAndType(String projectId, String fileType) {
-        List<CopyrightFile> files = this.baseMapper.selectByProjectId(projectId);
-        return files.stream()
-                .filter(file -> fileType.equals(file.getFileType()))
-                .findFirst()
-                .orElse(null);
+        return this.baseMapper.selectByProjectIdAndType(projectId, fileType);
+    }
+
+    @Override
+    public CopyrightFile getFileMetaByProjectIdAndType(String projectId, String fileType) {
+        return this.baseMapper.selectMetaByProjectIdAndType(projectId, fileType);
+    }
+
+    @Override
+    public List<CopyrightFile> listFileMeta(String projectId) {
+        return this.baseMapper.selectMetaByProjectId(projectId);
+    }
+
+    @Override
+    public List<CopyrightFile> listFileMeta(String projectId, String fileType) {
+        return this.baseMapper.selectMetaListByProjectIdAndType(projectId, fileType);
+    }
+
+    @Override
+    public String getContent(String fileId) {
+        CopyrightFile file = this.baseMapper.selectContentById(fileId);
+        return file != null ? file.getContent() : null;
     }
 
     @Override
@@ -73,6 +138,20 @@ public class CopyrightFileServiceImpl extends ServiceImpl<CopyrightFileMapper, C
         this.remove(new QueryWrapper<CopyrightFile>().eq("project_id", projectId));
     }
 
+    private CopyrightFile newFile(String projectId, String fileType, String fileName, String title,
+                                  String createBy, String inputHash) {
+        CopyrightFile file = new CopyrightFile();
+        file.setProjectId(projectId);
+        file.setFileType(fileType);
+        file.setFileName(fileName != null ? fileName : generateFileName(fileType));
+        file.setTitle(title);
+        file.setInputHash(inputHash);
+        file.setStatus("completed");
+        file.setCreateBy(createBy);
+        file.setUpdateBy(createBy);
+        return file;
+    }
+
     private String generateFileName(String fileType) {
         switch (fileType) {
             case "frontend_code":
@@ -0,0 +1,203 @@
+package org.jeecg.modules.agenthub.copyright.service.impl;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightGenerationJob;
+import org.jeecg.modules.agenthub.copyright.mapper.CopyrightGenerationJobMapper;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightGenerationJobService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 项目生成任务服务实现类
+ */
+@Slf4j
+@Service
+public class CopyrightGenerationJobServiceImpl extends ServiceImpl<CopyrightGenerationJobMapper, CopyrightGenerationJob> implements ICopyrightGenerationJobService {
+
+    /**每次最多查询的候选用户数*/
+    private static final int CLAIM_CANDIDATES = 50;
+
+    /**没有历史数据时单个任务的预估执行时长（秒）*/
+    private static final long DEFAULT_RUN_SECONDS = 900;
+
+    /**单个用户同时执行的任务数上限*/
+    @Value("${copyright.generation.job.max-per-user:2}")
+    private int maxPerUser;
+
+    /**单个用户同时执行的批量任务数上限，与交互任务分开计算，批量提交不会占满用户的交互额度*/
+    @Value("${copyright.generation.batch.max-per-user:4}")
+    private int batchMaxPerUser;
+
+    /**用户权重，权重越大分到的执行份额越多，未配置的用户权重为1*/
+    @Value("#{${copyright.generation.job.user-weights:{:}}}")
+    private Map<String, Integer> userWeights;
+
+    @Override
+    public CopyrightGenerationJob enqueue(String projectId, String createBy, String submittedBy, boolean resume) {
+        return enqueue(projectId, createBy, submittedBy, resume, null);
+    }
+
+    @Override
+    public CopyrightGenerationJob enqueueBatch(String projectId, String createBy, String submittedBy, String batchId) {
+        return enqueue(projectId, createBy, submittedBy, false, batchId);
+    }
+
+    private CopyrightGenerationJob enqueue(String projectId, String createBy, String submittedBy, boolean resume, String batchId) {
+        CopyrightGenerationJob job = new CopyrightGenerationJob();
+        job.setProjectId(projectId);
+        job.setStatus("queued");
+        job.setResume(resume);
+        job.setBatchId(batchId);
+        job.setAttempts(0);
+        job.setSubmittedBy(submittedBy);
+        job.setCreateBy(createBy);
+        job.setCreateTime(new Date());
+        job.setUpdateTime(new Date());
+        this.save(job);
+        return job;
+    }
+
+    @Override
+    public CopyrightGenerationJob claimNext(String owner, int leaseSeconds, int maxAttempts) {
+        List<Map<String, Object>> runningRows = this.baseMapper.countRunningByUser();
+        Map<String, Integer> running = toCounts(runningRows, "running");
+        Map<String, Integer> batchRunning = toCounts(runningRows, "batchRunning");
+        List<CopyrightGenerationJob> heads = new ArrayList<>(this.baseMapper.selectClaimableHeads(maxAttempts, CLAIM_CANDIDATES));
+        // 执行份额（执行中任务数/权重）最小的用户优先，份额相同时先提交的优先
+        heads.sort(Comparator.<CopyrightGenerationJob>comparingDouble(job ->
+                (double) running.getOrDefault(key(job.getCreateBy()), 0) / weight(job.getCreateBy()))
+            .thenComparing(CopyrightGenerationJob::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        for (CopyrightGenerationJob candidate : heads) {
+            // 租约已过期的任务不受单用户上限限制，避免节点宕机后任务一直无法被接管
+            boolean expired = "running".equals(candidate.getStatus());
+            if (!expired && atUserLimit(candidate, running, batchRunning)) {
+                continue;
+            }
+            if (this.baseMapper.claim(candidate.getId(), owner, leaseSeconds, candidate.getAttempts()) == 1) {
+                if (expired) {
+                    log.warn("接管租约已过期的生成任务: jobId={}, projectId={}, 原节点={}",
+                        candidate.getId(), candidate.getProjectId(), candidate.getOwner());
+                }
+                return this.getById(candidate.getId());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean renewLease(String jobId, String owner, int leaseSeconds) {
+        return this.baseMapper.renewLease(jobId, owner, leaseSeconds) == 1;
+    }
+
+    @Override
+    public boolean finish(String jobId, String owner, String status, String errorMessage) {
+        return this.baseMapper.finish(jobId, owner, status, errorMessage) == 1;
+    }
+
+    @Override
+    public int cancelByProject(String projectId) {
+        return this.baseMapper.cancelByProject(projectId);
+    }
+
+    @Override
+    public List<String> findCancelled(Collection<String> jobIds) {
+        if (jobIds.isEmpty()) {
+            return List.of();
+        }
+        return this.lambdaQuery()
+            .select(CopyrightGenerationJob::getId)
+            .in(CopyrightGenerationJob::getId, jobIds)
+            .eq(CopyrightGenerationJob::getStatus, "cancelled")
+            .list().stream()
+            .map(CopyrightGenerationJob::getId)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public int releaseByOwner(String owner) {
+        return this.baseMapper.releaseByOwner(owner);
+    }
+
+    @Override
+    public List<CopyrightGenerationJob> failExhausted(int maxAttempts) {
+        List<CopyrightGenerationJob> failed = new ArrayList<>();
+        for (CopyrightGenerationJob job : this.baseMapper.selectExhausted(maxAttempts)) {
+            if (this.baseMapper.failExhausted(job.getId(), maxAttempts, "超过最大重试次数") == 1) {
+                failed.add(job);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 按加权轮转估算排队位置：任务是用户自己队列中的第k个，权重为w；
+     * 其他用户v在它之前最多执行 k*w(v)/w 个任务，再加上本用户排在前面的k-1个
+     */
+    @Override
+    public Map<String, Object> getQueueStatus(String projectId, int workersPerNode) {
+        CopyrightGenerationJob job = this.baseMapper.selectQueuedByProject(projectId);
+        if (job == null) {
+            return null;
+        }
+        String user = key(job.getCreateBy());
+        int rank = this.baseMapper.countQueuedUpTo(job.getCreateBy(), job.getCreateTime());
+        double rounds = (double) rank / weight(job.getCreateBy());
+        int ahead = rank - 1;
+        for (Map.Entry<String, Integer> entry : toCounts(this.baseMapper.countQueuedByUser(), "queued").entrySet()) {
+            if (!entry.getKey().equals(user)) {
+                ahead += Math.min(entry.getValue(), (int) Math.ceil(rounds * weight(entry.getKey())));
+            }
+        }
+
+        Double avgRunSeconds = this.baseMapper.avgRunSeconds(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7)));
+        long runSeconds = avgRunSeconds != null && avgRunSeconds > 0 ? avgRunSeconds.longValue() : DEFAULT_RUN_SECONDS;
+        int capacity = Math.max(1, workersPerNode) * Math.max(1, this.baseMapper.countActiveOwners());
+        long waitSeconds = (long) Math.ceil((double) ahead / capacity) * runSeconds;
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("queuePosition", ahead + 1);
+        status.put("estimatedStartTime", new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(waitSeconds)));
+        return status;
+    }
+
+    /**
+     * 交互任务和批量任务分别计算单用户并发上限
+     */
+    private boolean atUserLimit(CopyrightGenerationJob job, Map<String, Integer> running, Map<String, Integer> batchRunning) {
+        String user = key(job.getCreateBy());
+        int batch = batchRunning.getOrDefault(user, 0);
+        if (job.getBatchId() != null) {
+            return batch >= batchMaxPerUser;
+        }
+        return running.getOrDefault(user, 0) - batch >= maxPerUser;
+    }
+
+    private int weight(String createBy) {
+        Integer weight = userWeights.get(key(createBy));
+        return weight != null && weight > 0 ? weight : 1;
+    }
+
+    private static String key(String createBy) {
+        return createBy != null ? createBy : "";
+    }
+
+    private static Map<String, Integer> toCounts(List<Map<String, Object>> rows, String column) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            Object value = row.get(column);
+            Object createBy = row.get("createBy");
+            counts.put(createBy != null ? createBy.toString() : "", value instanceof Number ? ((Number) value).intValue() : 0);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,92 @@
+package org.jeecg.modules.agenthub.copyright.service.impl;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightLlmCall;
+import org.jeecg.modules.agenthub.copyright.mapper.CopyrightLlmCallMapper;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightLlmCallService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 大模型调用记录服务实现类
+ */
+@Slf4j
+@Service
+public class CopyrightLlmCallServiceImpl extends ServiceImpl<CopyrightLlmCallMapper, CopyrightLlmCall> implements ICopyrightLlmCallService {
+
+    private static final BigDecimal MILLION = BigDecimal.valueOf(1_000_000);
+
+    /**输入命中缓存单价（元/百万token）*/
+    @Value("${ai.deepseek.pricing.input-cache-hit:0.2}")
+    private BigDecimal inputCacheHitPrice;
+
+    /**输入未命中缓存单价（元/百万token）*/
+    @Value("${ai.deepseek.pricing.input-cache-miss:2}")
+    private BigDecimal inputCacheMissPrice;
+
+    /**输出单价（元/百万token）*/
+    @Value("${ai.deepseek.pricing.output:3}")
+    private BigDecimal outputPrice;
+
+    @Override
+    public void recordCall(CopyrightLlmCall call) {
+        long promptTokens = call.getPromptTokens() != null ? call.getPromptTokens() : 0;
+        long hitTokens = call.getPromptCacheHitTokens() != null ? call.getPromptCacheHitTokens() : 0;
+        long completionTokens = call.getCompletionTokens() != null ? call.getCompletionTokens() : 0;
+
+        BigDecimal cost = inputCacheHitPrice.multiply(BigDecimal.valueOf(hitTokens))
+                .add(inputCacheMissPrice.multiply(BigDecimal.valueOf(Math.max(0, promptTokens - hitTokens))))
+                .add(outputPrice.multiply(BigDecimal.valueOf(completionTokens)))
+                .divide(MILLION, 6, RoundingMode.HALF_UP);
+        call.setCost(cost);
+        if (call.getCreateTime() == null) {
+            call.setCreateTime(new Date());
+        }
+        this.save(call);
+    }
+
+    @Override
+    public Map<String, Object> getProjectUsage(String projectId) {
+        List<Map<String, Object>> stages = this.baseMapper.sumByStageForProject(projectId);
+
+        long promptTokens = 0;
+        long completionTokens = 0;
+        long latencyMs = 0;
+        BigDecimal cost = BigDecimal.ZERO;
+        for (Map<String, Object> stage : stages) {
+            promptTokens += toLong(stage.get("promptTokens"));
+            completionTokens += toLong(stage.get("completionTokens"));
+            latencyMs += toLong(stage.get("totalLatencyMs"));
+            if (stage.get("cost") != null) {
+                cost = cost.add(new BigDecimal(stage.get("cost").toString()));
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("projectId", projectId);
+        result.put("stages", stages);
+        result.put("promptTokens", promptTokens);
+        result.put("completionTokens", completionTokens);
+        result.put("totalLatencyMs", latencyMs);
+        result.put("cost", cost);
+        return result;
+    }
+
+    @Override
+    public List<Map<String, Object>> getStageUsage(int days) {
+        Date since = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+        return this.baseMapper.sumByStageSince(since);
+    }
+
+    private long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
@@ -0,0 +1,54 @@
+package org.jeecg.modules.agenthub.copyright.service.impl;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightPermit;
+import org.jeecg.modules.agenthub.copyright.mapper.CopyrightPermitMapper;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightPermitService;
+import org.springframework.stereotype.Service;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 集群许可服务实现类
+ */
+@Slf4j
+@Service
+public class CopyrightPermitServiceImpl extends ServiceImpl<CopyrightPermitMapper, CopyrightPermit> implements ICopyrightPermitService {
+
+    @Override
+    public void ensureSlots(String resource, int limit) {
+        int created = 0;
+        for (int slot = 0; slot < limit; slot++) {
+            created += this.baseMapper.insertSlot(resource + ":" + slot, resource, slot);
+        }
+        if (created > 0) {
+            log.info("已创建集群许可槽位: resource={}, 新增={}, 上限={}", resource, created, limit);
+        }
+    }
+
+    @Override
+    public String tryAcquire(String resource, int limit, String owner, int leaseSeconds) {
+        String token = UUID.randomUUID().toString();
+        return this.baseMapper.acquire(resource, limit, owner, token, leaseSeconds) == 1 ? token : null;
+    }
+
+    @Override
+    public void release(String token) {
+        this.baseMapper.release(token);
+    }
+
+    @Override
+    public int renewByOwner(String owner, int leaseSeconds) {
+        return this.baseMapper.renewByOwner(owner, leaseSeconds);
+    }
+
+    @Override
+    public int releaseByOwner(String owner) {
+        return this.baseMapper.releaseByOwner(owner);
+    }
+
+    @Override
+    public int countHeld(String resource) {
+        return this.baseMapper.countHeld(resource);
+    }
+}
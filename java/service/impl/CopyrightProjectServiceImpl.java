@@ -1,10 +1,14 @@
 package org.jeecg.modules.agenthub.copyright.service.impl;
 
 import org.jeecg.modules.agenthub.copyright.entity.CopyrightProject;
+import org.jeecg.modules.agenthub.copyright.entity.ProjectStatus;
 import org.jeecg.modules.agenthub.copyright.mapper.CopyrightProjectMapper;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightGenerationJobService;
 import org.jeecg.modules.agenthub.copyright.service.ICopyrightProjectService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import java.util.Date;
 import java.util.List;
@@ -17,6 +21,9 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class CopyrightProjectServiceImpl extends ServiceImpl<CopyrightProjectMapper, CopyrightProject> implements ICopyrightProjectService {
 
+    @Autowired
+    private ICopyrightGenerationJobService generationJobService;
+
     @Override
     @Transactional
     public CopyrightProject createProject(String projectName, String appName, String domain, String appPrompt, String modelId, String createBy) {
@@ -32,6 +39,7 @@ public class CopyrightProjectServiceImpl extends ServiceImpl<CopyrightProjectMap
         project.setCurrentStep("准备生成...");
         project.setCompletedFiles(0);
         project.setGeneratingFiles(0);
+        project.setVersion(0);
         project.setCreateBy(createBy);
         project.setCreateTime(new Date());
         
@@ -39,6 +47,38 @@ public class CopyrightProjectServiceImpl extends ServiceImpl<CopyrightProjectMap
         return project;
     }
 
+    @Override
+    @Transactional
+    public String createBatch(List<CopyrightProject> projects, String createBy, String submittedBy) {
+        String batchId = IdWorker.getIdStr();
+        Date now = new Date();
+        for (CopyrightProject project : projects) {
+            project.setProjectName(project.getAppName());
+            project.setBatchId(batchId);
+            project.setStatus("generating");
+            project.setProgress(0);
+            project.setCurrentStep("开始生成软著材料...");
+            project.setCompletedFiles(0);
+            project.setGeneratingFiles(0);
+            project.setVersion(0);
+            project.setStartTime(now);
+            project.setCreateBy(createBy);
+            project.setCreateTime(now);
+        }
+        this.saveBatch(projects);
+        // 任务按项目提交顺序入队，由GenerationJobRunner按用户公平策略认领
+        for (CopyrightProject project : projects) {
+            generationJobService.enqueueBatch(project.getId(), createBy, submittedBy, batchId);
+        }
+        log.info("批量创建项目: batchId={}, 项目数={}, 用户={}", batchId, projects.size(), createBy);
+        return batchId;
+    }
+
+    @Override
+    public List<CopyrightProject> getProjectsByBatch(String batchId) {
+        return this.baseMapper.selectByBatchId(batchId);
+    }
+
     @Override
     public void updateProgress(String projectId, int progress) {
         CopyrightProject project = new CopyrightProject();
@@ -89,28 +129,20 @@ public class CopyrightProjectServiceImpl extends ServiceImpl<CopyrightProjectMap
     }
 
     @Override
-    @Transactional
     public boolean checkAndUpdateStatus(String projectId, String expectedStatus, String newStatus) {
+        ProjectStatus from = ProjectStatus.of(expectedStatus);
+        ProjectStatus to = ProjectStatus.of(newStatus);
+        if (from == null || to == null || !from.canTransitionTo(to)) {
+            log.warn("不允许的项目状态转换: projectId={}, {} -> {}", projectId, expectedStatus, newStatus);
+            return false;
+        }
         try {
-            CopyrightProject project = this.getById(projectId);
-            if (project == null) {
-                return false;
-            }
-            if (expectedStatus != null && !expectedStatus.equals(project.getStatus())) {
-                return false;
-            }
-            project.setStatus(newStatus);
-            project.setUpdateTime(new Date());
-            if ("completed".equals(newStatus)) {
-                project.setEndTime(new Date());
-            } else if ("generating".equals(newStatus)) {
-                project.setStartTime(new Date());
-            }
-            return this.updateById(project);
+            // 比较与写入在同一条UPDATE中完成，并发的转换只有一个能命中期望状态
+            return this.baseMapper.compareAndSetStatus(projectId, expectedStatus, newStatus) == 1;
         } catch (Exception e) {
             log.error("原子性更新项目状态失败: projectId={}, expectedStatus={}, newStatus={}, error={}",
                 projectId, expectedStatus, newStatus, e.getMessage());
             return false;
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,320 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 自适应并发限制器（AIMD）
+ * 调用成功且延迟正常时并发上限加性增长；遇到429/5xx/超时时减半，延迟明显高于基线时小幅收缩。
+ * 超出上限的调用进入等待队列，等待期间不占用线程。交互请求（见LlmCallContext.interactive）单独排队并优先放行，
+ * 连续放行INTERACTIVE_BURST个交互请求后让一个批量请求通过，批量生成不会被完全饿死。
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    /**延迟超过基线的倍数后视为拥塞*/
+    private static final double LATENCY_TOLERANCE = 2.0;
+    /**拥塞（429/5xx/超时）时的收缩系数*/
+    private static final double DROP_BACKOFF = 0.5;
+    /**延迟过高时的收缩系数*/
+    private static final double LATENCY_BACKOFF = 0.9;
+    /**基线延迟的平滑系数*/
+    private static final double BASELINE_ALPHA = 0.05;
+    /**批量请求排队时，最多连续放行的交互请求数*/
+    private static final int INTERACTIVE_BURST = 4;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private final Deque<Waiter> interactiveQueue = new ArrayDeque<>();
+    private int interactiveStreak;
+    private double limit;
+    private int inflight;
+    private double baselineLatencyMs;
+
+    private final Timer waitTimer;
+    private final Counter droppedCounter;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+
+        Gauge.builder("copyright.llm.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("model", name).description("当前并发上限").register(meterRegistry);
+        Gauge.builder("copyright.llm.limiter.inflight", this, AdaptiveConcurrencyLimiter::getInflight)
+                .tag("model", name).description("正在执行的调用数").register(meterRegistry);
+        Gauge.builder("copyright.llm.limiter.queue", this, AdaptiveConcurrencyLimiter::getQueueDepth)
+                .tag("model", name).description("排队等待的调用数").register(meterRegistry);
+        this.waitTimer = Timer.builder("copyright.llm.limiter.wait")
+                .tag("model", name).description("获取许可的等待时间").register(meterRegistry);
+        this.droppedCounter = Counter.builder("copyright.llm.limiter.dropped")
+                .tag("model", name).description("触发限流收缩的调用次数").register(meterRegistry);
+    }
+
+    /**
+     * 在许可内执行单次调用
+     */
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        return run(call, Supplier::get);
+    }
+
+    /**
+     * 在许可内执行单次调用，gate在取得本节点许可后才执行（如再获取集群许可），
+     * 调用真正开始时重新计时，gate内的等待不计入本限制器的延迟
+     */
+    public <T> Mono<T> run(Supplier<Mono<T>> call, Function<Supplier<Mono<T>>, Mono<T>> gate) {
+        return Mono.usingWhen(acquire(),
+                permit -> gate.apply(() -> {
+                    permit.restartClock();
+                    return call.get();
+                }),
+                permit -> Mono.fromRunnable(permit::onSuccess),
+                (permit, error) -> Mono.fromRunnable(() -> permit.onError(error)),
+                permit -> Mono.fromRunnable(permit::onIgnore));
+    }
+
+    /**
+     * 在许可内执行流式调用，流结束后才释放许可
+     */
+    public <T> Flux<T> runMany(Supplier<Flux<T>> call) {
+        return runMany(call, Supplier::get);
+    }
+
+    /**
+     * 在许可内执行流式调用，gate的含义同run
+     */
+    public <T> Flux<T> runMany(Supplier<Flux<T>> call, Function<Supplier<Flux<T>>, Flux<T>> gate) {
+        return Flux.usingWhen(acquire(),
+                permit -> gate.apply(() -> {
+                    permit.restartClock();
+                    return call.get();
+                }),
+                permit -> Mono.fromRunnable(permit::onSuccess),
+                (permit, error) -> Mono.fromRunnable(() -> permit.onError(error)),
+                permit -> Mono.fromRunnable(permit::onIgnore));
+    }
+
+    /**
+     * 获取许可，达到上限时排队
+     */
+    public Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, System.nanoTime());
+            sink.onCancel(() -> cancel(waiter));
+            boolean interactive = LlmCallContext.isInteractive(sink.contextView());
+            boolean granted;
+            synchronized (this) {
+                granted = queue.isEmpty() && interactiveQueue.isEmpty() && inflight < currentLimit();
+                if (granted) {
+                    assign(waiter);
+                } else if (interactive) {
+                    interactiveQueue.addLast(waiter);
+                } else {
+                    queue.addLast(waiter);
+                }
+            }
+            if (granted) {
+                grant(waiter);
+            } else {
+                log.debug("模型 {} 并发已满，排队等待，当前上限: {}，排队数: {}", name, currentLimit(), getQueueDepth());
+            }
+        });
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size() + interactiveQueue.size();
+    }
+
+    private int currentLimit() {
+        return (int) Math.floor(limit);
+    }
+
+    /**
+     * 占用一个并发额度并把许可交给等待者；调用方需持有锁，保证等待者出队时一定已带有许可
+     */
+    private void assign(Waiter waiter) {
+        inflight++;
+        waiter.permit = new Permit();
+    }
+
+    /**
+     * 在锁外把许可推送给调用方；调用方已取消时推送会被丢弃，许可由cancel归还
+     */
+    private void grant(Waiter waiter) {
+        waitTimer.record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+        waiter.sink.success(waiter.permit);
+    }
+
+    /**
+     * 调用方取消：仍在排队则直接移出；已分配许可（无论是否已推送）则归还，防止许可泄漏。
+     * 许可已推送时由usingWhen负责释放，这里的归还因只释放一次而不会重复计数
+     */
+    private void cancel(Waiter waiter) {
+        Permit permit;
+        synchronized (this) {
+            if (queue.remove(waiter) || interactiveQueue.remove(waiter)) {
+                return;
+            }
+            permit = waiter.permit;
+        }
+        if (permit != null) {
+            permit.onIgnore();
+        }
+    }
+
+    /**
+     * 释放一个许可并按结果调整上限，然后唤醒排队中的调用
+     */
+    private void release(Outcome outcome, long latencyMs) {
+        List<Waiter> toGrant = new ArrayList<>();
+        synchronized (this) {
+            inflight--;
+            double previous = limit;
+            switch (outcome) {
+                case DROPPED:
+                    limit = Math.max(minLimit, limit * DROP_BACKOFF);
+                    break;
+                case SUCCESS:
+                    if (baselineLatencyMs <= 0) {
+                        baselineLatencyMs = latencyMs;
+                    }
+                    if (latencyMs > baselineLatencyMs * LATENCY_TOLERANCE) {
+                        limit = Math.max(minLimit, limit * LATENCY_BACKOFF);
+                    } else if (inflight + 1 >= currentLimit() / 2) {
+                        // 只有在并发确实被用到一半以上时才扩容，避免空闲时上限无限增长
+                        limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    }
+                    baselineLatencyMs += BASELINE_ALPHA * (latencyMs - baselineLatencyMs);
+                    break;
+                default:
+                    break;
+            }
+            if ((int) Math.floor(previous) != currentLimit()) {
+                log.info("模型 {} 并发上限调整: {} -> {}（{}，延迟 {}ms）", name, (int) Math.floor(previous), currentLimit(), outcome, latencyMs);
+            }
+
+            while (inflight < currentLimit() && (!queue.isEmpty() || !interactiveQueue.isEmpty())) {
+                Waiter waiter = nextWaiter();
+                assign(waiter);
+                toGrant.add(waiter);
+            }
+        }
+        toGrant.forEach(this::grant);
+    }
+
+    /**
+     * 优先取交互请求，连续放行过多时让出一次给批量请求；调用方需持有锁
+     */
+    private Waiter nextWaiter() {
+        if (!interactiveQueue.isEmpty() && (queue.isEmpty() || interactiveStreak < INTERACTIVE_BURST)) {
+            interactiveStreak++;
+            return interactiveQueue.pollFirst();
+        }
+        interactiveStreak = 0;
+        return queue.pollFirst();
+    }
+
+    /**
+     * 判断异常是否代表上游过载
+     */
+    static boolean isOverload(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof WebClientResponseException) {
+                int status = ((WebClientResponseException) current).getStatusCode().value();
+                return status == 429 || status >= 500;
+            }
+            if (current instanceof TimeoutException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    private enum Outcome {
+        SUCCESS, DROPPED, IGNORED
+    }
+
+    private static class Waiter {
+        private final MonoSink<Permit> sink;
+        private final long enqueuedAt;
+        /**出队时在锁内赋值*/
+        private Permit permit;
+
+        Waiter(MonoSink<Permit> sink, long enqueuedAt) {
+            this.sink = sink;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * 调用许可，只能释放一次
+     */
+    public class Permit {
+        private volatile long startedAt = System.currentTimeMillis();
+        private boolean released;
+
+        /**
+         * 调用真正开始时重新计时
+         */
+        void restartClock() {
+            startedAt = System.currentTimeMillis();
+        }
+
+        public void onSuccess() {
+            finish(Outcome.SUCCESS);
+        }
+
+        public void onError(Throwable error) {
+            if (isOverload(error)) {
+                droppedCounter.increment();
+                finish(Outcome.DROPPED);
+            } else {
+                finish(Outcome.IGNORED);
+            }
+        }
+
+        public void onIgnore() {
+            finish(Outcome.IGNORED);
+        }
+
+        private void finish(Outcome outcome) {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(outcome, System.currentTimeMillis() - startedAt);
+        }
+    }
+}
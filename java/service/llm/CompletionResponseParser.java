@@ -0,0 +1,164 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 非阻塞解析chat/completions响应
+ * 直接把Netty的DataBuffer喂给Jackson异步解析器，只提取choices[0].message.content、
+ * reasoning_content和usage，不把整个响应拼成String，也不构建JsonNode树。
+ */
+public class CompletionResponseParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private CompletionResponseParser() {
+    }
+
+    /**
+     * 解析响应体，每个DataBuffer消费后立即释放
+     */
+    public static Mono<LlmCompletion> parse(Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            Extractor extractor = new Extractor();
+            return body
+                    .doOnNext(buffer -> {
+                        try {
+                            extractor.feed(buffer);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .then(Mono.fromCallable(extractor::finish))
+                    .doFinally(signal -> extractor.close());
+        });
+    }
+
+    private static class Extractor {
+        private final JsonParser parser;
+        private final LlmCompletion completion = new LlmCompletion();
+        private boolean hasChoice;
+
+        Extractor() {
+            try {
+                this.parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void feed(DataBuffer buffer) {
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    ByteBuffer byteBuffer = iterator.next();
+                    ((ByteBufferFeeder) parser.getNonBlockingInputFeeder()).feedInput(byteBuffer);
+                    drain();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        LlmCompletion finish() throws IOException {
+            parser.getNonBlockingInputFeeder().endOfInput();
+            drain();
+            if (!hasChoice || completion.getContent() == null) {
+                throw new RuntimeException("无法解析API响应");
+            }
+            return completion;
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * 读取当前已喂入的全部token，遇到NOT_AVAILABLE说明需要更多输入
+         */
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (token == JsonToken.VALUE_STRING) {
+                    onString(parser.getParsingContext());
+                } else if (token == JsonToken.VALUE_NUMBER_INT) {
+                    onNumber(parser.getParsingContext());
+                }
+            }
+        }
+
+        /**
+         * 只接受 $.choices[0].message.content / reasoning_content
+         */
+        private void onString(JsonStreamContext context) throws IOException {
+            String name = context.getCurrentName();
+            if (!"content".equals(name) && !"reasoning_content".equals(name)) {
+                return;
+            }
+            JsonStreamContext choice = context.getParent();
+            if (choice == null || !"message".equals(choice.getCurrentName())) {
+                return;
+            }
+            JsonStreamContext choices = choice.getParent();
+            if (choices == null || !choices.inArray() || choices.getCurrentIndex() != 0) {
+                return;
+            }
+            JsonStreamContext root = choices.getParent();
+            if (root == null || !"choices".equals(root.getCurrentName()) || !root.getParent().inRoot()) {
+                return;
+            }
+            hasChoice = true;
+            if ("content".equals(name)) {
+                completion.setContent(parser.getText());
+            } else {
+                completion.setReasoningContent(parser.getText());
+            }
+        }
+
+        /**
+         * 只接受 $.usage.* 下的整数
+         */
+        private void onNumber(JsonStreamContext context) throws IOException {
+            if (!context.inObject()) {
+                return;
+            }
+            JsonStreamContext parent = context.getParent();
+            if (parent == null || !"usage".equals(parent.getCurrentName()) || !parent.getParent().inRoot()) {
+                return;
+            }
+            long value = parser.getLongValue();
+            switch (context.getCurrentName()) {
+                case "prompt_tokens":
+                    completion.setPromptTokens(value);
+                    break;
+                case "completion_tokens":
+                    completion.setCompletionTokens(value);
+                    break;
+                case "total_tokens":
+                    completion.setTotalTokens(value);
+                    break;
+                case "prompt_cache_hit_tokens":
+                    completion.setPromptCacheHitTokens(value);
+                    break;
+                case "prompt_cache_miss_tokens":
+                    completion.setPromptCacheMissTokens(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
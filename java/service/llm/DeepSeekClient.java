@@ -0,0 +1,481 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightLlmCall;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightLlmCallService;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * DeepSeek大模型调用客户端（支持普通调用和流式调用）
+ */
+@Slf4j
+@Service
+public class DeepSeekClient {
+
+    public static final String HIGH_COST_MODEL = "deepseek-reasoner";
+    public static final String LOW_COST_MODEL = "deepseek-chat";
+
+    public static final double DEFAULT_TEMPERATURE = 0.7;
+
+    private static final String STREAM_DONE = "[DONE]";
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<ServerSentEvent<String>>() {};
+
+    @Value("${ai.deepseek.api-key:${DEEPSEEK_API_KEY:}}")
+    private String apiKey;
+
+    @Value("${ai.deepseek.base-url:https://api.deepseek.com/v1}")
+    private String baseUrl;
+
+    /**流式调用时两个数据块之间允许的最长间隔（秒）*/
+    @Value("${ai.deepseek.stream-idle-timeout-seconds:180}")
+    private long streamIdleTimeoutSeconds;
+
+    @Autowired
+    private LlmCompletionCache completionCache;
+
+    @Autowired
+    private LlmConcurrencyLimiters limiters;
+
+    @Autowired
+    private LlmResilience resilience;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**进行中的普通调用，按缓存键合并*/
+    private final ConcurrentHashMap<String, Mono<String>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    private LlmHttpClients httpClients;
+
+    @Autowired
+    private ICopyrightLlmCallService llmCallService;
+
+    @Autowired
+    private WorkloadExecutors workloadExecutors;
+
+    private final ObjectMapper objectMapper;
+
+    public DeepSeekClient() {
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * 普通调用：等待模型返回完整结果（阻塞当前线程，仅供同步流程使用）
+     */
+    public String complete(String prompt, String model, int maxTokens) {
+        return complete(LlmPrompt.plain(prompt), model, maxTokens);
+    }
+
+    public String complete(LlmPrompt prompt, String model, int maxTokens) {
+        return completeAsync(prompt, model, maxTokens)
+                .contextWrite(LlmCallContext::captureThread)
+                .block();
+    }
+
+    /**
+     * 非阻塞调用：返回完整结果的Mono，调用期间不占用线程
+     */
+    public Mono<String> completeAsync(String prompt, String model, int maxTokens) {
+        return completeAsync(LlmPrompt.plain(prompt), model, maxTokens);
+    }
+
+    /**
+     * 非阻塞调用：固定指令作为system消息在前，可变内容作为user消息在后，便于命中上游前缀缓存
+     */
+    public Mono<String> completeAsync(LlmPrompt prompt, String model, int maxTokens) {
+        String cacheKey = cacheKey(prompt, model, maxTokens);
+        return Mono.fromCallable(() -> Optional.ofNullable(completionCache.get(cacheKey)))
+                .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+                .flatMap(cached -> {
+                    if (cached.isPresent()) {
+                        log.info("命中大模型结果缓存，模型: {}，长度: {} 字符", model, cached.get().length());
+                        return Mono.just(cached.get());
+                    }
+                    return coalesce(cacheKey, () -> requestCompletion(prompt, model, maxTokens)
+                            .flatMap(result -> Mono.fromRunnable(() -> completionCache.put(cacheKey, result))
+                                    .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+                                    .thenReturn(result)));
+                });
+    }
+
+    /**
+     * 相同请求合并：同一时刻相同(model, prompt, 参数)的调用共享一次上游请求，全部调用方都取消时才取消上游
+     */
+    private Mono<String> coalesce(String key, Supplier<Mono<String>> request) {
+        boolean[] created = {false};
+        Mono<String> shared = inFlight.computeIfAbsent(key, k -> {
+            created[0] = true;
+            return request.get()
+                    .doFinally(signal -> inFlight.remove(k))
+                    .share();
+        });
+        if (!created[0]) {
+            meterRegistry.counter("copyright.llm.coalesced").increment();
+            log.info("合并相同的进行中请求，key: {}", key.substring(0, 12));
+        }
+        return shared;
+    }
+
+    private Mono<String> requestCompletion(LlmPrompt prompt, String model, int maxTokens) {
+        Map<String, Object> requestBody = buildRequestBody(prompt, model, maxTokens, false);
+        log.info("调用DeepSeek API，模型: {}，阶段: {}，max_tokens: {}", model, prompt.getStage(), requestBody.get("max_tokens"));
+
+        return Mono.deferContextual(context -> {
+            CallTiming timing = new CallTiming();
+            CopyrightLlmCall call = new CopyrightLlmCall()
+                    .setProjectId(LlmCallContext.projectId(context))
+                    .setStage(prompt.getStage())
+                    .setModel(model);
+            return resilience.call(model, () -> {
+                        timing.attempts.incrementAndGet();
+                        return limiters.run(model, () -> {
+                            timing.markSent();
+                            return CompletionResponseParser.parse(
+                                    httpClients.forModel(model).post()
+                                            .uri(baseUrl + "/chat/completions")
+                                            .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                                            .bodyValue(requestBody)
+                                            .retrieve()
+                                            .bodyToFlux(DataBuffer.class))
+                                    .timeout(callTimeout(model));
+                        });
+                    }, resilience.isHedgeable(model, clampMaxTokens(model, maxTokens)))
+                    .doOnSuccess(completion -> recordCall(call
+                            .setPromptTokens(completion.getPromptTokens())
+                            .setPromptCacheHitTokens(completion.getPromptCacheHitTokens())
+                            .setCompletionTokens(completion.getCompletionTokens())
+                            .setStatus("success"), timing))
+                    .doOnError(e -> recordCall(call
+                            .setStatus("error")
+                            .setErrorMessage(abbreviate(e.getMessage())), timing));
+        })
+                .map(completion -> {
+                    log.info("DeepSeek API响应: 正文 {} 字符，prompt_tokens={}（缓存命中 {}），completion_tokens={}",
+                            completion.getContent().length(), completion.getPromptTokens(),
+                            completion.getPromptCacheHitTokens(), completion.getCompletionTokens());
+                    recordPromptCache(prompt.getStage(), model,
+                            completion.getPromptCacheHitTokens(), completion.getPromptCacheMissTokens());
+                    return completion.getContent();
+                })
+                .onErrorMap(e -> {
+                    log.error("调用DeepSeek API失败", e);
+                    return new RuntimeException("AI服务调用失败: " + e.getMessage(), e);
+                });
+    }
+
+    /**
+     * 异步写入调用记录，记录失败不影响调用结果
+     * 排队时间（熔断、本节点限流、集群许可）与上游耗时分开记录，阶段耗时统计只使用上游耗时
+     */
+    private void recordCall(CopyrightLlmCall call, CallTiming timing) {
+        long end = System.currentTimeMillis();
+        long sentAt = timing.sentAt.get() > 0 ? timing.sentAt.get() : end;
+        call.setQueueWaitMs(sentAt - timing.start)
+                .setLatencyMs(end - sentAt)
+                .setRetries(Math.max(0, timing.attempts.get() - 1));
+        Mono.fromRunnable(() -> llmCallService.recordCall(call))
+                .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+                .subscribe(null, e -> log.warn("保存大模型调用记录失败: {}", e.getMessage()));
+    }
+
+    private String abbreviate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    /**
+     * 流式调用：按服务端推送的增量逐块返回，不缓冲完整响应体
+     * 命中缓存时一次性返回完整内容；收到[DONE]或finish_reason为stop的流才把拼接后的正文写入缓存，
+     * 上游中途断开但连接正常关闭时内容不完整，不能缓存
+     */
+    public Flux<Delta> stream(String prompt, String model, int maxTokens) {
+        return stream(LlmPrompt.plain(prompt), model, maxTokens);
+    }
+
+    public Flux<Delta> stream(LlmPrompt prompt, String model, int maxTokens) {
+        String cacheKey = cacheKey(prompt, model, maxTokens);
+        return Mono.fromCallable(() -> Optional.ofNullable(completionCache.get(cacheKey)))
+                .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO))
+                .flatMapMany(cached -> {
+                    if (cached.isPresent()) {
+                        log.info("命中大模型结果缓存（流式），模型: {}，长度: {} 字符", model, cached.get().length());
+                        return Flux.just(new Delta(cached.get(), null));
+                    }
+
+                    Map<String, Object> requestBody = buildRequestBody(prompt, model, maxTokens, true);
+                    log.info("流式调用DeepSeek API，模型: {}，max_tokens: {}", model, requestBody.get("max_tokens"));
+
+                    StreamState state = new StreamState();
+                    return streamFromApi(prompt, model, requestBody, state)
+                            .concatWith(Mono.<Delta>fromRunnable(() -> {
+                                        if (state.finished) {
+                                            completionCache.put(cacheKey, state.content.toString());
+                                        } else {
+                                            log.warn("流式调用未收到结束标记，内容可能不完整，不写入缓存，模型: {}", model);
+                                        }
+                                    })
+                                    .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.LLM_IO)));
+                });
+    }
+
+    /**
+     * 流式请求，流结束、失败或被取消时写入一条调用记录；上游未返回usage时按已收到的内容估算token数
+     */
+    private Flux<Delta> streamFromApi(LlmPrompt prompt, String model, Map<String, Object> requestBody, StreamState state) {
+        String stage = prompt.getStage();
+        return Flux.deferContextual(context -> {
+            CallTiming timing = new CallTiming();
+            CopyrightLlmCall call = new CopyrightLlmCall()
+                    .setProjectId(LlmCallContext.projectId(context))
+                    .setStage(stage)
+                    .setModel(model);
+            return resilience.stream(model, () -> {
+                        timing.attempts.incrementAndGet();
+                        return limiters.runMany(model, () -> {
+                            timing.markSent();
+                            return httpClients.forModel(model).post()
+                                    .uri(baseUrl + "/chat/completions")
+                                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                                    .accept(MediaType.TEXT_EVENT_STREAM)
+                                    .bodyValue(requestBody)
+                                    .retrieve()
+                                    .bodyToFlux(SSE_TYPE)
+                                    .map(ServerSentEvent::data)
+                                    .filter(data -> data != null && !data.isBlank())
+                                    .takeWhile(data -> {
+                                        if (STREAM_DONE.equals(data.trim())) {
+                                            state.finished = true;
+                                            return false;
+                                        }
+                                        return true;
+                                    })
+                                    .concatMap(data -> Mono.justOrEmpty(parseDelta(stage, model, data, state)))
+                                    .timeout(Duration.ofSeconds(streamIdleTimeoutSeconds));
+                        });
+                    })
+                    .doOnNext(state::append)
+                    .doOnError(e -> call.setErrorMessage(abbreviate(e.getMessage())))
+                    .doFinally(signal -> {
+                        String status = signal == SignalType.ON_COMPLETE ? "success"
+                                : signal == SignalType.ON_ERROR ? "error" : "cancelled";
+                        recordCall(state.fillUsage(call, prompt).setStatus(status), timing);
+                    });
+        })
+                .onErrorMap(e -> {
+                    log.error("流式调用DeepSeek API失败", e);
+                    return new RuntimeException("AI服务调用失败: " + e.getMessage(), e);
+                });
+    }
+
+    /**
+     * 解析单个流式数据块中的增量内容；最后一个数据块携带usage（choices为空），顺带记录上游缓存命中
+     */
+    private Delta parseDelta(String stage, String model, String data, StreamState state) {
+        try {
+            JsonNode root = objectMapper.readTree(data);
+            JsonNode usage = root.get("usage");
+            if (usage != null && usage.isObject()) {
+                state.usage(usage);
+                recordPromptCache(stage, model,
+                        usage.path("prompt_cache_hit_tokens").asLong(), usage.path("prompt_cache_miss_tokens").asLong());
+            }
+            JsonNode choices = root.get("choices");
+            if (choices == null || !choices.isArray() || choices.size() == 0) {
+                return null;
+            }
+            if ("stop".equals(textOrNull(choices.get(0).get("finish_reason")))) {
+                state.finished = true;
+            }
+            JsonNode delta = choices.get(0).get("delta");
+            if (delta == null) {
+                return null;
+            }
+            String content = textOrNull(delta.get("content"));
+            String reasoning = textOrNull(delta.get("reasoning_content"));
+            if (content == null && reasoning == null) {
+                return null;
+            }
+            return new Delta(content, reasoning);
+        } catch (Exception e) {
+            log.warn("忽略无法解析的流式数据块: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String textOrNull(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        String text = node.asText();
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * 按阶段记录上游前缀缓存命中/未命中的token数
+     */
+    private void recordPromptCache(String stage, String model, long hitTokens, long missTokens) {
+        meterRegistry.counter("copyright.llm.prompt.cache.tokens", "stage", stage, "model", model, "result", "hit")
+                .increment(hitTokens);
+        meterRegistry.counter("copyright.llm.prompt.cache.tokens", "stage", stage, "model", model, "result", "miss")
+                .increment(missTokens);
+    }
+
+    private Map<String, Object> buildRequestBody(LlmPrompt prompt, String model, int maxTokens, boolean stream) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+
+        List<Map<String, String>> messages = new ArrayList<>();
+        if (prompt.getInstructions() != null && !prompt.getInstructions().isEmpty()) {
+            Map<String, String> systemMessage = new HashMap<>();
+            systemMessage.put("role", "system");
+            systemMessage.put("content", prompt.getInstructions());
+            messages.add(systemMessage);
+        }
+        Map<String, String> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", prompt.getPayload());
+        messages.add(userMessage);
+        requestBody.put("messages", messages);
+
+        requestBody.put("max_tokens", clampMaxTokens(model, maxTokens));
+        requestBody.put("temperature", DEFAULT_TEMPERATURE);
+        if (stream) {
+            requestBody.put("stream", true);
+            requestBody.put("stream_options", Map.of("include_usage", true));
+        }
+        return requestBody;
+    }
+
+    /**
+     * 按模型限制max_tokens
+     */
+    public static int clampMaxTokens(String model, int maxTokens) {
+        if (HIGH_COST_MODEL.equals(model)) {
+            return Math.min(maxTokens, 40000); // DeepSeek Reasoner最大40K tokens
+        }
+        return Math.min(maxTokens, 8192);  // DeepSeek Chat最大8K tokens
+    }
+
+    private String cacheKey(LlmPrompt prompt, String model, int maxTokens) {
+        return LlmCompletionCache.key(model, prompt.cacheText(), clampMaxTokens(model, maxTokens), DEFAULT_TEMPERATURE);
+    }
+
+    private Duration callTimeout(String model) {
+        return HIGH_COST_MODEL.equals(model) ? Duration.ofMinutes(15) : Duration.ofMinutes(10);
+    }
+
+    /**
+     * 估算token数：上游未返回usage时使用，按中文字符约0.6个token、其他字符约0.3个token计算
+     */
+    static long estimateTokens(CharSequence text) {
+        double tokens = 0;
+        for (int i = 0; i < text.length(); i++) {
+            tokens += Character.UnicodeScript.of(text.charAt(i)) == Character.UnicodeScript.HAN ? 0.6 : 0.3;
+        }
+        return Math.round(tokens);
+    }
+
+    /**
+     * 一次调用的计时：start为调用方订阅时间，sentAt为首次真正发出上游请求的时间
+     */
+    private static class CallTiming {
+        private final long start = System.currentTimeMillis();
+        private final AtomicLong sentAt = new AtomicLong();
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        void markSent() {
+            sentAt.compareAndSet(0, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 一次流式调用累计的正文、推理过程和usage
+     */
+    private static class StreamState {
+        private final StringBuilder content = new StringBuilder();
+        private final StringBuilder reasoning = new StringBuilder();
+        private volatile JsonNode usage;
+        /**收到[DONE]或finish_reason为stop，说明上游正常生成完毕*/
+        private volatile boolean finished;
+
+        synchronized void append(Delta delta) {
+            if (delta.hasContent()) {
+                content.append(delta.getContent());
+            }
+            if (delta.getReasoningContent() != null) {
+                reasoning.append(delta.getReasoningContent());
+            }
+        }
+
+        void usage(JsonNode usage) {
+            this.usage = usage;
+        }
+
+        synchronized CopyrightLlmCall fillUsage(CopyrightLlmCall call, LlmPrompt prompt) {
+            JsonNode reported = usage;
+            if (reported != null) {
+                return call.setPromptTokens(reported.path("prompt_tokens").asLong())
+                        .setPromptCacheHitTokens(reported.path("prompt_cache_hit_tokens").asLong())
+                        .setCompletionTokens(reported.path("completion_tokens").asLong());
+            }
+            return call.setPromptTokens(estimateTokens(prompt.cacheText()))
+                    .setPromptCacheHitTokens(0L)
+                    .setCompletionTokens(estimateTokens(content) + estimateTokens(reasoning));
+        }
+    }
+
+    /**
+     * 流式增量：content为正文增量，reasoningContent为推理模型的思考过程增量
+     */
+    public static class Delta {
+        private final String content;
+        private final String reasoningContent;
+
+        public Delta(String content, String reasoningContent) {
+            this.content = content;
+            this.reasoningContent = reasoningContent;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public String getReasoningContent() {
+            return reasoningContent;
+        }
+
+        public boolean hasContent() {
+            return content != null;
+        }
+    }
+}
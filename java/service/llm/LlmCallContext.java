@@ -0,0 +1,75 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * 大模型调用的归属信息（所属项目、是否交互请求），用于调用记录和并发排队
+ * 响应式流程通过Reactor Context传递；同步流程（如软著信息提取）通过当前线程传递。
+ */
+public final class LlmCallContext {
+
+    private static final String PROJECT_ID = "copyright.llm.projectId";
+
+    private static final String INTERACTIVE = "copyright.llm.interactive";
+
+    private static final ThreadLocal<String> CURRENT_PROJECT = new ThreadLocal<>();
+
+    private LlmCallContext() {
+    }
+
+    /**
+     * 供contextWrite使用：之后订阅的全部大模型调用都记到该项目下
+     */
+    public static Context forProject(String projectId) {
+        return projectId != null ? Context.of(PROJECT_ID, projectId) : Context.empty();
+    }
+
+    /**
+     * 供contextWrite使用：用户正在等待结果的单阶段请求，排队时优先于整项目的批量生成
+     */
+    public static Context interactive() {
+        return Context.of(INTERACTIVE, true);
+    }
+
+    /**
+     * 在当前线程上执行同步任务，期间的阻塞调用记到该项目下
+     */
+    public static void runForProject(String projectId, Task task) throws Exception {
+        String previous = CURRENT_PROJECT.get();
+        CURRENT_PROJECT.set(projectId);
+        try {
+            task.run();
+        } finally {
+            if (previous != null) {
+                CURRENT_PROJECT.set(previous);
+            } else {
+                CURRENT_PROJECT.remove();
+            }
+        }
+    }
+
+    /**
+     * 把当前线程上的项目写入Context，用于阻塞调用
+     */
+    static Context captureThread(Context context) {
+        String projectId = CURRENT_PROJECT.get();
+        return projectId != null && !context.hasKey(PROJECT_ID) ? context.put(PROJECT_ID, projectId) : context;
+    }
+
+    static String projectId(ContextView context) {
+        return context.getOrDefault(PROJECT_ID, null);
+    }
+
+    static boolean isInteractive(ContextView context) {
+        return context.getOrDefault(INTERACTIVE, false);
+    }
+
+    /**
+     * 可抛出受检异常的同步任务
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,148 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 大模型调用熔断器
+ * 连续失败达到阈值后熔断；熔断期间新调用排队等待恢复，等待超过上限则快速失败。
+ * 熔断时间到达后放行一个探测调用，成功则恢复，失败则重新熔断。
+ */
+@Slf4j
+public class LlmCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Duration maxQueueWait;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probeInFlight;
+
+    public LlmCircuitBreaker(String name, int failureThreshold, Duration openDuration, Duration maxQueueWait) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = openDuration;
+        this.maxQueueWait = maxQueueWait;
+    }
+
+    /**
+     * 在熔断器保护下执行调用
+     */
+    public <T> Mono<T> guard(Mono<T> call) {
+        return awaitPermission(System.currentTimeMillis() + maxQueueWait.toMillis())
+                .then(call)
+                .doOnSuccess(result -> recordSuccess())
+                .doOnError(this::recordFailure)
+                .doOnCancel(this::releaseProbe);
+    }
+
+    /**
+     * 在熔断器保护下执行流式调用，流正常结束才算成功
+     */
+    public <T> Flux<T> guardMany(Flux<T> call) {
+        return awaitPermission(System.currentTimeMillis() + maxQueueWait.toMillis())
+                .thenMany(call)
+                .doOnComplete(this::recordSuccess)
+                .doOnError(this::recordFailure)
+                .doOnCancel(this::releaseProbe);
+    }
+
+    /**
+     * 熔断期间每次等到熔断结束再检查，超过deadline后快速失败
+     */
+    private Mono<Void> awaitPermission(long deadline) {
+        return Mono.defer(() -> {
+            long waitMs = tryAcquire();
+            if (waitMs <= 0) {
+                return Mono.empty();
+            }
+            long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                return Mono.error(new CircuitOpenException("AI服务暂不可用（" + name + "熔断中），请稍后重试"));
+            }
+            return Mono.delay(Duration.ofMillis(Math.min(waitMs, deadline - now)))
+                    .then(awaitPermission(deadline));
+        });
+    }
+
+    /**
+     * 返回0表示允许调用，否则返回建议等待的毫秒数
+     */
+    private synchronized long tryAcquire() {
+        long now = System.currentTimeMillis();
+        switch (state) {
+            case CLOSED:
+                return 0;
+            case OPEN:
+                if (now < openUntil) {
+                    return openUntil - now;
+                }
+                state = State.HALF_OPEN;
+                log.info("熔断器 {} 进入半开状态，放行探测调用", name);
+                probeInFlight = true;
+                return 0;
+            default:
+                if (probeInFlight) {
+                    return 1000;
+                }
+                probeInFlight = true;
+                return 0;
+        }
+    }
+
+    private synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("熔断器 {} 探测成功，恢复正常", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    private synchronized void recordFailure(Throwable error) {
+        if (error instanceof CircuitOpenException) {
+            return;
+        }
+        if (!LlmResilience.isRetryable(error)) {
+            // 参数错误等非上游故障不计入熔断
+            probeInFlight = false;
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("熔断器 {} 打开，连续失败 {} 次，{}秒后重试", name, consecutiveFailures, openDuration.getSeconds());
+            }
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + openDuration.toMillis();
+        }
+        probeInFlight = false;
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 熔断期间等待超时时抛出，不参与重试
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import lombok.Data;
+
+/**
+ * 一次非流式调用的结果：正文、推理过程和token用量
+ */
+@Data
+public class LlmCompletion {
+
+    private String content;
+
+    private String reasoningContent;
+
+    private long promptTokens;
+
+    private long completionTokens;
+
+    private long totalTokens;
+
+    /**命中上游前缀缓存的提示词token数（DeepSeek: prompt_cache_hit_tokens）*/
+    private long promptCacheHitTokens;
+
+    /**未命中上游前缀缓存的提示词token数（DeepSeek: prompt_cache_miss_tokens）*/
+    private long promptCacheMissTokens;
+}
@@ -0,0 +1,331 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 大模型调用结果缓存（内存LRU + 磁盘两级）
+ * 以 (model, prompt, max_tokens, temperature) 的SHA-256作为键，项目失败重试时可直接复用已生成的结果
+ */
+@Slf4j
+@Component
+public class LlmCompletionCache {
+
+    private static final String FILE_SUFFIX = ".txt";
+
+    @Value("${ai.deepseek.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.deepseek.cache.memory-entries:256}")
+    private int memoryEntries;
+
+    @Value("${ai.deepseek.cache.dir:${java.io.tmpdir}/copyright-llm-cache}")
+    private String cacheDir;
+
+    @Value("${ai.deepseek.cache.ttl-hours:72}")
+    private long ttlHours;
+
+    @Value("${ai.deepseek.cache.max-disk-mb:512}")
+    private long maxDiskMb;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Map<String, MemoryEntry> memoryCache;
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private Counter memoryHits;
+    private Counter diskHits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, memoryEntries);
+        this.memoryCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        this.memoryHits = Counter.builder("copyright.llm.cache.requests")
+                .tag("result", "hit").tag("tier", "memory")
+                .description("大模型结果缓存命中次数").register(meterRegistry);
+        this.diskHits = Counter.builder("copyright.llm.cache.requests")
+                .tag("result", "hit").tag("tier", "disk")
+                .description("大模型结果缓存命中次数").register(meterRegistry);
+        this.misses = Counter.builder("copyright.llm.cache.requests")
+                .tag("result", "miss").tag("tier", "none")
+                .description("大模型结果缓存未命中次数").register(meterRegistry);
+        Gauge.builder("copyright.llm.cache.memory.entries", this, c -> c.memorySize())
+                .register(meterRegistry);
+        Gauge.builder("copyright.llm.cache.disk.bytes", diskBytes, AtomicLong::get)
+                .register(meterRegistry);
+
+        if (!enabled) {
+            log.info("大模型结果缓存已禁用");
+            return;
+        }
+        try {
+            Files.createDirectories(root());
+            diskBytes.set(scanDiskBytes());
+            log.info("大模型结果缓存已启用: dir={}, 磁盘占用={} bytes, TTL={}小时", root(), diskBytes.get(), ttlHours);
+        } catch (IOException e) {
+            log.warn("初始化大模型结果缓存目录失败，仅使用内存缓存: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 计算缓存键
+     */
+    public static String key(String model, String prompt, int maxTokens, double temperature) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String header = model + "\n" + maxTokens + "\n" + temperature + "\n";
+            digest.update(header.getBytes(StandardCharsets.UTF_8));
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception e) {
+            throw new IllegalStateException("计算缓存键失败", e);
+        }
+    }
+
+    /**
+     * 读取缓存，未命中返回null
+     */
+    public String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        MemoryEntry entry;
+        synchronized (memoryCache) {
+            entry = memoryCache.get(key);
+            if (entry != null && entry.isExpired(ttl())) {
+                memoryCache.remove(key);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            memoryHits.increment();
+            return entry.content;
+        }
+
+        String content = readFromDisk(key);
+        if (content != null) {
+            diskHits.increment();
+            synchronized (memoryCache) {
+                memoryCache.put(key, new MemoryEntry(content));
+            }
+            return content;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入缓存（空内容不缓存）
+     */
+    public void put(String key, String content) {
+        if (!enabled || content == null || content.isBlank()) {
+            return;
+        }
+        synchronized (memoryCache) {
+            memoryCache.put(key, new MemoryEntry(content));
+        }
+        writeToDisk(key, content);
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("memoryHits", (long) memoryHits.count());
+        stats.put("diskHits", (long) diskHits.count());
+        stats.put("misses", (long) misses.count());
+        stats.put("memoryEntries", memorySize());
+        stats.put("diskBytes", diskBytes.get());
+        return stats;
+    }
+
+    private int memorySize() {
+        if (memoryCache == null) {
+            return 0;
+        }
+        synchronized (memoryCache) {
+            return memoryCache.size();
+        }
+    }
+
+    private String readFromDisk(String key) {
+        Path file = fileOf(key);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+            if (age > ttl().toMillis()) {
+                deleteFile(file);
+                return null;
+            }
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("读取磁盘缓存失败: key={}, error={}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, String content) {
+        Path file = fileOf(key);
+        try {
+            Files.createDirectories(file.getParent());
+            long previousSize = Files.exists(file) ? Files.size(file) : 0;
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.writeString(temp, content, StandardCharsets.UTF_8);
+            long size = Files.size(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(size - previousSize) > maxDiskBytes()) {
+                evict();
+            }
+        } catch (IOException e) {
+            log.warn("写入磁盘缓存失败: key={}, error={}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 淘汰过期文件，若仍超出容量则按最后修改时间从旧到新删除，直到降至容量的90%
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            List<Path> files = listCacheFiles();
+            long now = System.currentTimeMillis();
+            long total = 0;
+            List<Path> alive = new ArrayList<>();
+            for (Path file : files) {
+                try {
+                    if (now - Files.getLastModifiedTime(file).toMillis() > ttl().toMillis()) {
+                        deleteFile(file);
+                    } else {
+                        alive.add(file);
+                        total += Files.size(file);
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+
+            long target = maxDiskBytes() * 9 / 10;
+            if (total > target) {
+                alive.sort(Comparator.comparingLong(this::lastModified));
+                for (Path file : alive) {
+                    if (total <= target) {
+                        break;
+                    }
+                    try {
+                        long size = Files.size(file);
+                        deleteFile(file);
+                        total -= size;
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+            diskBytes.set(total);
+            log.info("磁盘缓存淘汰完成，当前占用: {} bytes", total);
+        }
+    }
+
+    private long scanDiskBytes() {
+        long total = 0;
+        for (Path file : listCacheFiles()) {
+            try {
+                total += Files.size(file);
+            } catch (IOException ignored) {
+            }
+        }
+        return total;
+    }
+
+    private List<Path> listCacheFiles() {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(root())) {
+            return files;
+        }
+        try (Stream<Path> stream = Files.walk(root(), 2)) {
+            stream.filter(p -> p.toString().endsWith(FILE_SUFFIX)).forEach(files::add);
+        } catch (IOException e) {
+            log.warn("扫描磁盘缓存失败: {}", e.getMessage());
+        }
+        return files;
+    }
+
+    private long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除缓存文件失败: {}", file, e);
+        }
+    }
+
+    private Path root() {
+        return Paths.get(cacheDir);
+    }
+
+    private Path fileOf(String key) {
+        return root().resolve(key.substring(0, 2)).resolve(key + FILE_SUFFIX);
+    }
+
+    private Duration ttl() {
+        return Duration.ofHours(ttlHours);
+    }
+
+    private long maxDiskBytes() {
+        return maxDiskMb * 1024 * 1024;
+    }
+
+    private static class MemoryEntry {
+        private final String content;
+        private final long createdAt = System.currentTimeMillis();
+
+        MemoryEntry(String content) {
+            this.content = content;
+        }
+
+        boolean isExpired(Duration ttl) {
+            return System.currentTimeMillis() - createdAt > ttl.toMillis();
+        }
+    }
+}
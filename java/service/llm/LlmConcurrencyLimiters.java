@@ -0,0 +1,105 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.jeecg.modules.agenthub.service.cluster.ClusterPermits;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 按模型区分的并发限制器，推理模型和对话模型各自独立排队，互不阻塞
+ * 调用先在本节点的自适应限制器排队，轮到执行时才获取集群许可（整个集群的上限），
+ * 本节点排队中的调用不占用集群槽位，不会挤占其他节点的额度；
+ * 等待集群许可的时间不计入本节点限制器的延迟，避免集群排队被误判为上游拥塞
+ */
+@Slf4j
+@Component
+public class LlmConcurrencyLimiters {
+
+    @Value("${ai.deepseek.limiter.reasoner.initial:4}")
+    private int reasonerInitial;
+
+    @Value("${ai.deepseek.limiter.reasoner.min:1}")
+    private int reasonerMin;
+
+    @Value("${ai.deepseek.limiter.reasoner.max:32}")
+    private int reasonerMax;
+
+    @Value("${ai.deepseek.limiter.chat.initial:8}")
+    private int chatInitial;
+
+    @Value("${ai.deepseek.limiter.chat.min:2}")
+    private int chatMin;
+
+    @Value("${ai.deepseek.limiter.chat.max:64}")
+    private int chatMax;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ClusterPermits clusterPermits;
+
+    private AdaptiveConcurrencyLimiter reasonerLimiter;
+    private AdaptiveConcurrencyLimiter chatLimiter;
+
+    @PostConstruct
+    public void init() {
+        this.reasonerLimiter = new AdaptiveConcurrencyLimiter(DeepSeekClient.HIGH_COST_MODEL,
+                reasonerInitial, reasonerMin, reasonerMax, meterRegistry);
+        this.chatLimiter = new AdaptiveConcurrencyLimiter(DeepSeekClient.LOW_COST_MODEL,
+                chatInitial, chatMin, chatMax, meterRegistry);
+        log.info("大模型并发限制器已初始化: reasoner={}({}~{}), chat={}({}~{})",
+                reasonerInitial, reasonerMin, reasonerMax, chatInitial, chatMin, chatMax);
+    }
+
+    public AdaptiveConcurrencyLimiter forModel(String model) {
+        return DeepSeekClient.HIGH_COST_MODEL.equals(model) ? reasonerLimiter : chatLimiter;
+    }
+
+    /**
+     * 在本节点许可和集群许可内执行单次调用
+     */
+    public <T> Mono<T> run(String model, Supplier<Mono<T>> call) {
+        String resource = clusterResource(model);
+        return forModel(model).run(call, gated -> clusterPermits.run(resource, gated));
+    }
+
+    /**
+     * 在本节点许可和集群许可内执行流式调用
+     */
+    public <T> Flux<T> runMany(String model, Supplier<Flux<T>> call) {
+        String resource = clusterResource(model);
+        return forModel(model).runMany(call, gated -> clusterPermits.runMany(resource, gated));
+    }
+
+    private static String clusterResource(String model) {
+        return DeepSeekClient.HIGH_COST_MODEL.equals(model) ? ClusterPermits.LLM_REASONER : ClusterPermits.LLM_CHAT;
+    }
+
+    /**
+     * 各模型当前的并发上限、执行数和排队数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(DeepSeekClient.HIGH_COST_MODEL, statsOf(reasonerLimiter));
+        stats.put(DeepSeekClient.LOW_COST_MODEL, statsOf(chatLimiter));
+        return stats;
+    }
+
+    private Map<String, Object> statsOf(AdaptiveConcurrencyLimiter limiter) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", (int) Math.floor(limiter.getLimit()));
+        stats.put("inflight", limiter.getInflight());
+        stats.put("queued", limiter.getQueueDepth());
+        return stats;
+    }
+}
@@ -0,0 +1,113 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按模型独立的HTTP连接池
+ * 推理模型调用动辄十几分钟，独立连接池保证它占满连接时不影响对话模型的短调用。
+ * 连接池指标（reactor.netty.connection.provider.*）通过Micrometer导出。
+ */
+@Slf4j
+@Component
+public class LlmHttpClients {
+
+    @Value("${ai.deepseek.pool.reasoner.max-connections:32}")
+    private int reasonerMaxConnections;
+
+    @Value("${ai.deepseek.pool.reasoner.pending-acquire-max:256}")
+    private int reasonerPendingAcquireMax;
+
+    @Value("${ai.deepseek.pool.reasoner.read-timeout-seconds:600}")
+    private int reasonerReadTimeoutSeconds;
+
+    @Value("${ai.deepseek.pool.chat.max-connections:64}")
+    private int chatMaxConnections;
+
+    @Value("${ai.deepseek.pool.chat.pending-acquire-max:512}")
+    private int chatPendingAcquireMax;
+
+    @Value("${ai.deepseek.pool.chat.read-timeout-seconds:600}")
+    private int chatReadTimeoutSeconds;
+
+    @Value("${ai.deepseek.pool.pending-acquire-timeout-seconds:120}")
+    private long pendingAcquireTimeoutSeconds;
+
+    @Value("${ai.deepseek.pool.max-idle-seconds:60}")
+    private long maxIdleSeconds;
+
+    @Value("${ai.deepseek.pool.http2-enabled:true}")
+    private boolean http2Enabled;
+
+    @Value("${ai.deepseek.base-url:https://api.deepseek.com/v1}")
+    private String baseUrl;
+
+    private ConnectionProvider reasonerProvider;
+    private ConnectionProvider chatProvider;
+    private WebClient reasonerClient;
+    private WebClient chatClient;
+
+    @PostConstruct
+    public void init() {
+        this.reasonerProvider = buildProvider("deepseek-reasoner", reasonerMaxConnections, reasonerPendingAcquireMax);
+        this.chatProvider = buildProvider("deepseek-chat", chatMaxConnections, chatPendingAcquireMax);
+        this.reasonerClient = buildWebClient(reasonerProvider, reasonerReadTimeoutSeconds);
+        this.chatClient = buildWebClient(chatProvider, chatReadTimeoutSeconds);
+        log.info("大模型连接池已初始化: reasoner最大连接={}, chat最大连接={}, HTTP/2={}",
+                reasonerMaxConnections, chatMaxConnections, http2Enabled);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        reasonerProvider.disposeLater().block(Duration.ofSeconds(10));
+        chatProvider.disposeLater().block(Duration.ofSeconds(10));
+    }
+
+    public WebClient forModel(String model) {
+        return DeepSeekClient.HIGH_COST_MODEL.equals(model) ? reasonerClient : chatClient;
+    }
+
+    private ConnectionProvider buildProvider(String name, int maxConnections, int pendingAcquireMax) {
+        return ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSeconds))
+                .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(true)
+                .build();
+    }
+
+    private WebClient buildWebClient(ConnectionProvider provider, int readTimeoutSeconds) {
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)
+                .doOnConnected(conn ->
+                        conn.addHandlerLast(new ReadTimeoutHandler(readTimeoutSeconds, TimeUnit.SECONDS))
+                            .addHandlerLast(new WriteTimeoutHandler(60, TimeUnit.SECONDS)));
+        if (http2Enabled && baseUrl.startsWith("https")) {
+            // HTTPS下通过ALPN协商，服务端不支持HTTP/2时回退到HTTP/1.1；本地http地址（如测试桩）保持HTTP/1.1
+            httpClient = httpClient.secure().protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+    }
+}
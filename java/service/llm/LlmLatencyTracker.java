@@ -0,0 +1,40 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import java.util.Arrays;
+
+/**
+ * 记录最近N次调用耗时，用于计算对冲请求的触发阈值
+ */
+public class LlmLatencyTracker {
+
+    private final long[] samples;
+    private final int minSamples;
+    private int size;
+    private int next;
+
+    public LlmLatencyTracker(int windowSize, int minSamples) {
+        this.samples = new long[Math.max(1, windowSize)];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+    }
+
+    /**
+     * 返回指定分位的耗时，样本不足时返回-1
+     */
+    public synchronized long percentile(double quantile) {
+        if (size < minSamples) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+}
@@ -0,0 +1,91 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 大模型提示词：固定指令在前（system消息），可变内容在后（user消息）
+ * DeepSeek按请求前缀做上下文缓存，同一阶段的固定指令逐字节不变时，后续请求可以直接命中缓存。
+ * 因此指令部分不能包含应用名称、代码等任何可变内容，这些内容统一放到payload里。
+ */
+@Getter
+public class LlmPrompt {
+
+    /**默认阶段：未按阶段拆分的调用*/
+    public static final String DEFAULT_STAGE = "default";
+
+    /**生成阶段，用于按阶段统计上游缓存命中*/
+    private final String stage;
+
+    /**固定指令，为null时只发送user消息*/
+    private final String instructions;
+
+    /**可变内容*/
+    private final String payload;
+
+    private LlmPrompt(String stage, String instructions, String payload) {
+        this.stage = stage;
+        this.instructions = instructions;
+        this.payload = payload;
+    }
+
+    /**
+     * 未拆分的单条提示词，按原样作为user消息发送
+     */
+    public static LlmPrompt plain(String prompt) {
+        return plain(DEFAULT_STAGE, prompt);
+    }
+
+    /**
+     * 未拆分的单条提示词，指定所属阶段
+     */
+    public static LlmPrompt plain(String stage, String prompt) {
+        return new LlmPrompt(stage, null, prompt);
+    }
+
+    public static Builder builder(String stage) {
+        return new Builder(stage);
+    }
+
+    /**
+     * 参与结果缓存键计算的文本；无指令时与原始提示词一致，保证已有缓存仍可命中
+     */
+    public String cacheText() {
+        if (instructions == null) {
+            return payload;
+        }
+        return "[system]\n" + instructions + "\n[user]\n" + payload;
+    }
+
+    public static class Builder {
+        private final String stage;
+        private final StringBuilder instructions = new StringBuilder();
+        private final List<String> sections = new ArrayList<>();
+
+        private Builder(String stage) {
+            this.stage = stage;
+        }
+
+        /**
+         * 追加固定指令，多次调用按顺序拼接
+         */
+        public Builder instruction(String text) {
+            instructions.append(text);
+            return this;
+        }
+
+        /**
+         * 追加一段可变内容，格式为【标题】：换行后接内容
+         */
+        public Builder payload(String label, String value) {
+            sections.add("【" + label + "】：\n" + (value != null ? value : ""));
+            return this;
+        }
+
+        public LlmPrompt build() {
+            return new LlmPrompt(stage, instructions.toString(), String.join("\n\n", sections));
+        }
+    }
+}
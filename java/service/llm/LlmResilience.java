@@ -0,0 +1,229 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 大模型调用容错：带抖动的指数退避重试、对话模型的对冲请求、按模型熔断
+ */
+@Slf4j
+@Component
+public class LlmResilience {
+
+    /**总尝试次数（含首次请求）*/
+    @Value("${ai.deepseek.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${ai.deepseek.retry.min-backoff-ms:2000}")
+    private long minBackoffMs;
+
+    @Value("${ai.deepseek.retry.max-backoff-ms:30000}")
+    private long maxBackoffMs;
+
+    @Value("${ai.deepseek.retry.jitter:0.5}")
+    private double jitter;
+
+    @Value("${ai.deepseek.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${ai.deepseek.hedge.quantile:0.95}")
+    private double hedgeQuantile;
+
+    /**max_tokens不超过该值的对话模型调用才对冲，长篇生成对冲会成倍增加最贵调用的费用*/
+    @Value("${ai.deepseek.hedge.max-tokens:4096}")
+    private int hedgeMaxTokens;
+
+    @Value("${ai.deepseek.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${ai.deepseek.circuit-breaker.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${ai.deepseek.circuit-breaker.max-queue-wait-seconds:300}")
+    private long maxQueueWaitSeconds;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, LlmCircuitBreaker> breakers = new HashMap<>();
+    private final Map<String, LlmLatencyTracker> latencyTrackers = new HashMap<>();
+    /**只统计可对冲的短调用，对冲阈值不受长篇生成耗时影响*/
+    private final Map<String, LlmLatencyTracker> hedgeLatencyTrackers = new HashMap<>();
+    private final Map<String, Counter> retryCounters = new HashMap<>();
+    private final Map<String, Counter> hedgeCounters = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (String model : new String[]{DeepSeekClient.HIGH_COST_MODEL, DeepSeekClient.LOW_COST_MODEL}) {
+            LlmCircuitBreaker breaker = new LlmCircuitBreaker(model, failureThreshold,
+                    Duration.ofSeconds(openSeconds), Duration.ofSeconds(maxQueueWaitSeconds));
+            breakers.put(model, breaker);
+            latencyTrackers.put(model, new LlmLatencyTracker(200, 20));
+            hedgeLatencyTrackers.put(model, new LlmLatencyTracker(200, 20));
+            retryCounters.put(model, Counter.builder("copyright.llm.retries")
+                    .tag("model", model).description("大模型调用重试次数").register(meterRegistry));
+            hedgeCounters.put(model, Counter.builder("copyright.llm.hedges")
+                    .tag("model", model).description("发出的对冲请求次数").register(meterRegistry));
+            Gauge.builder("copyright.llm.circuit.state", breaker, b -> b.getState().ordinal())
+                    .tag("model", model).description("熔断器状态：0关闭 1打开 2半开").register(meterRegistry);
+        }
+    }
+
+    /**
+     * 是否对冲：只对冲max_tokens较小的对话模型调用
+     */
+    public boolean isHedgeable(String model, int maxTokens) {
+        return DeepSeekClient.LOW_COST_MODEL.equals(model) && maxTokens <= hedgeMaxTokens;
+    }
+
+    /**
+     * 普通调用：每次尝试都经过熔断器；可对冲的调用在耗时超过短调用的p95后追加一个对冲请求，取先返回的结果
+     * @param attempt 每次调用都会重新订阅，用于发起一次完整的HTTP请求
+     * @param hedge 是否允许对冲（见isHedgeable）
+     */
+    public <T> Mono<T> call(String model, Supplier<Mono<T>> attempt, boolean hedge) {
+        LlmCircuitBreaker breaker = breakers.get(model);
+        Mono<T> guarded = Mono.defer(() -> breaker.guard(timed(model, hedge, attempt.get())));
+        Mono<T> primary = hedge ? hedged(model, guarded) : guarded;
+        return primary.retryWhen(retrySpec(model, error -> true));
+    }
+
+    /**
+     * 流式调用：只在尚未收到任何增量时重试，已推送给客户端的内容无法撤回
+     */
+    public <T> Flux<T> stream(String model, Supplier<Flux<T>> attempt) {
+        LlmCircuitBreaker breaker = breakers.get(model);
+        return Flux.defer(() -> {
+            AtomicBoolean emitted = new AtomicBoolean(false);
+            return Flux.defer(() -> breaker.guardMany(attempt.get()))
+                    .doOnNext(item -> emitted.set(true))
+                    .retryWhen(retrySpec(model, error -> !emitted.get()));
+        });
+    }
+
+    private <T> Mono<T> timed(String model, boolean hedge, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.currentTimeMillis();
+            return call.doOnSuccess(result -> {
+                long latencyMs = System.currentTimeMillis() - start;
+                latencyTrackers.get(model).record(latencyMs);
+                if (hedge) {
+                    hedgeLatencyTrackers.get(model).record(latencyMs);
+                }
+            });
+        });
+    }
+
+    private <T> Mono<T> hedged(String model, Mono<T> call) {
+        if (!hedgeEnabled) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            long threshold = hedgeLatencyTrackers.get(model).percentile(hedgeQuantile);
+            if (threshold <= 0) {
+                return call;
+            }
+            Mono<T> backup = Mono.delay(Duration.ofMillis(threshold))
+                    .doOnNext(tick -> {
+                        hedgeCounters.get(model).increment();
+                        log.info("模型 {} 调用超过p{}耗时 {}ms，发出对冲请求", model, (int) (hedgeQuantile * 100), threshold);
+                    })
+                    .then(call);
+            return Mono.firstWithValue(call, backup);
+        });
+    }
+
+    /**
+     * 推理模型单次调用可达十几分钟，超时后不再重试，避免一次调用占用数倍超时时长
+     */
+    private Retry retrySpec(String model, Predicate<Throwable> allowed) {
+        boolean retryTimeouts = !DeepSeekClient.HIGH_COST_MODEL.equals(model);
+        return Retry.backoff(Math.max(0, maxAttempts - 1), Duration.ofMillis(minBackoffMs))
+                .maxBackoff(Duration.ofMillis(maxBackoffMs))
+                .jitter(jitter)
+                .filter(error -> {
+                    Throwable cause = unwrapHedge(error);
+                    return allowed.test(error) && isRetryable(cause) && (retryTimeouts || !isTimeout(cause));
+                })
+                .doBeforeRetry(signal -> {
+                    retryCounters.get(model).increment();
+                    log.warn("模型 {} 调用失败，第{}次重试: {}", model, signal.totalRetries() + 1, signal.failure().getMessage());
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    /**
+     * firstWithValue两个请求都失败时会把异常包装在一起，取第一个原始异常判断
+     */
+    private Throwable unwrapHedge(Throwable error) {
+        Throwable[] suppressed = error.getSuppressed();
+        if (error instanceof NoSuchElementException && suppressed.length > 0) {
+            return suppressed[0];
+        }
+        return error;
+    }
+
+    /**
+     * 429、5xx、超时和连接异常可以重试；熔断和4xx参数错误不重试
+     */
+    public static boolean isRetryable(Throwable error) {
+        if (error instanceof LlmCircuitBreaker.CircuitOpenException) {
+            return false;
+        }
+        if (AdaptiveConcurrencyLimiter.isOverload(error)) {
+            return true;
+        }
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof WebClientRequestException || current instanceof IOException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    static boolean isTimeout(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof TimeoutException || current instanceof io.netty.handler.timeout.TimeoutException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        breakers.forEach((model, breaker) -> {
+            Map<String, Object> modelStats = new HashMap<>();
+            modelStats.put("circuitState", breaker.getState().name());
+            modelStats.put("p95LatencyMs", latencyTrackers.get(model).percentile(0.95));
+            modelStats.put("retries", (long) retryCounters.get(model).count());
+            modelStats.put("hedges", (long) hedgeCounters.get(model).count());
+            stats.put(model, modelStats);
+        });
+        return stats;
+    }
+}
@@ -0,0 +1,50 @@
+package org.jeecg.modules.agenthub.service.pipeline;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本节点正在生成的项目的取消令牌
+ */
+@Component
+public class CancellationRegistry {
+
+    private final Map<String, CancellationToken> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * 为项目创建新的令牌，替换之前的令牌
+     */
+    public CancellationToken register(String projectId) {
+        CancellationToken token = new CancellationToken(projectId);
+        tokens.put(projectId, token);
+        return token;
+    }
+
+    /**
+     * 项目当前的令牌，项目不在本节点生成时返回null
+     */
+    public CancellationToken get(String projectId) {
+        return tokens.get(projectId);
+    }
+
+    /**
+     * 生成结束后移除令牌；只移除传入的令牌，不影响同一项目之后注册的令牌
+     */
+    public void remove(CancellationToken token) {
+        tokens.remove(token.getProjectId(), token);
+    }
+
+    /**
+     * 取消项目在本节点上的生成，返回项目是否在本节点生成
+     */
+    public boolean cancel(String projectId) {
+        CancellationToken token = tokens.get(projectId);
+        if (token == null) {
+            return false;
+        }
+        token.cancel();
+        return true;
+    }
+}
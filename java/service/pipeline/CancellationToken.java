@@ -0,0 +1,92 @@
+package org.jeecg.modules.agenthub.service.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 项目生成的取消令牌
+ * 响应式流程通过whenCancelled()在取消时断开订阅（同时释放HTTP请求）；
+ * 阻塞资源（浏览器会话、子进程等）通过onCancel()注册释放动作，用完后注销。
+ */
+@Slf4j
+public class CancellationToken {
+
+    private final String projectId;
+    private final Sinks.Empty<Void> cancelled = Sinks.empty();
+    private final Set<Runnable> actions = new LinkedHashSet<>();
+    private volatile boolean isCancelled;
+
+    public CancellationToken(String projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * 取消时完成的Mono，配合takeUntilOther/firstWithSignal使用
+     */
+    public Mono<Void> whenCancelled() {
+        return cancelled.asMono();
+    }
+
+    /**
+     * 注册取消时执行的释放动作；已取消时立即执行。返回值用于在资源正常释放后注销
+     */
+    public Disposable onCancel(Runnable action) {
+        synchronized (this) {
+            if (!isCancelled) {
+                actions.add(action);
+                return () -> {
+                    synchronized (this) {
+                        actions.remove(action);
+                    }
+                };
+            }
+        }
+        runQuietly(action);
+        return () -> { };
+    }
+
+    /**
+     * 取消，只有第一次调用生效；生成以任何方式结束时执行器也会调用，释放仍未注销的阻塞资源
+     */
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (isCancelled) {
+                return;
+            }
+            isCancelled = true;
+            toRun = new ArrayList<>(actions);
+            actions.clear();
+        }
+        if (toRun.isEmpty()) {
+            log.debug("项目 {} 的取消令牌已终止，没有待释放的阻塞资源", projectId);
+        } else {
+            log.info("项目 {} 的生成已终止，释放 {} 个阻塞资源", projectId, toRun.size());
+        }
+        cancelled.tryEmitEmpty();
+        toRun.forEach(this::runQuietly);
+    }
+
+    private void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.warn("项目 {} 取消时释放资源失败: {}", projectId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package org.jeecg.modules.agenthub.service.pipeline;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightGenerationJob;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightGenerationJobService;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightProjectService;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 项目生成任务执行器
+ * 定期从copyright_generation_job认领任务，执行期间按心跳续租；节点宕机或重启后租约过期，
+ * 任务由本节点启动时或其他节点重新认领，生成流程从已保存的产物继续。
+ */
+@Slf4j
+@Component
+public class GenerationJobRunner {
+
+    /**单个节点同时执行的任务数*/
+    @Value("${copyright.generation.job.workers:4}")
+    private int workers;
+
+    /**租约时长（秒），心跳间隔应明显小于租约时长*/
+    @Value("${copyright.generation.job.lease-seconds:120}")
+    private int leaseSeconds;
+
+    @Value("${copyright.generation.job.heartbeat-seconds:30}")
+    private int heartbeatSeconds;
+
+    @Value("${copyright.generation.job.poll-seconds:5}")
+    private int pollSeconds;
+
+    /**检查执行中任务是否已被其他节点取消的间隔（秒），远小于心跳间隔，取消后尽快释放浏览器和子进程*/
+    @Value("${copyright.generation.job.cancel-poll-seconds:3}")
+    private int cancelPollSeconds;
+
+    /**单个任务最多被认领的次数，超过后标记为失败*/
+    @Value("${copyright.generation.job.max-attempts:3}")
+    private int maxAttempts;
+
+    @Autowired
+    private ICopyrightGenerationJobService jobService;
+
+    @Autowired
+    private ICopyrightProjectService copyrightProjectService;
+
+    @Autowired
+    private CancellationRegistry cancellations;
+
+    @Autowired
+    private WorkloadExecutors workloadExecutors;
+
+    /**本节点正在执行的任务，key为任务ID*/
+    private final Map<String, Disposable> running = new ConcurrentHashMap<>();
+
+    /**本节点正在执行的任务的取消令牌，key为任务ID*/
+    private final Map<String, CancellationToken> runningTokens = new ConcurrentHashMap<>();
+
+    private static final String COMPLETED = "completed";
+    private static final String LEASE_LOST = "lease_lost";
+    private static final String CANCELLED = "cancelled";
+
+    private final String owner = resolveOwner();
+
+    private volatile Function<CopyrightGenerationJob, Mono<Void>> handler;
+
+    private Disposable polling;
+
+    private Disposable cancelPolling;
+
+    private volatile boolean stopping;
+
+    /**
+     * 注册任务处理逻辑，返回的Mono结束即视为任务完成
+     */
+    public void setHandler(Function<CopyrightGenerationJob, Mono<Void>> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * 创建任务并立即尝试认领，调用方无需等待下一次轮询
+     * @param createBy 项目创建人（用户ID），按用户公平调度以此为准
+     * @param submittedBy 提交人显示名称，写入生成文件的创建人
+     * @param resume 是否断点续跑，复用输入未变化的已有产物
+     */
+    public CopyrightGenerationJob submit(String projectId, String createBy, String submittedBy, boolean resume) {
+        CopyrightGenerationJob job = jobService.enqueue(projectId, createBy, submittedBy, resume);
+        log.info("生成任务已入队: jobId={}, projectId={}, 断点续跑={}", job.getId(), projectId, resume);
+        pollOnce().subscribe(null, e -> log.error("认领生成任务失败", e));
+        return job;
+    }
+
+    /**
+     * 立即尝试认领，用于任务已由其他事务批量写入的场景
+     */
+    public void wakeUp() {
+        pollOnce().subscribe(null, e -> log.error("认领生成任务失败", e));
+    }
+
+    /**
+     * 取消项目的排队中和执行中的任务：数据库中标记为cancelled，其他节点在下一次取消轮询时停止执行；
+     * 本节点执行中的任务立即断开订阅并释放浏览器等阻塞资源，空出的执行额度马上用于认领新任务
+     * @return 是否有任务被取消
+     */
+    public boolean cancel(String projectId) {
+        int updated = jobService.cancelByProject(projectId);
+        boolean local = cancellations.cancel(projectId);
+        log.info("取消项目生成任务: projectId={}, 数据库任务数={}, 本节点执行中={}", projectId, updated, local);
+        return updated > 0 || local;
+    }
+
+    /**
+     * 项目排队中任务的预计排队位置和开始时间，没有排队中的任务时返回null
+     */
+    public Map<String, Object> queueStatus(String projectId) {
+        return jobService.getQueueStatus(projectId, workers);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        log.info("生成任务执行器启动: 节点={}, 并发={}, 租约={}秒", owner, workers, leaseSeconds);
+        polling = Flux.interval(Duration.ZERO, Duration.ofSeconds(pollSeconds))
+            .onBackpressureDrop()
+            .concatMap(tick -> pollOnce()
+                .onErrorResume(e -> {
+                    log.error("轮询生成任务失败", e);
+                    return Mono.empty();
+                }))
+            .subscribe();
+        cancelPolling = Flux.interval(Duration.ofSeconds(cancelPollSeconds))
+            .onBackpressureDrop()
+            .concatMap(tick -> pollCancelled()
+                .onErrorResume(e -> {
+                    log.error("检查已取消的生成任务失败", e);
+                    return Mono.empty();
+                }))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+        if (polling != null) {
+            polling.dispose();
+        }
+        if (cancelPolling != null) {
+            cancelPolling.dispose();
+        }
+        // 先关闭浏览器和子进程再断开订阅，避免归还租约后其他节点接管时本节点的资源仍在运行
+        runningTokens.values().forEach(CancellationToken::cancel);
+        running.values().forEach(Disposable::dispose);
+        int released = jobService.releaseByOwner(owner);
+        if (released > 0) {
+            log.info("节点停机，已归还 {} 个生成任务的租约", released);
+        }
+    }
+
+    /**
+     * 任务队列的数据库操作在job线程池执行
+     */
+    private Scheduler jobScheduler() {
+        return workloadExecutors.scheduler(WorkloadExecutors.JOB);
+    }
+
+    /**
+     * 先处理认领次数已用完的任务，再在空闲额度内认领新任务
+     */
+    private Mono<Void> pollOnce() {
+        return Mono.fromRunnable(() -> {
+            for (CopyrightGenerationJob job : jobService.failExhausted(maxAttempts)) {
+                log.error("生成任务超过最大重试次数，标记失败: jobId={}, projectId={}", job.getId(), job.getProjectId());
+                // 项目已被取消或重新启动时不覆盖其状态
+                if (copyrightProjectService.checkAndUpdateStatus(job.getProjectId(), "generating", "error")) {
+                    copyrightProjectService.updateCurrentStep(job.getProjectId(), "生成失败: 超过最大重试次数");
+                }
+            }
+            if (handler == null || stopping) {
+                return;
+            }
+            synchronized (this) {
+                while (running.size() < workers) {
+                    CopyrightGenerationJob job = jobService.claimNext(owner, leaseSeconds, maxAttempts);
+                    if (job == null) {
+                        break;
+                    }
+                    execute(job);
+                }
+            }
+        }).subscribeOn(jobScheduler()).then();
+    }
+
+    /**
+     * 查询本节点执行中的任务是否已在数据库中被取消（取消请求可能落在其他节点），已取消的任务触发本地取消令牌
+     */
+    private Mono<Void> pollCancelled() {
+        if (runningTokens.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.fromRunnable(() -> {
+            for (String jobId : jobService.findCancelled(List.copyOf(runningTokens.keySet()))) {
+                CancellationToken token = runningTokens.get(jobId);
+                if (token != null && !token.isCancelled()) {
+                    log.info("生成任务已在其他节点取消: jobId={}, projectId={}", jobId, token.getProjectId());
+                    token.cancel();
+                }
+            }
+        }).subscribeOn(jobScheduler()).then();
+    }
+
+    /**
+     * 执行任务并按心跳续租；续租失败说明任务已被其他节点接管或已被取消，本节点立即停止执行
+     */
+    private void execute(CopyrightGenerationJob job) {
+        log.info("开始执行生成任务: jobId={}, projectId={}, 第{}次认领", job.getId(), job.getProjectId(), job.getAttempts());
+
+        Mono<String> leaseLost = Flux.interval(Duration.ofSeconds(heartbeatSeconds))
+            .concatMap(tick -> Mono.fromCallable(() -> jobService.renewLease(job.getId(), owner, leaseSeconds))
+                .subscribeOn(jobScheduler())
+                .onErrorReturn(true))
+            .filter(renewed -> !renewed)
+            .next()
+            .thenReturn(LEASE_LOST);
+
+        // 令牌需在处理逻辑订阅前注册，处理逻辑通过CancellationRegistry取得令牌来登记阻塞资源
+        CancellationToken token = cancellations.register(job.getProjectId());
+        runningTokens.put(job.getId(), token);
+        Mono<String> cancelled = token.whenCancelled().thenReturn(CANCELLED);
+
+        Disposable.Swap disposable = Disposables.swap();
+        running.put(job.getId(), disposable);
+        disposable.update(Mono.firstWithSignal(handler.apply(job).thenReturn(COMPLETED), leaseLost, cancelled)
+            .flatMap(outcome -> {
+                if (LEASE_LOST.equals(outcome)) {
+                    log.warn("生成任务租约已丢失，停止执行: jobId={}, projectId={}", job.getId(), job.getProjectId());
+                    return Mono.empty();
+                }
+                if (CANCELLED.equals(outcome)) {
+                    log.info("生成任务已取消，停止执行: jobId={}, projectId={}", job.getId(), job.getProjectId());
+                    return Mono.empty();
+                }
+                return finish(job, "completed", null);
+            })
+            .onErrorResume(e -> {
+                log.error("生成任务执行失败: jobId={}, projectId={}", job.getId(), job.getProjectId(), e);
+                return finish(job, "failed", abbreviate(e.getMessage()));
+            })
+            .doFinally(signal -> {
+                // 失败、租约丢失或停机时处理逻辑只是被断开订阅，浏览器、子进程和集群许可需通过令牌释放；
+                // 正常完成时阻塞资源已自行注销，这里不会重复释放
+                token.cancel();
+                cancellations.remove(token);
+                runningTokens.remove(job.getId());
+                running.remove(job.getId());
+                if (!stopping) {
+                    pollOnce().subscribe(null, e -> log.error("认领生成任务失败", e));
+                }
+            })
+            .subscribe());
+    }
+
+    private Mono<Void> finish(CopyrightGenerationJob job, String status, String errorMessage) {
+        return Mono.fromRunnable(() -> {
+            if (!jobService.finish(job.getId(), owner, status, errorMessage)) {
+                log.warn("生成任务结束时租约已不属于本节点: jobId={}", job.getId());
+            }
+        }).subscribeOn(jobScheduler()).then();
+    }
+
+    private static String abbreviate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    private static String resolveOwner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
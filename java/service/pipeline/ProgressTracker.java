@@ -0,0 +1,316 @@
+package org.jeecg.modules.agenthub.service.pipeline;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightLlmCallService;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightProjectService;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 项目生成进度跟踪
+ * 进度由阶段开始/完成事件驱动，每个阶段按历史耗时加权，执行中的阶段按已用时间计入部分进度；
+ * 进度保存在内存中供状态查询直接读取，数据库只在阶段切换时写入，且同一项目两次写入至少间隔db-write-interval-seconds。
+ * 只有执行任务的节点持有内存进度，其他节点的查询读取数据库中的最近一次写入。
+ */
+@Slf4j
+@Component
+public class ProgressTracker {
+
+    /**没有历史数据时各阶段的预估耗时（毫秒）*/
+    private static final Map<String, Long> DEFAULT_STAGE_MILLIS = Map.ofEntries(
+        Map.entry("frontend_code", 240_000L),
+        Map.entry("backend_part1", 120_000L),
+        Map.entry("backend_part2", 120_000L),
+        Map.entry("backend_part3", 120_000L),
+        Map.entry("backend_code", 1_000L),
+        Map.entry("screenshots", 90_000L),
+        Map.entry("source_code_pdf", 10_000L),
+        Map.entry("chapter1", 90_000L),
+        Map.entry("chapter2", 90_000L),
+        Map.entry("chapter3", 90_000L),
+        Map.entry("chapter4", 90_000L),
+        Map.entry("copyright_application", 30_000L));
+
+    private static final long UNKNOWN_STAGE_MILLIS = 60_000L;
+
+    /**执行中的阶段超过预估耗时后最多计入的比例，避免长时间停在接近完成的位置*/
+    private static final double RUNNING_STAGE_CAP = 0.9;
+
+    @Value("${copyright.progress.db-write-interval-seconds:10}")
+    private int dbWriteIntervalSeconds;
+
+    /**新观测耗时在历史耗时中的权重（指数移动平均）*/
+    @Value("${copyright.progress.history-alpha:0.3}")
+    private double historyAlpha;
+
+    /**启动时从大模型调用记录中读取最近多少天的阶段耗时*/
+    @Value("${copyright.progress.history-days:30}")
+    private int historyDays;
+
+    @Autowired
+    private ICopyrightProjectService copyrightProjectService;
+
+    @Autowired
+    private ICopyrightLlmCallService llmCallService;
+
+    @Autowired
+    private WorkloadExecutors workloadExecutors;
+
+    /**各阶段的历史耗时（毫秒）*/
+    private final Map<String, Double> stageMillis = new ConcurrentHashMap<>();
+
+    /**本节点正在生成的项目*/
+    private final Map<String, ProjectProgress> projects = new ConcurrentHashMap<>();
+
+    private Disposable flushing;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Mono.fromRunnable(this::loadHistory)
+            .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.PROGRESS))
+            .subscribe(null, e -> log.warn("读取阶段历史耗时失败，使用默认预估: {}", e.getMessage()));
+        Duration interval = Duration.ofSeconds(dbWriteIntervalSeconds);
+        flushing = Flux.interval(interval, interval, workloadExecutors.scheduler(WorkloadExecutors.PROGRESS))
+            .subscribe(tick -> flushDirty(), e -> log.error("进度写入任务异常", e));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushing != null) {
+            flushing.dispose();
+        }
+    }
+
+    /**
+     * 开始跟踪一个项目，返回接收阶段事件的回调
+     * @param stageLabels 阶段名称到展示文字的映射，按执行顺序，用于生成当前步骤
+     */
+    public StageGraph.StageListener track(String projectId, String createBy, Date startTime, Map<String, String> stageLabels) {
+        ProjectProgress progress = new ProjectProgress(projectId, createBy, startTime != null ? startTime : new Date(),
+            new LinkedHashMap<>(stageLabels));
+        projects.put(projectId, progress);
+        return new StageGraph.StageListener() {
+            @Override
+            public void stageStarted(String stageName) {
+                progress.started(stageName);
+                transition(progress);
+            }
+
+            @Override
+            public void stageCompleted(String stageName, long elapsedMillis) {
+                if (progress.completed(stageName)) {
+                    recordDuration(stageName, elapsedMillis);
+                }
+                transition(progress);
+            }
+
+            @Override
+            public void stageFailed(String stageName, Throwable error) {
+                progress.failed(stageName);
+            }
+        };
+    }
+
+    /**
+     * 阶段复用了已有产物，其耗时不计入历史耗时
+     */
+    public void markReused(String projectId, String stageName) {
+        ProjectProgress progress = projects.get(projectId);
+        if (progress != null) {
+            progress.reused.add(stageName);
+        }
+    }
+
+    /**
+     * 停止跟踪，调用方随后写入最终状态；正在进行的进度写入会先完成，之后不再写入
+     */
+    public void finish(String projectId) {
+        ProjectProgress progress = projects.remove(projectId);
+        if (progress != null) {
+            synchronized (progress) {
+                progress.closed = true;
+            }
+        }
+    }
+
+    /**
+     * 本节点内存中的进度，项目不在本节点生成时返回null
+     */
+    public Snapshot snapshot(String projectId) {
+        ProjectProgress progress = projects.get(projectId);
+        return progress != null ? progress.snapshot() : null;
+    }
+
+    private void transition(ProjectProgress progress) {
+        long now = System.currentTimeMillis();
+        if (now - progress.lastWrite >= dbWriteIntervalSeconds * 1000L) {
+            progress.lastWrite = now;
+            Mono.fromRunnable(() -> write(progress))
+                .subscribeOn(workloadExecutors.scheduler(WorkloadExecutors.PROGRESS))
+                .subscribe(null, e -> log.warn("项目 {} 进度写入失败: {}", progress.projectId, e.getMessage()));
+        } else {
+            progress.dirty = true;
+        }
+    }
+
+    private void flushDirty() {
+        for (ProjectProgress progress : projects.values()) {
+            if (progress.dirty) {
+                try {
+                    write(progress);
+                } catch (Exception e) {
+                    log.warn("项目 {} 进度写入失败: {}", progress.projectId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void write(ProjectProgress progress) {
+        synchronized (progress) {
+            if (progress.closed) {
+                return;
+            }
+            progress.dirty = false;
+            progress.lastWrite = System.currentTimeMillis();
+            Snapshot snapshot = progress.snapshot();
+            copyrightProjectService.updateProgress(progress.projectId, snapshot.getProgress(), snapshot.getCurrentStep());
+            log.debug("项目 {} 进度写入: {}% {}", progress.projectId, snapshot.getProgress(), snapshot.getCurrentStep());
+        }
+    }
+
+    private void recordDuration(String stageName, long elapsedMillis) {
+        stageMillis.merge(stageName, (double) elapsedMillis,
+            (previous, observed) -> previous + historyAlpha * (observed - previous));
+    }
+
+    private double expectedMillis(String stageName) {
+        Double history = stageMillis.get(stageName);
+        if (history != null) {
+            return Math.max(history, 1);
+        }
+        return DEFAULT_STAGE_MILLIS.getOrDefault(stageName, UNKNOWN_STAGE_MILLIS);
+    }
+
+    /**
+     * 用大模型调用记录中的平均耗时初始化历史耗时，同一阶段有多个模型时取较大值
+     */
+    private void loadHistory() {
+        Map<String, Double> loaded = new LinkedHashMap<>();
+        for (Map<String, Object> row : llmCallService.getStageUsage(historyDays)) {
+            Object stage = row.get("stage");
+            Object avgLatency = row.get("avgLatencyMs");
+            if (stage == null || !(avgLatency instanceof Number)) {
+                continue;
+            }
+            // 调用记录中前端代码的阶段名为frontend
+            String stageName = "frontend".equals(stage) ? "frontend_code" : stage.toString();
+            loaded.merge(stageName, ((Number) avgLatency).doubleValue(), Math::max);
+        }
+        loaded.forEach(stageMillis::putIfAbsent);
+        log.info("已加载 {} 个阶段的历史耗时", loaded.size());
+    }
+
+    /**
+     * 进度快照
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final String createBy;
+        private final int progress;
+        private final String currentStep;
+        private final int completedStages;
+        private final int runningStages;
+        private final Date startTime;
+    }
+
+    private class ProjectProgress {
+        private final String projectId;
+        private final String createBy;
+        private final Map<String, String> labels;
+        private final Date startTime;
+        /**执行中的阶段及开始时间*/
+        private final Map<String, Long> running = new ConcurrentHashMap<>();
+        private final Set<String> completed = ConcurrentHashMap.newKeySet();
+        private final Set<String> reused = ConcurrentHashMap.newKeySet();
+        private volatile boolean dirty;
+        private volatile long lastWrite;
+        private volatile boolean closed;
+        /**已报告的最大进度，执行中阶段的比例估算可能回退，对外只增不减*/
+        private volatile int reported;
+
+        ProjectProgress(String projectId, String createBy, Date startTime, Map<String, String> labels) {
+            this.projectId = projectId;
+            this.createBy = createBy;
+            this.startTime = startTime;
+            this.labels = labels;
+        }
+
+        void started(String stageName) {
+            running.put(stageName, System.currentTimeMillis());
+        }
+
+        /**
+         * 返回本次耗时是否计入历史耗时
+         */
+        boolean completed(String stageName) {
+            running.remove(stageName);
+            completed.add(stageName);
+            return !reused.contains(stageName);
+        }
+
+        void failed(String stageName) {
+            running.remove(stageName);
+        }
+
+        synchronized Snapshot snapshot() {
+            long now = System.currentTimeMillis();
+            double total = 0;
+            double done = 0;
+            for (String stageName : labels.keySet()) {
+                double expected = expectedMillis(stageName);
+                total += expected;
+                if (completed.contains(stageName)) {
+                    done += expected;
+                } else {
+                    Long startedAt = running.get(stageName);
+                    if (startedAt != null) {
+                        done += expected * Math.min(RUNNING_STAGE_CAP, (now - startedAt) / expected);
+                    }
+                }
+            }
+            int progress = total > 0 ? (int) Math.min(99, done * 99 / total) : 0;
+            reported = Math.max(reported, progress);
+
+            List<String> runningLabels = new ArrayList<>();
+            for (Map.Entry<String, String> entry : labels.entrySet()) {
+                if (running.containsKey(entry.getKey())) {
+                    runningLabels.add(entry.getValue());
+                }
+            }
+            String currentStep = runningLabels.isEmpty()
+                ? "开始生成软著材料..."
+                : "正在生成" + String.join("、", runningLabels) + "...";
+            return new Snapshot(createBy, reported, currentStep, completed.size(), running.size(), startTime);
+        }
+    }
+}
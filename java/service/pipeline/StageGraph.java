@@ -0,0 +1,161 @@
+package org.jeecg.modules.agenthub.service.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 声明式阶段依赖图
+ * 每个阶段声明自己依赖的阶段，执行时所有依赖完成后立即开始，互不依赖的阶段并发执行，
+ * 整体耗时取决于关键路径而不是各阶段耗时之和。任一阶段失败时取消其余阶段并返回该错误。
+ */
+@Slf4j
+public class StageGraph {
+
+    private final String name;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    private StageListener listener = new StageListener() {};
+
+    public StageGraph(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 设置阶段开始、完成和失败的回调，用于进度跟踪
+     */
+    public StageGraph listener(StageListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * 已声明的阶段名称，按声明顺序
+     */
+    public List<String> stageNames() {
+        return new ArrayList<>(stages.keySet());
+    }
+
+    /**
+     * 声明一个阶段
+     * @param stageName 阶段名称，在图内唯一
+     * @param action 依赖全部完成后执行，可以通过StageResults读取依赖阶段的结果；返回空Mono表示无结果
+     * @param dependsOn 依赖的阶段名称，必须先声明
+     */
+    public StageGraph stage(String stageName, Function<StageResults, Mono<?>> action, String... dependsOn) {
+        if (stages.containsKey(stageName)) {
+            throw new IllegalArgumentException("阶段重复声明: " + stageName);
+        }
+        for (String dependency : dependsOn) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("阶段 " + stageName + " 依赖的阶段未声明: " + dependency);
+            }
+        }
+        stages.put(stageName, new Stage(stageName, Arrays.asList(dependsOn), action));
+        return this;
+    }
+
+    /**
+     * 执行整个依赖图，全部阶段完成后返回各阶段结果
+     * 依赖必须先声明，因此声明顺序就是一个合法的拓扑序，不会出现环
+     * 阶段用cache()共享给多个下游，下游取消不会传到上游；整体失败或被取消时通过aborted结束仍在执行的阶段，
+     * 未开始的阶段收到CancellationException后不再开始
+     */
+    public Mono<StageResults> execute() {
+        return Mono.defer(() -> {
+            StageResults results = new StageResults();
+            Sinks.Empty<Void> aborted = Sinks.empty();
+            Mono<Void> abort = aborted.asMono().then(Mono.error(() -> new CancellationException("阶段图 " + name + " 已终止")));
+            Map<String, Mono<Void>> scheduled = new HashMap<>();
+            for (Stage stage : stages.values()) {
+                List<Mono<Void>> dependencies = new ArrayList<>();
+                for (String dependency : stage.dependsOn) {
+                    dependencies.add(scheduled.get(dependency));
+                }
+                Mono<Void> execution = Mono.when(dependencies)
+                        .then(Mono.defer(() -> run(stage, results)));
+                scheduled.put(stage.name, Mono.firstWithSignal(execution, abort).cache());
+            }
+            // 在错误传给调用方之前终止其余阶段，调用方拿到错误时阶段已全部停止
+            return Mono.when(scheduled.values())
+                    .thenReturn(results)
+                    .doOnError(e -> aborted.tryEmitEmpty())
+                    .doOnCancel(aborted::tryEmitEmpty);
+        });
+    }
+
+    private Mono<Void> run(Stage stage, StageResults results) {
+        long start = System.currentTimeMillis();
+        log.info("[{}] 阶段 {} 开始", name, stage.name);
+        listener.stageStarted(stage.name);
+        return stage.action.apply(results)
+                .doOnNext(value -> results.put(stage.name, value))
+                .doOnSuccess(value -> {
+                    long elapsed = System.currentTimeMillis() - start;
+                    log.info("[{}] 阶段 {} 完成，耗时 {}ms", name, stage.name, elapsed);
+                    listener.stageCompleted(stage.name, elapsed);
+                })
+                .doOnError(e -> {
+                    log.error("[{}] 阶段 {} 失败，耗时 {}ms: {}", name, stage.name, System.currentTimeMillis() - start, e.getMessage());
+                    listener.stageFailed(stage.name, e);
+                })
+                .then();
+    }
+
+    private static class Stage {
+        private final String name;
+        private final List<String> dependsOn;
+        private final Function<StageResults, Mono<?>> action;
+
+        Stage(String name, List<String> dependsOn, Function<StageResults, Mono<?>> action) {
+            this.name = name;
+            this.dependsOn = dependsOn;
+            this.action = action;
+        }
+    }
+
+    /**
+     * 阶段状态回调，在阶段所在的线程上同步调用，实现不应阻塞
+     */
+    public interface StageListener {
+
+        default void stageStarted(String stageName) {
+        }
+
+        default void stageCompleted(String stageName, long elapsedMillis) {
+        }
+
+        default void stageFailed(String stageName, Throwable error) {
+        }
+    }
+
+    /**
+     * 已完成阶段的结果，阶段只能读取自己声明过的依赖
+     */
+    public static class StageResults {
+        private final Map<String, Object> values = new ConcurrentHashMap<>();
+
+        void put(String stageName, Object value) {
+            values.put(stageName, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T get(String stageName) {
+            Object value = values.get(stageName);
+            if (value == null) {
+                throw new IllegalStateException("阶段 " + stageName + " 没有结果");
+            }
+            return (T) value;
+        }
+    }
+}
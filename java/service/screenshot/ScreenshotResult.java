@@ -0,0 +1,27 @@
+package org.jeecg.modules.agenthub.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 截图生成结果
+ */
+@Getter
+@AllArgsConstructor
+public class ScreenshotResult {
+
+    public static final String MODE_REAL = "real";
+    public static final String MODE_FALLBACK = "fallback";
+
+    /**截图方式：real真实页面截图，fallback浏览器不可用时的降级预览*/
+    private final String mode;
+
+    /**截图信息，包含title、fileName等*/
+    private final List<Map<String, String>> screenshots;
+
+    /**成功保存到数据库的截图数量*/
+    private final int savedCount;
+}
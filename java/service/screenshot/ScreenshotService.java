@@ -6,6 +6,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.jeecg.modules.agenthub.copyright.service.ICopyrightFileService;
 import org.jeecg.modules.agenthub.copyright.entity.CopyrightFile;
+import org.jeecg.modules.agenthub.service.cluster.ClusterPermits;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.jeecg.modules.agenthub.service.pipeline.CancellationToken;
+import reactor.core.Disposable;
 import org.jeecg.modules.agenthub.util.CrossPlatformUtil;
 
 import java.io.File;
@@ -21,6 +25,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.io.FileWriter;
@@ -40,6 +46,7 @@ import org.openqa.selenium.Dimension;
 import org.openqa.selenium.PageLoadStrategy;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
@@ -94,12 +101,42 @@ public class ScreenshotService {
     @Autowired
     private ICopyrightFileService copyrightFileService;
 
-    public void generateScreenshots(String appName, String frontendCode, SseEmitter emitter, String fileId) {
-        CompletableFuture.runAsync(() -> {
+    @Autowired
+    private WorkloadExecutors workloadExecutors;
+
+    @Autowired
+    private ClusterPermits clusterPermits;
+
+    /**
+     * 截图完成回调，每个功能页截图保存到数据库后调用
+     */
+    public interface FunctionCallback {
+        void onCaptured(String functionName, String fileName);
+    }
+
+    public CompletableFuture<ScreenshotResult> generateScreenshots(String appName, String frontendCode, SseEmitter emitter, String fileId) {
+        return generateScreenshots(appName, frontendCode, emitter, fileId, null, null, null);
+    }
+
+    /**
+     * 在browser线程池中生成截图，返回的Future在截图全部完成后结束，截图失败或被取消时异常结束
+     * @param inputHash 截图输入（前端代码）的哈希，随截图保存，用于断点续跑时判断截图能否复用，可为null
+     * @param callback 每个功能页截图保存后回调，可为null
+     * @param cancellation 取消令牌，取消时关闭浏览器并中断截图线程，可为null
+     */
+    public CompletableFuture<ScreenshotResult> generateScreenshots(String appName, String frontendCode, SseEmitter emitter,
+                                                                   String fileId, String inputHash, FunctionCallback callback,
+                                                                   CancellationToken cancellation) {
+        return CompletableFuture.supplyAsync(() -> {
             WebDriver driver = null;
             String tempFilePath = null;
+            Disposable cancelRegistration = null;
+            ClusterPermits.Permit browserPermit = null;
 
             try {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    throw new CancellationException("截图任务已取消");
+                }
                 log.info("开始生成真实代码截图: appName={}", appName);
 
                 sendProgress(emitter, 10, "正在准备前端代码...");
@@ -117,7 +154,19 @@ public class ScreenshotService {
                 sendProgress(emitter, 40, "正在初始化无头浏览器...");
 
                 try {
+                    // 整个集群同时打开的浏览器数受集群许可限制，等待超时按Chrome不可用处理
+                    browserPermit = clusterPermits.acquireBlocking(ClusterPermits.BROWSER);
                     driver = initializeWebDriver();
+                    if (cancellation != null) {
+                        // 取消时关闭浏览器，截图线程在下一次WebDriver调用或sleep时退出
+                        Thread sessionThread = Thread.currentThread();
+                        WebDriver session = driver;
+                        cancelRegistration = cancellation.onCancel(() -> {
+                            log.info("截图任务已取消，关闭浏览器: fileId={}", fileId);
+                            sessionThread.interrupt();
+                            session.quit();
+                        });
+                    }
                 } catch (Exception e) {
                     log.error("Chrome初始化失败，使用降级截图: {}", e.getMessage());
 
@@ -138,7 +187,7 @@ public class ScreenshotService {
                     } else {
                         log.debug("SSE emitter为null，跳过发送降级截图结果");
                     }
-                    return;
+                    return new ScreenshotResult(ScreenshotResult.MODE_FALLBACK, fallbackScreenshots, 0);
                 }
 
                 sendProgress(emitter, 50, "正在加载页面...");
@@ -158,7 +207,17 @@ public class ScreenshotService {
 
                 sendProgress(emitter, 70, "正在生成页面截图...");
 
-                List<Map<String, String>> screenshots = captureRealScreenshots(driver, appName, fileId);
+                int[] saved = {0};
+                List<Map<String, String>> screenshots = captureRealScreenshots(driver, appName, fileId, inputHash, (functionName, fileName) -> {
+                    saved[0]++;
+                    if (callback != null) {
+                        callback.onCaptured(functionName, fileName);
+                    }
+                });
+
+                if (cancellation != null && cancellation.isCancelled()) {
+                    throw new CancellationException("截图任务已取消");
+                }
 
                 sendProgress(emitter, 95, "正在保存截图文件...");
 
@@ -193,11 +252,20 @@ public class ScreenshotService {
                 } else {
                     log.debug("SSE emitter为null，跳过发送最终结果");
                 }
+                return new ScreenshotResult(ScreenshotResult.MODE_REAL, screenshots, saved[0]);
 
             } catch (Exception e) {
+                if (cancellation != null && cancellation.isCancelled()) {
+                    log.info("截图任务已取消: appName={}, fileId={}", appName, fileId);
+                    throw new CancellationException("截图任务已取消");
+                }
                 log.error("生成真实代码截图失败: appName={}", appName, e);
                 sendError(emitter, "生成真实代码截图失败: " + e.getMessage());
+                throw new CompletionException(e);
             } finally {
+                if (cancelRegistration != null) {
+                    cancelRegistration.dispose();
+                }
                 if (driver != null) {
                     try {
                         driver.quit();
@@ -205,11 +273,14 @@ public class ScreenshotService {
                         log.warn("关闭WebDriver失败", e);
                     }
                 }
+                if (browserPermit != null) {
+                    browserPermit.release();
+                }
                 if (tempFilePath != null) {
                     cleanupTempFile(tempFilePath);
                 }
             }
-        });
+        }, workloadExecutors.executor(WorkloadExecutors.BROWSER));
     }
 
 
@@ -1038,7 +1109,7 @@ public class ScreenshotService {
                 log.error("后台线程创建ChromeDriver失败: {}", e.getMessage());
                 throw new RuntimeException(e);
             }
-        });
+        }, workloadExecutors.executor(WorkloadExecutors.BROWSER_LAUNCH));
 
         try {
             WebDriver driver = future.get(timeoutSeconds, TimeUnit.SECONDS);
@@ -1160,7 +1231,8 @@ public class ScreenshotService {
     /**
      * 捕获真实页面截图
      */
-    private List<Map<String, String>> captureRealScreenshots(WebDriver driver, String appName, String fileId) throws IOException {
+    private List<Map<String, String>> captureRealScreenshots(WebDriver driver, String appName, String fileId, String inputHash,
+                                                             FunctionCallback callback) throws IOException {
         log.info("🚀🚀🚀 进入captureRealScreenshots方法 - 功能切换截图模式 🚀🚀🚀");
         List<Map<String, String>> screenshots = new ArrayList<>();
 
@@ -1205,6 +1277,10 @@ public class ScreenshotService {
             };
 
             for (String[] function : functions) {
+                if (driver instanceof RemoteWebDriver && ((RemoteWebDriver) driver).getSessionId() == null) {
+                    log.info("浏览器已关闭，停止后续功能截图");
+                    break;
+                }
                 String functionKey = function[0];
                 String functionName = function[1];
                 String buttonId = function[2];
@@ -1397,8 +1473,9 @@ public class ScreenshotService {
 
                             
                             try {
-                                saveScreenshotToDatabase(fileId, functionName, screenshotFile, file);
+                                saveScreenshotToDatabase(fileId, functionName, screenshotFile, file, inputHash);
                                 log.info("成功保存{}功能截图到数据库", functionName);
+                                callback.onCaptured(functionName, screenshotFile);
                             } catch (Exception e) {
                                 log.error("保存{}功能截图到数据库失败", functionName, e);
                             }
@@ -1411,6 +1488,10 @@ public class ScreenshotService {
                         log.warn("无法切换到{}功能，跳过截图", functionName);
                     }
 
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.info("截图线程被中断，停止后续功能截图");
+                    break;
                 } catch (Exception e) {
                     log.error("截图{}功能时出错: {}", functionName, e.getMessage());
                 }
@@ -1763,7 +1844,8 @@ public class ScreenshotService {
     /**
      * 保存截图到数据库
      */
-    private void saveScreenshotToDatabase(String projectId, String functionName, String fileName, File file) throws IOException {
+    private void saveScreenshotToDatabase(String projectId, String functionName, String fileName, File file,
+                                          String inputHash) throws IOException {
         log.info("开始保存截图到数据库: projectId={}, functionName={}, fileName={}, fileExists={}", 
                  projectId, functionName, fileName, file.exists());
         
@@ -1781,16 +1863,14 @@ public class ScreenshotService {
         byte[] imageBytes = Files.readAllBytes(file.toPath());
         log.info("读取截图文件成功，文件大小: {} bytes", imageBytes.length);
         
-        String base64Data = "data:image/png;base64," + Base64.getEncoder().encodeToString(imageBytes);
-        log.info("base64转换完成，数据长度: {} 字符", base64Data.length());
-        
-        
         CopyrightFile screenshotFile = new CopyrightFile();
         screenshotFile.setProjectId(projectId);
         screenshotFile.setFileName(fileName);
         screenshotFile.setTitle(functionName);
         screenshotFile.setFileType("screenshot");
-        screenshotFile.setContent(base64Data);
+        screenshotFile.setInputHash(inputHash);
+        // 图片写入BlobStore，数据库只记录引用
+        copyrightFileService.storeBinary(screenshotFile, imageBytes, "image/png");
         screenshotFile.setStatus("completed");
         screenshotFile.setCreateTime(new java.util.Date());
         screenshotFile.setUpdateTime(new java.util.Date());
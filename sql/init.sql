@@ -9,11 +9,13 @@ CREATE TABLE IF NOT EXISTS `copyright_project` (
   `domain` varchar(100) DEFAULT NULL COMMENT '专业领域',
   `app_prompt` text COMMENT '应用描述',
   `model_id` varchar(50) DEFAULT NULL COMMENT '使用的AI模型',
+  `batch_id` varchar(36) DEFAULT NULL COMMENT '批次ID（批量提交时填写）',
   `status` varchar(20) DEFAULT 'pending' COMMENT '状态：pending/generating/completed/error/cancelled',
   `progress` int DEFAULT 0 COMMENT '进度百分比（0-100）',
   `current_step` varchar(200) DEFAULT NULL COMMENT '当前步骤描述',
   `completed_files` int DEFAULT 0 COMMENT '已完成文件数',
   `generating_files` int DEFAULT 0 COMMENT '生成中文件数',
+  `version` int NOT NULL DEFAULT 0 COMMENT '乐观锁版本号（每次状态转换递增）',
   `start_time` datetime DEFAULT NULL COMMENT '生成开始时间',
   `end_time` datetime DEFAULT NULL COMMENT '生成结束时间',
   `create_by` varchar(50) DEFAULT NULL COMMENT '创建人',
@@ -23,7 +25,8 @@ CREATE TABLE IF NOT EXISTS `copyright_project` (
   PRIMARY KEY (`id`),
   KEY `idx_create_by` (`create_by`),
   KEY `idx_status` (`status`),
-  KEY `idx_create_time` (`create_time`)
+  KEY `idx_create_time` (`create_time`),
+  KEY `idx_batch_id` (`batch_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci COMMENT='软著项目表';
 
 
@@ -33,7 +36,12 @@ CREATE TABLE IF NOT EXISTS `copyright_file` (
   `file_name` varchar(200) DEFAULT NULL COMMENT '文件名称',
   `title` varchar(200) DEFAULT NULL COMMENT '文件标题',
   `file_type` varchar(50) DEFAULT NULL COMMENT '文件类型：frontend_code/backend_code/backend_part1/backend_part2/backend_part3/chapter1-4/screenshot/copyright_application/source_code_pdf',
-  `content` longtext COMMENT '文件内容（代码、文档、Base64图片等）',
+  `content` longblob COMMENT '文本内容（代码、文档等），较大的文本以deflate压缩保存；二进制产物为空，早期数据为Base64',
+  `blob_ref` varchar(80) DEFAULT NULL COMMENT '二进制产物引用（sha256:摘要）',
+  `content_size` bigint DEFAULT NULL COMMENT '二进制产物大小（字节）',
+  `media_type` varchar(100) DEFAULT NULL COMMENT '二进制产物媒体类型',
+  `singleton_key` varchar(50) DEFAULT NULL COMMENT '单实例文件类型的唯一键（等于file_type，截图等多实例类型为空）',
+  `input_hash` varchar(64) DEFAULT NULL COMMENT '生成输入哈希（断点续跑时判断产物是否有效）',
   `status` varchar(20) DEFAULT 'pending' COMMENT '状态：pending/generating/completed/error',
   `software_purpose` text COMMENT '软件用途/开发目的（软著信息）',
   `software_domain` varchar(200) DEFAULT NULL COMMENT '面向领域/行业（软著信息）',
@@ -45,11 +53,110 @@ CREATE TABLE IF NOT EXISTS `copyright_file` (
   `update_by` varchar(50) DEFAULT NULL COMMENT '更新人',
   `update_time` datetime DEFAULT NULL COMMENT '更新时间',
   PRIMARY KEY (`id`),
-  KEY `idx_project_id` (`project_id`),
+  UNIQUE KEY `uk_project_singleton` (`project_id`, `singleton_key`),
+  KEY `idx_project_type_time` (`project_id`, `file_type`, `create_time`),
   KEY `idx_file_type` (`file_type`),
   KEY `idx_status` (`status`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci COMMENT='软著文件表';
 
 
+-- 已有数据库升级：CREATE TABLE IF NOT EXISTS不会修改已有的表，升级时按以下顺序执行（后面的语句依赖前面新增的列）
+-- 1. 项目表：批次ID及其索引、乐观锁版本号
+-- ALTER TABLE `copyright_project` ADD COLUMN `batch_id` varchar(36) DEFAULT NULL COMMENT '批次ID（批量提交时填写）' AFTER `model_id`;
+-- ALTER TABLE `copyright_project` ADD KEY `idx_batch_id` (`batch_id`);
+-- ALTER TABLE `copyright_project` ADD COLUMN `version` int NOT NULL DEFAULT 0 COMMENT '乐观锁版本号（每次状态转换递增）' AFTER `generating_files`;
+-- 2. 文件表：longtext改为longblob后原有内容按UTF-8字节保留，读取时按未压缩格式解析
+-- ALTER TABLE `copyright_file` MODIFY `content` longblob COMMENT '文本内容（代码、文档等），较大的文本以deflate压缩保存；二进制产物为空，早期数据为Base64';
+-- 3. 文件表：二进制产物改存BlobStore后的引用、大小和媒体类型；早期数据仍在content中，读取时按Base64解析
+-- ALTER TABLE `copyright_file` ADD COLUMN `blob_ref` varchar(80) DEFAULT NULL COMMENT '二进制产物引用（sha256:摘要）' AFTER `content`;
+-- ALTER TABLE `copyright_file` ADD COLUMN `content_size` bigint DEFAULT NULL COMMENT '二进制产物大小（字节）' AFTER `blob_ref`;
+-- ALTER TABLE `copyright_file` ADD COLUMN `media_type` varchar(100) DEFAULT NULL COMMENT '二进制产物媒体类型' AFTER `content_size`;
+-- 4. 文件表：为早期数据补齐content_size和media_type，元数据查询只读普通列，不再引用content
+-- UPDATE `copyright_file` SET `content_size` = LENGTH(`content`) WHERE `content_size` IS NULL AND `content` IS NOT NULL;
+-- UPDATE `copyright_file` SET `media_type` = 'image/png'
+--  WHERE `media_type` IS NULL AND `file_type` = 'screenshot' AND `blob_ref` IS NULL AND `content` LIKE 'data:image/%';
+-- 5. 文件表：先删除同一项目同一类型的重复记录（截图除外），再填写singleton_key并创建唯一索引
+--    同一项目同一类型只保留最新的一条（按update_time，为空时按create_time，时间相同时保留id较大的）
+-- DELETE f FROM `copyright_file` f
+--   JOIN `copyright_file` n ON n.`project_id` = f.`project_id` AND n.`file_type` = f.`file_type`
+--    AND (COALESCE(n.`update_time`, n.`create_time`, '1970-01-01') > COALESCE(f.`update_time`, f.`create_time`, '1970-01-01')
+--     OR (COALESCE(n.`update_time`, n.`create_time`, '1970-01-01') = COALESCE(f.`update_time`, f.`create_time`, '1970-01-01')
+--         AND n.`id` > f.`id`))
+--  WHERE f.`file_type` <> 'screenshot';
+-- ALTER TABLE `copyright_file` ADD COLUMN `singleton_key` varchar(50) DEFAULT NULL COMMENT '单实例文件类型的唯一键（等于file_type，截图等多实例类型为空）' AFTER `media_type`;
+-- UPDATE `copyright_file` SET `singleton_key` = `file_type` WHERE `file_type` <> 'screenshot';
+-- ALTER TABLE `copyright_file` ADD UNIQUE KEY `uk_project_singleton` (`project_id`, `singleton_key`);
+-- 6. 文件表：生成输入哈希，早期数据为空，断点续跑时视为无效产物重新生成
+-- ALTER TABLE `copyright_file` ADD COLUMN `input_hash` varchar(64) DEFAULT NULL COMMENT '生成输入哈希（断点续跑时判断产物是否有效）' AFTER `singleton_key`;
+-- 7. 文件表：按项目、类型、时间查询的联合索引替代单列的项目索引
+-- ALTER TABLE `copyright_file` ADD KEY `idx_project_type_time` (`project_id`, `file_type`, `create_time`), DROP KEY `idx_project_id`;
+
 -- ALTER TABLE `copyright_file` ADD CONSTRAINT `fk_copyright_file_project` 
 --   FOREIGN KEY (`project_id`) REFERENCES `copyright_project`(`id`) ON DELETE CASCADE;
+
+
+CREATE TABLE IF NOT EXISTS `copyright_llm_call` (
+  `id` varchar(36) NOT NULL COMMENT '主键',
+  `project_id` varchar(36) DEFAULT NULL COMMENT '项目ID（非流水线调用为空）',
+  `stage` varchar(50) DEFAULT NULL COMMENT '生成阶段：frontend/backend_part1-3/chapter1-4/software_info等',
+  `model` varchar(50) DEFAULT NULL COMMENT '模型名称',
+  `prompt_tokens` bigint DEFAULT 0 COMMENT '提示词token数',
+  `prompt_cache_hit_tokens` bigint DEFAULT 0 COMMENT '命中上游前缀缓存的提示词token数',
+  `completion_tokens` bigint DEFAULT 0 COMMENT '生成token数',
+  `latency_ms` bigint DEFAULT 0 COMMENT '上游耗时（毫秒，从首次发出请求到结束，含重试）',
+  `queue_wait_ms` bigint DEFAULT 0 COMMENT '发出请求前的排队时间（毫秒）',
+  `retries` int DEFAULT 0 COMMENT '重试和对冲的额外请求次数',
+  `cost` decimal(12,6) DEFAULT 0 COMMENT '估算费用（元）',
+  `status` varchar(20) DEFAULT NULL COMMENT '调用结果：success/error/cancelled',
+  `error_message` varchar(500) DEFAULT NULL COMMENT '失败原因',
+  `create_time` datetime DEFAULT NULL COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_project_id` (`project_id`),
+  KEY `idx_create_time_stage` (`create_time`, `stage`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci COMMENT='大模型调用记录表';
+
+-- 已有数据库升级：排队时间单独记录，latency_ms只含上游耗时
+-- ALTER TABLE `copyright_llm_call` ADD COLUMN `queue_wait_ms` bigint DEFAULT 0 COMMENT '发出请求前的排队时间（毫秒）' AFTER `latency_ms`;
+
+
+CREATE TABLE IF NOT EXISTS `copyright_generation_job` (
+  `id` varchar(36) NOT NULL COMMENT '主键',
+  `project_id` varchar(36) NOT NULL COMMENT '项目ID',
+  `status` varchar(20) DEFAULT 'queued' COMMENT '状态：queued/running/completed/failed/cancelled',
+  `owner` varchar(100) DEFAULT NULL COMMENT '持有租约的工作节点',
+  `lease_until` datetime DEFAULT NULL COMMENT '租约到期时间',
+  `start_time` datetime DEFAULT NULL COMMENT '最近一次认领时间',
+  `resume` tinyint(1) DEFAULT 0 COMMENT '是否断点续跑',
+  `batch_id` varchar(36) DEFAULT NULL COMMENT '批次ID（批量提交的任务填写，单独计算单用户并发上限）',
+  `attempts` int DEFAULT 0 COMMENT '已认领次数',
+  `error_message` varchar(500) DEFAULT NULL COMMENT '失败原因',
+  `submitted_by` varchar(100) DEFAULT NULL COMMENT '提交人显示名称（写入生成文件的创建人）',
+  `create_by` varchar(50) DEFAULT NULL COMMENT '创建人（用户ID，按用户公平调度）',
+  `create_time` datetime DEFAULT NULL COMMENT '创建时间',
+  `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_project_id` (`project_id`),
+  KEY `idx_status_lease` (`status`, `lease_until`),
+  KEY `idx_owner` (`owner`),
+  KEY `idx_create_by_status` (`create_by`, `status`, `create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci COMMENT='项目生成任务表';
+
+-- 已有数据库升级：批量任务不占用交互任务的单用户并发额度
+-- ALTER TABLE `copyright_generation_job` ADD COLUMN `batch_id` varchar(36) DEFAULT NULL COMMENT '批次ID（批量提交的任务填写，单独计算单用户并发上限）' AFTER `resume`;
+-- 已有数据库升级：create_by改存用户ID，显示名称单独保存；升级前入队的任务create_by为显示名称，执行完毕后不再参与调度
+-- ALTER TABLE `copyright_generation_job` ADD COLUMN `submitted_by` varchar(100) DEFAULT NULL COMMENT '提交人显示名称（写入生成文件的创建人）' AFTER `error_message`;
+
+
+CREATE TABLE IF NOT EXISTS `copyright_permit` (
+  `id` varchar(64) NOT NULL COMMENT '主键（资源:槽位序号）',
+  `resource` varchar(50) NOT NULL COMMENT '资源名称：llm-reasoner/llm-chat/browser',
+  `slot` int NOT NULL COMMENT '槽位序号',
+  `owner` varchar(100) DEFAULT NULL COMMENT '占用槽位的工作节点',
+  `token` varchar(36) DEFAULT NULL COMMENT '本次占用的令牌，空闲槽位为空',
+  `lease_until` datetime DEFAULT NULL COMMENT '租约到期时间',
+  `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_resource_slot` (`resource`, `slot`),
+  KEY `idx_token` (`token`),
+  KEY `idx_owner` (`owner`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci COMMENT='集群许可表';
@@ -0,0 +1,114 @@
+package org.jeecg.modules.agenthub.copyright.handler;
+
+import org.apache.ibatis.type.JdbcType;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedTextTypeHandlerTest {
+
+    private static final String LARGE_TEXT = "def handler(request):\n    # 处理用户请求并返回结果\n    return {'code': 200}\n".repeat(200);
+
+    /**
+     * 较大的文本压缩保存，解压后与原文一致
+     */
+    @Test
+    void largeTextRoundTripsCompressed() throws SQLException {
+        byte[] stored = CompressedTextTypeHandler.encode(LARGE_TEXT);
+
+        assertEquals(0x00, stored[0]);
+        assertTrue(stored.length < LARGE_TEXT.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(LARGE_TEXT, CompressedTextTypeHandler.decode(stored));
+    }
+
+    /**
+     * 小文本不压缩，按UTF-8原文保存
+     */
+    @Test
+    void smallTextIsStoredAsUtf8() throws SQLException {
+        String text = "第一章 软件概述";
+        byte[] stored = CompressedTextTypeHandler.encode(text);
+
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), stored);
+        assertEquals(text, CompressedTextTypeHandler.decode(stored));
+    }
+
+    /**
+     * 早期未压缩的数据（longtext迁移来的UTF-8字节）按原文读取
+     */
+    @Test
+    void legacyUtf8RowsAreReadAsIs() throws SQLException {
+        long legacyReads = CompressedTextTypeHandler.LEGACY_READS.get();
+
+        assertEquals(LARGE_TEXT, CompressedTextTypeHandler.decode(LARGE_TEXT.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("", CompressedTextTypeHandler.decode(new byte[0]));
+        assertNull(CompressedTextTypeHandler.decode(null));
+        assertEquals(legacyReads + 2, CompressedTextTypeHandler.LEGACY_READS.get());
+    }
+
+    /**
+     * 压缩数据被截断时报错，而不是返回不完整的内容
+     */
+    @Test
+    void truncatedCompressedContentFails() {
+        byte[] stored = CompressedTextTypeHandler.encode(LARGE_TEXT);
+
+        assertThrows(SQLException.class, () -> CompressedTextTypeHandler.decode(Arrays.copyOf(stored, stored.length / 2)));
+    }
+
+    /**
+     * 通过JDBC写入和读取：新写入的压缩数据和直接写入的早期原文数据都能正确读取
+     */
+    @Test
+    void readsCompressedAndLegacyRowsThroughJdbc() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL");
+        CompressedTextTypeHandler handler = new CompressedTextTypeHandler();
+
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE copyright_file (id varchar(36) PRIMARY KEY, content longblob)");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO copyright_file VALUES (?, ?)")) {
+                insert.setString(1, "compressed");
+                handler.setParameter(insert, 2, LARGE_TEXT, null);
+                insert.executeUpdate();
+
+                insert.setString(1, "legacy");
+                insert.setBytes(2, LARGE_TEXT.getBytes(StandardCharsets.UTF_8));
+                insert.executeUpdate();
+
+                insert.setString(1, "empty");
+                handler.setParameter(insert, 2, null, JdbcType.BLOB);
+                insert.executeUpdate();
+            }
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT id, content FROM copyright_file ORDER BY id")) {
+                assertTrue(rs.next());
+                assertEquals("compressed", rs.getString("id"));
+                assertEquals(LARGE_TEXT, handler.getResult(rs, "content"));
+                assertTrue(rs.next());
+                assertEquals("empty", rs.getString("id"));
+                assertNull(handler.getResult(rs, 2));
+                assertTrue(rs.next());
+                assertEquals("legacy", rs.getString("id"));
+                assertEquals(LARGE_TEXT, handler.getResult(rs, "content"));
+            }
+        }
+    }
+}
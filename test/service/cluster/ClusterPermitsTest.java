@@ -0,0 +1,147 @@
+package org.jeecg.modules.agenthub.service.cluster;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.jeecg.modules.agenthub.copyright.mapper.CopyrightPermitMapper;
+import org.jeecg.modules.agenthub.copyright.service.impl.CopyrightPermitServiceImpl;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 两个节点共用一个嵌入式数据库（H2，MySQL兼容模式），验证集群上限、释放和租约过期
+ */
+class ClusterPermitsTest {
+
+    private static final int BROWSER_LIMIT = 2;
+
+    private ClusterPermits nodeA;
+    private ClusterPermits nodeB;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE copyright_permit (" +
+                    "id varchar(64) NOT NULL PRIMARY KEY, resource varchar(50) NOT NULL, slot int NOT NULL, " +
+                    "owner varchar(100), token varchar(36), lease_until datetime, update_time datetime, " +
+                    "UNIQUE (resource, slot))");
+        }
+        MybatisConfiguration configuration = new MybatisConfiguration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(CopyrightPermitMapper.class);
+        SqlSessionFactory sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+        CopyrightPermitMapper mapper = new SqlSessionTemplate(sqlSessionFactory).getMapper(CopyrightPermitMapper.class);
+
+        nodeA = node(mapper);
+        nodeB = node(mapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    private ClusterPermits node(CopyrightPermitMapper mapper) {
+        CopyrightPermitServiceImpl permitService = new CopyrightPermitServiceImpl();
+        ReflectionTestUtils.setField(permitService, "baseMapper", mapper);
+
+        ClusterPermits permits = new ClusterPermits();
+        ReflectionTestUtils.setField(permits, "permitService", permitService);
+        ReflectionTestUtils.setField(permits, "meterRegistry", new SimpleMeterRegistry());
+        WorkloadExecutors workloadExecutors = mock(WorkloadExecutors.class);
+        when(workloadExecutors.scheduler(WorkloadExecutors.PERMIT)).thenReturn(Schedulers.boundedElastic());
+        ReflectionTestUtils.setField(permits, "workloadExecutors", workloadExecutors);
+        ReflectionTestUtils.setField(permits, "enabled", true);
+        ReflectionTestUtils.setField(permits, "leaseSeconds", 60);
+        ReflectionTestUtils.setField(permits, "heartbeatSeconds", 15);
+        ReflectionTestUtils.setField(permits, "maxBackoffMillis", 200L);
+        ReflectionTestUtils.setField(permits, "acquireTimeoutSeconds", 600);
+        ReflectionTestUtils.setField(permits, "reasonerLimit", 1);
+        ReflectionTestUtils.setField(permits, "chatLimit", 1);
+        ReflectionTestUtils.setField(permits, "browserLimit", BROWSER_LIMIT);
+        permits.init();
+        permits.start();
+        return permits;
+    }
+
+    @Test
+    void limitIsSharedAcrossNodes() {
+        ClusterPermits.Permit first = nodeA.acquireBlocking(ClusterPermits.BROWSER);
+        ClusterPermits.Permit second = nodeB.acquireBlocking(ClusterPermits.BROWSER);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(BROWSER_LIMIT, heldByCluster(nodeA, ClusterPermits.BROWSER));
+
+        // 槽位已满，第三个许可要等其他节点释放
+        assertThrows(IllegalStateException.class,
+                () -> nodeA.acquire(ClusterPermits.BROWSER).block(Duration.ofMillis(500)));
+
+        second.release();
+        ClusterPermits.Permit third = nodeA.acquire(ClusterPermits.BROWSER).block(Duration.ofSeconds(5));
+        assertNotNull(third);
+
+        first.release();
+        third.release();
+        assertEquals(0, heldByCluster(nodeB, ClusterPermits.BROWSER));
+    }
+
+    @Test
+    void runReleasesPermitWhenCallCompletes() {
+        String result = nodeA.run(ClusterPermits.LLM_CHAT, () -> Mono.just("ok")).block(Duration.ofSeconds(5));
+        assertEquals("ok", result);
+
+        // 对话模型的集群上限为1，上一个许可已释放时另一个节点可以立即拿到
+        assertEquals("ok", nodeB.run(ClusterPermits.LLM_CHAT, () -> Mono.just("ok")).block(Duration.ofSeconds(5)));
+        assertEquals(0, heldByCluster(nodeA, ClusterPermits.LLM_CHAT));
+    }
+
+    @Test
+    void stoppedNodeReleasesItsPermits() {
+        nodeB.acquireBlocking(ClusterPermits.LLM_REASONER);
+        assertEquals(1, heldByCluster(nodeA, ClusterPermits.LLM_REASONER));
+
+        nodeB.stop();
+
+        assertNotNull(nodeA.acquire(ClusterPermits.LLM_REASONER).block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void expiredLeaseCanBeTakenOver() throws Exception {
+        ReflectionTestUtils.setField(nodeB, "leaseSeconds", 1);
+        nodeB.acquireBlocking(ClusterPermits.LLM_REASONER);
+
+        // 节点B不再续租，租约过期后槽位由节点A接管
+        assertNotNull(nodeA.acquire(ClusterPermits.LLM_REASONER).block(Duration.ofSeconds(10)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private int heldByCluster(ClusterPermits permits, String resource) {
+        Map<String, Object> stats = (Map<String, Object>) permits.getStats().get(resource);
+        return (Integer) stats.get("heldByCluster");
+    }
+}
@@ -0,0 +1,101 @@
+package org.jeecg.modules.agenthub.copyright.service.impl;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightGenerationJob;
+import org.jeecg.modules.agenthub.copyright.mapper.CopyrightGenerationJobMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CopyrightGenerationJobServiceImplTest {
+
+    private CopyrightGenerationJobMapper mapper;
+    private CopyrightGenerationJobServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(CopyrightGenerationJobMapper.class);
+        service = new CopyrightGenerationJobServiceImpl();
+        ReflectionTestUtils.setField(service, "baseMapper", mapper);
+        ReflectionTestUtils.setField(service, "maxPerUser", 2);
+        ReflectionTestUtils.setField(service, "batchMaxPerUser", 4);
+        ReflectionTestUtils.setField(service, "userWeights", Map.of());
+        when(mapper.claim(anyString(), anyString(), anyInt(), anyInt())).thenReturn(1);
+    }
+
+    /**
+     * 交互任务占满单用户上限时，同一用户的批量任务仍按批量上限认领
+     */
+    @Test
+    void batchJobIsClaimedWhenInteractiveLimitIsReached() {
+        CopyrightGenerationJob batch = job("batch-1", "batch-x");
+        when(mapper.countRunningByUser()).thenReturn(List.of(Map.of("createBy", "alice", "running", 2, "batchRunning", 0)));
+        when(mapper.selectClaimableHeads(anyInt(), anyInt())).thenReturn(List.of(batch));
+        when(mapper.selectById(batch.getId())).thenReturn(batch);
+
+        assertEquals(batch, service.claimNext("node-1", 120, 3));
+    }
+
+    /**
+     * 批量任务达到批量上限时跳过，同一用户的交互任务不受影响
+     */
+    @Test
+    void batchLimitDoesNotBlockInteractiveJobs() {
+        CopyrightGenerationJob batch = job("batch-1", "batch-x");
+        CopyrightGenerationJob interactive = job("job-1", null);
+        when(mapper.countRunningByUser()).thenReturn(List.of(Map.of("createBy", "alice", "running", 5, "batchRunning", 4)));
+        when(mapper.selectClaimableHeads(anyInt(), anyInt())).thenReturn(List.of(batch, interactive));
+        when(mapper.selectById(interactive.getId())).thenReturn(interactive);
+
+        assertEquals(interactive, service.claimNext("node-1", 120, 3));
+        verify(mapper, never()).claim(eq(batch.getId()), anyString(), anyInt(), anyInt());
+    }
+
+    /**
+     * 两类任务都达到上限时不认领
+     */
+    @Test
+    void nothingIsClaimedWhenBothLimitsAreReached() {
+        when(mapper.countRunningByUser()).thenReturn(List.of(Map.of("createBy", "alice", "running", 6, "batchRunning", 4)));
+        when(mapper.selectClaimableHeads(anyInt(), anyInt())).thenReturn(List.of(job("batch-1", "batch-x"), job("job-1", null)));
+
+        assertNull(service.claimNext("node-1", 120, 3));
+        verify(mapper, never()).claim(anyString(), anyString(), anyInt(), anyInt());
+    }
+
+    /**
+     * 任务按用户ID计算公平份额，显示名称只用于生成文件的创建人
+     */
+    @Test
+    void batchJobIsKeyedByUserId() {
+        CopyrightGenerationJob job = service.enqueueBatch("project-1", "alice", "Alice(alice)", "batch-x");
+
+        assertEquals("alice", job.getCreateBy());
+        assertEquals("Alice(alice)", job.getSubmittedBy());
+        assertEquals("batch-x", job.getBatchId());
+    }
+
+    private static CopyrightGenerationJob job(String id, String batchId) {
+        return new CopyrightGenerationJob()
+            .setId(id)
+            .setProjectId("project-" + id)
+            .setStatus("queued")
+            .setBatchId(batchId)
+            .setAttempts(0)
+            .setCreateBy("alice")
+            .setCreateTime(new Date());
+    }
+}
@@ -0,0 +1,175 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.cumulative.CumulativeTimer;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.pause.PauseDetector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private AdaptiveConcurrencyLimiter limiter(int initial, int min, int max) {
+        return new AdaptiveConcurrencyLimiter("test", initial, min, max, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void queuesBeyondLimitAndGrantsOnRelease() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 2);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> first = new AtomicReference<>();
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> third = new AtomicReference<>();
+
+        limiter.acquire().subscribe(first::set);
+        limiter.acquire().subscribe();
+        limiter.acquire().subscribe(third::set);
+
+        assertNotNull(first.get());
+        assertNull(third.get());
+        assertEquals(2, limiter.getInflight());
+        assertEquals(1, limiter.getQueueDepth());
+
+        first.get().onIgnore();
+
+        assertNotNull(third.get());
+        assertEquals(2, limiter.getInflight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void permitIsReleasedOnlyOnce() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> permit = new AtomicReference<>();
+        limiter.acquire().subscribe(permit::set);
+
+        permit.get().onSuccess();
+        permit.get().onIgnore();
+
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void cancelWhileQueuedRemovesWaiter() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> holder = new AtomicReference<>();
+        limiter.acquire().subscribe(holder::set);
+        Disposable queued = limiter.acquire().subscribe();
+        assertEquals(1, limiter.getQueueDepth());
+
+        queued.dispose();
+        holder.get().onIgnore();
+
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void runReleasesPermitWhenCallerCancels() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1);
+        Disposable running = limiter.run(Mono::never).subscribe();
+        assertEquals(1, limiter.getInflight());
+
+        running.dispose();
+
+        assertEquals(0, limiter.getInflight());
+    }
+
+    /**
+     * 等待者已出队、许可尚未推送时取消，许可必须归还
+     */
+    @Test
+    void cancelBetweenDequeueAndDeliveryReleasesPermit() {
+        HookedMeterRegistry registry = new HookedMeterRegistry();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, registry);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> holder = new AtomicReference<>();
+        limiter.acquire().subscribe(holder::set);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> delivered = new AtomicReference<>();
+        Disposable waiter = limiter.acquire().subscribe(delivered::set);
+
+        // 等待时间在出队后、推送前记录，借此在这个窗口内取消
+        registry.onRecord = waiter::dispose;
+        holder.get().onIgnore();
+
+        assertNull(delivered.get());
+        assertEquals(0, limiter.getInflight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void interactiveCallsAreGrantedFirst() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> holder = new AtomicReference<>();
+        limiter.acquire().subscribe(holder::set);
+
+        List<String> order = new ArrayList<>();
+        limiter.acquire().subscribe(permit -> {
+            order.add("batch");
+            permit.onIgnore();
+        });
+        limiter.acquire().contextWrite(LlmCallContext.interactive()).subscribe(permit -> {
+            order.add("interactive");
+            permit.onIgnore();
+        });
+
+        holder.get().onIgnore();
+
+        assertEquals(List.of("interactive", "batch"), order);
+    }
+
+    @Test
+    void overloadHalvesLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 1, 8);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> permit = new AtomicReference<>();
+        limiter.acquire().subscribe(permit::set);
+
+        permit.get().onError(WebClientResponseException.create(HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Too Many Requests", null, null, null));
+
+        assertEquals(4, (int) limiter.getLimit());
+    }
+
+    @Test
+    void waitingDoesNotBlockThreads() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1);
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> holder = new AtomicReference<>();
+        limiter.acquire().subscribe(holder::set);
+
+        Mono<String> queued = limiter.run(() -> Mono.just("ok")).subscribeOn(Schedulers.parallel());
+        Schedulers.parallel().schedule(() -> holder.get().onIgnore(), 50, TimeUnit.MILLISECONDS);
+
+        assertEquals("ok", queued.block(Duration.ofSeconds(5)));
+        assertEquals(0, limiter.getInflight());
+    }
+
+    private static class HookedMeterRegistry extends SimpleMeterRegistry {
+
+        private volatile Runnable onRecord = () -> {
+        };
+
+        @Override
+        protected Timer newTimer(Meter.Id id, DistributionStatisticConfig config, PauseDetector pauseDetector) {
+            return new CumulativeTimer(id, clock, config, pauseDetector, getBaseTimeUnit(), false) {
+                @Override
+                protected void recordNonNegative(long amount, TimeUnit unit) {
+                    super.recordNonNegative(amount, unit);
+                    onRecord.run();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightLlmCall;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightLlmCallService;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 流式调用：只有完整结束的流才写入缓存，每次流式调用都写入一条调用记录
+ */
+class DeepSeekClientStreamTest {
+
+    private MockWebServer server;
+    private DeepSeekClient client;
+    private LlmCompletionCache completionCache;
+    private ICopyrightLlmCallService llmCallService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        completionCache = mock(LlmCompletionCache.class);
+        llmCallService = mock(ICopyrightLlmCallService.class);
+
+        LlmHttpClients httpClients = mock(LlmHttpClients.class);
+        when(httpClients.forModel(anyString())).thenReturn(WebClient.create());
+
+        LlmConcurrencyLimiters limiters = mock(LlmConcurrencyLimiters.class);
+        when(limiters.runMany(anyString(), any())).thenAnswer(invocation ->
+                ((Supplier<Flux<Object>>) invocation.getArgument(1)).get());
+
+        LlmResilience resilience = mock(LlmResilience.class);
+        when(resilience.stream(anyString(), any())).thenAnswer(invocation ->
+                Flux.defer((Supplier<Flux<Object>>) invocation.getArgument(1)));
+
+        WorkloadExecutors workloadExecutors = mock(WorkloadExecutors.class);
+        when(workloadExecutors.scheduler(anyString())).thenReturn(Schedulers.immediate());
+
+        client = new DeepSeekClient();
+        ReflectionTestUtils.setField(client, "baseUrl", server.url("/v1").toString());
+        ReflectionTestUtils.setField(client, "apiKey", "test");
+        ReflectionTestUtils.setField(client, "streamIdleTimeoutSeconds", 10L);
+        ReflectionTestUtils.setField(client, "completionCache", completionCache);
+        ReflectionTestUtils.setField(client, "limiters", limiters);
+        ReflectionTestUtils.setField(client, "resilience", resilience);
+        ReflectionTestUtils.setField(client, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(client, "httpClients", httpClients);
+        ReflectionTestUtils.setField(client, "llmCallService", llmCallService);
+        ReflectionTestUtils.setField(client, "workloadExecutors", workloadExecutors);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static String chunk(String json) {
+        return "data: " + json + "\n\n";
+    }
+
+    private String stream() {
+        List<DeepSeekClient.Delta> deltas = client.stream(LlmPrompt.plain("chapter1", "写一段说明"),
+                DeepSeekClient.LOW_COST_MODEL, 1000).collectList().block(Duration.ofSeconds(10));
+        return deltas.stream().map(DeepSeekClient.Delta::getContent).collect(Collectors.joining());
+    }
+
+    private void enqueueEvents(String body) {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "text/event-stream").setBody(body));
+    }
+
+    @Test
+    void completedStreamIsCachedAndRecorded() {
+        enqueueEvents(chunk("{\"choices\":[{\"delta\":{\"content\":\"你好\"}}]}")
+                + chunk("{\"choices\":[{\"delta\":{\"content\":\"世界\"},\"finish_reason\":\"stop\"}]}")
+                + chunk("{\"choices\":[],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":4,"
+                + "\"prompt_cache_hit_tokens\":8,\"prompt_cache_miss_tokens\":4}}")
+                + chunk("[DONE]"));
+
+        assertEquals("你好世界", stream());
+
+        verify(completionCache).put(anyString(), eq("你好世界"));
+        ArgumentCaptor<CopyrightLlmCall> call = ArgumentCaptor.forClass(CopyrightLlmCall.class);
+        verify(llmCallService, timeout(2000)).recordCall(call.capture());
+        assertEquals("success", call.getValue().getStatus());
+        assertEquals("chapter1", call.getValue().getStage());
+        assertEquals(12L, call.getValue().getPromptTokens());
+        assertEquals(8L, call.getValue().getPromptCacheHitTokens());
+        assertEquals(4L, call.getValue().getCompletionTokens());
+    }
+
+    @Test
+    void truncatedStreamIsNotCached() {
+        // 上游只推送了部分内容就正常关闭连接，没有[DONE]也没有finish_reason
+        enqueueEvents(chunk("{\"choices\":[{\"delta\":{\"content\":\"半截\"}}]}"));
+
+        assertEquals("半截", stream());
+
+        verify(completionCache, never()).put(anyString(), anyString());
+        ArgumentCaptor<CopyrightLlmCall> call = ArgumentCaptor.forClass(CopyrightLlmCall.class);
+        verify(llmCallService, timeout(2000)).recordCall(call.capture());
+        // 没有usage时按已收到的内容估算
+        assertEquals(1L, call.getValue().getCompletionTokens());
+    }
+}
@@ -0,0 +1,65 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jeecg.modules.agenthub.service.cluster.ClusterPermits;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LlmConcurrencyLimitersTest {
+
+    /**
+     * 本节点排队中的调用不占用集群许可，只有轮到执行的调用才去获取
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void clusterPermitIsTakenOnlyWhenLocalPermitIsGranted() {
+        AtomicInteger clusterHeld = new AtomicInteger();
+        ClusterPermits clusterPermits = mock(ClusterPermits.class);
+        when(clusterPermits.run(eq(ClusterPermits.LLM_REASONER), any())).thenAnswer(invocation -> {
+            Supplier<Mono<Object>> call = invocation.getArgument(1);
+            return Mono.defer(() -> {
+                clusterHeld.incrementAndGet();
+                return call.get();
+            }).doFinally(signal -> clusterHeld.decrementAndGet());
+        });
+
+        LlmConcurrencyLimiters limiters = new LlmConcurrencyLimiters();
+        ReflectionTestUtils.setField(limiters, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(limiters, "clusterPermits", clusterPermits);
+        ReflectionTestUtils.setField(limiters, "reasonerInitial", 1);
+        ReflectionTestUtils.setField(limiters, "reasonerMin", 1);
+        ReflectionTestUtils.setField(limiters, "reasonerMax", 1);
+        ReflectionTestUtils.setField(limiters, "chatInitial", 1);
+        ReflectionTestUtils.setField(limiters, "chatMin", 1);
+        ReflectionTestUtils.setField(limiters, "chatMax", 1);
+        limiters.init();
+
+        List<Disposable> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            calls.add(limiters.run(DeepSeekClient.HIGH_COST_MODEL, Mono::never).subscribe());
+        }
+
+        assertEquals(1, clusterHeld.get());
+        assertEquals(2, limiters.forModel(DeepSeekClient.HIGH_COST_MODEL).getQueueDepth());
+
+        calls.get(0).dispose();
+        assertEquals(1, clusterHeld.get());
+        assertEquals(1, limiters.forModel(DeepSeekClient.HIGH_COST_MODEL).getQueueDepth());
+
+        calls.forEach(Disposable::dispose);
+        assertEquals(0, clusterHeld.get());
+    }
+}
@@ -0,0 +1,153 @@
+package org.jeecg.modules.agenthub.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用本地桩服务器验证重试、对冲和超时策略
+ */
+class LlmResilienceTest {
+
+    private static final String CHAT = DeepSeekClient.LOW_COST_MODEL;
+    private static final String REASONER = DeepSeekClient.HIGH_COST_MODEL;
+
+    private MockWebServer server;
+    private WebClient webClient;
+    private LlmResilience resilience;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        webClient = WebClient.create(server.url("/").toString());
+
+        resilience = new LlmResilience();
+        ReflectionTestUtils.setField(resilience, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 3);
+        ReflectionTestUtils.setField(resilience, "minBackoffMs", 1L);
+        ReflectionTestUtils.setField(resilience, "maxBackoffMs", 5L);
+        ReflectionTestUtils.setField(resilience, "jitter", 0.0);
+        ReflectionTestUtils.setField(resilience, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(resilience, "hedgeQuantile", 0.95);
+        ReflectionTestUtils.setField(resilience, "hedgeMaxTokens", 4096);
+        ReflectionTestUtils.setField(resilience, "failureThreshold", 100);
+        ReflectionTestUtils.setField(resilience, "openSeconds", 30L);
+        ReflectionTestUtils.setField(resilience, "maxQueueWaitSeconds", 30L);
+        resilience.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private Supplier<Mono<String>> request(Duration timeout) {
+        return () -> webClient.post().uri("/chat/completions").retrieve().bodyToMono(String.class).timeout(timeout);
+    }
+
+    private String call(String model, boolean hedge) {
+        return resilience.call(model, request(Duration.ofSeconds(5)), hedge).block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void retriesTooManyRequests() {
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertEquals("ok", call(CHAT, false));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1L, stats(CHAT).get("retries"));
+    }
+
+    @Test
+    void retriesServerErrors() {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertEquals("ok", call(REASONER, false));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void maxAttemptsIncludesFirstRequest() {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+
+        assertThrows(WebClientResponseException.class, () -> call(CHAT, false));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        assertThrows(WebClientResponseException.class, () -> call(CHAT, false));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void reasonerTimeoutsAreNotRetried() {
+        server.enqueue(new MockResponse().setBody("late").setHeadersDelay(2, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertThrows(RuntimeException.class, () -> resilience.call(REASONER, request(Duration.ofMillis(200)), false)
+                .block(Duration.ofSeconds(10)));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void chatTimeoutsAreRetried() {
+        server.enqueue(new MockResponse().setBody("late").setHeadersDelay(2, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertEquals("ok", resilience.call(CHAT, request(Duration.ofMillis(200)), false).block(Duration.ofSeconds(10)));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void slowShortCallIsHedged() {
+        // 积累足够的短调用耗时样本后，p95阈值约为几毫秒
+        for (int i = 0; i < 20; i++) {
+            server.enqueue(new MockResponse().setBody("fast"));
+            assertEquals("fast", call(CHAT, true));
+        }
+        server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(3, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("hedged"));
+
+        assertEquals("hedged", call(CHAT, true));
+        assertEquals(22, server.getRequestCount());
+        assertEquals(1L, stats(CHAT).get("hedges"));
+    }
+
+    @Test
+    void onlyShortChatCallsAreHedgeable() {
+        assertTrue(resilience.isHedgeable(CHAT, 4000));
+        assertFalse(resilience.isHedgeable(CHAT, 8192));
+        assertFalse(resilience.isHedgeable(REASONER, 1000));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats(String model) {
+        return (Map<String, Object>) resilience.getStats().get(model);
+    }
+}
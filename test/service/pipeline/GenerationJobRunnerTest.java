@@ -0,0 +1,154 @@
+package org.jeecg.modules.agenthub.service.pipeline;
+
+import org.jeecg.modules.agenthub.copyright.entity.CopyrightGenerationJob;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightGenerationJobService;
+import org.jeecg.modules.agenthub.copyright.service.ICopyrightProjectService;
+import org.jeecg.modules.agenthub.service.executor.WorkloadExecutors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GenerationJobRunnerTest {
+
+    private GenerationJobRunner runner;
+
+    @AfterEach
+    void tearDown() {
+        if (runner != null) {
+            runner.stop();
+        }
+    }
+
+    /**
+     * 取消请求落在其他节点时，执行节点在取消轮询间隔内发现并释放阻塞资源，无需等到续租失败
+     */
+    @Test
+    void cancelFromAnotherNodeStopsJobBeforeNextHeartbeat() throws Exception {
+        CopyrightGenerationJob job = job();
+        ICopyrightGenerationJobService jobService = jobService(job);
+        when(jobService.findCancelled(anyCollection())).thenReturn(List.of(job.getId()));
+        CancellationRegistry cancellations = new CancellationRegistry();
+        runner = runner(jobService, cancellations);
+
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicReference<CancellationToken> token = new AtomicReference<>();
+        runner.setHandler(claimed -> Mono.defer(() -> {
+            token.set(cancellations.get(claimed.getProjectId()));
+            token.get().onCancel(released::countDown);
+            return Mono.never();
+        }));
+        runner.start();
+
+        assertTrue(released.await(5, TimeUnit.SECONDS), "取消后应在取消轮询间隔内释放阻塞资源");
+        assertTrue(token.get().isCancelled());
+        verify(jobService, never()).finish(eq(job.getId()), anyString(), anyString(), eq(null));
+    }
+
+    /**
+     * 处理逻辑异常结束时任务记录为failed，不能记为completed
+     */
+    @Test
+    void failedHandlerMarksJobFailed() {
+        CopyrightGenerationJob job = job();
+        ICopyrightGenerationJobService jobService = jobService(job);
+        when(jobService.findCancelled(anyCollection())).thenReturn(List.of());
+        runner = runner(jobService, new CancellationRegistry());
+        runner.setHandler(claimed -> Mono.error(new IllegalStateException("upstream 500")));
+        runner.start();
+
+        verify(jobService, timeout(5000)).finish(eq(job.getId()), anyString(), eq("failed"), eq("upstream 500"));
+        verify(jobService, never()).finish(eq(job.getId()), anyString(), eq("completed"), any());
+    }
+
+    /**
+     * 处理逻辑失败或节点停机时，登记在令牌上的浏览器、子进程等阻塞资源同样被释放
+     */
+    @Test
+    void blockingResourcesAreReleasedWhenJobFailsOrNodeStops() throws Exception {
+        CopyrightGenerationJob job = job();
+        ICopyrightGenerationJobService jobService = jobService(job);
+        when(jobService.findCancelled(anyCollection())).thenReturn(List.of());
+        CancellationRegistry cancellations = new CancellationRegistry();
+        runner = runner(jobService, cancellations);
+
+        CountDownLatch released = new CountDownLatch(1);
+        runner.setHandler(claimed -> Mono.defer(() -> {
+            cancellations.get(claimed.getProjectId()).onCancel(released::countDown);
+            return Mono.delay(Duration.ofMillis(50)).then(Mono.error(new IllegalStateException("sibling stage failed")));
+        }));
+        runner.start();
+        assertTrue(released.await(5, TimeUnit.SECONDS), "任务失败后应释放阻塞资源");
+
+        CopyrightGenerationJob second = job();
+        second.setId("job-2");
+        second.setProjectId("project-2");
+        when(jobService.claimNext(anyString(), anyInt(), anyInt())).thenReturn(second, (CopyrightGenerationJob) null);
+        CountDownLatch stopped = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        runner.setHandler(claimed -> Mono.defer(() -> {
+            cancellations.get(claimed.getProjectId()).onCancel(stopped::countDown);
+            started.countDown();
+            return Mono.never();
+        }));
+        runner.wakeUp();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        runner.stop();
+        runner = null;
+        assertTrue(stopped.await(5, TimeUnit.SECONDS), "节点停机时应释放阻塞资源");
+    }
+
+    private static CopyrightGenerationJob job() {
+        CopyrightGenerationJob job = new CopyrightGenerationJob();
+        job.setId("job-1");
+        job.setProjectId("project-1");
+        job.setAttempts(1);
+        return job;
+    }
+
+    private static ICopyrightGenerationJobService jobService(CopyrightGenerationJob job) {
+        ICopyrightGenerationJobService jobService = mock(ICopyrightGenerationJobService.class);
+        when(jobService.failExhausted(anyInt())).thenReturn(List.of());
+        when(jobService.claimNext(anyString(), anyInt(), anyInt())).thenReturn(job, (CopyrightGenerationJob) null);
+        when(jobService.renewLease(anyString(), anyString(), anyInt())).thenReturn(true);
+        when(jobService.finish(anyString(), anyString(), anyString(), any())).thenReturn(true);
+        return jobService;
+    }
+
+    private static GenerationJobRunner runner(ICopyrightGenerationJobService jobService, CancellationRegistry cancellations) {
+        GenerationJobRunner runner = new GenerationJobRunner();
+        ReflectionTestUtils.setField(runner, "jobService", jobService);
+        ReflectionTestUtils.setField(runner, "copyrightProjectService", mock(ICopyrightProjectService.class));
+        ReflectionTestUtils.setField(runner, "cancellations", cancellations);
+        WorkloadExecutors workloadExecutors = mock(WorkloadExecutors.class);
+        when(workloadExecutors.scheduler(WorkloadExecutors.JOB)).thenReturn(Schedulers.boundedElastic());
+        ReflectionTestUtils.setField(runner, "workloadExecutors", workloadExecutors);
+        ReflectionTestUtils.setField(runner, "workers", 1);
+        ReflectionTestUtils.setField(runner, "leaseSeconds", 120);
+        ReflectionTestUtils.setField(runner, "heartbeatSeconds", 60);
+        ReflectionTestUtils.setField(runner, "pollSeconds", 60);
+        ReflectionTestUtils.setField(runner, "cancelPollSeconds", 1);
+        ReflectionTestUtils.setField(runner, "maxAttempts", 3);
+        return runner;
+    }
+}
@@ -0,0 +1,119 @@
+package org.jeecg.modules.agenthub.service.pipeline;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StageGraphTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * 互不依赖的阶段并发执行：a要等b开始后才能完成，串行执行时会超时
+     */
+    @Test
+    void independentStagesRunConcurrently() {
+        Sinks.Empty<Void> bStarted = Sinks.empty();
+        StageGraph graph = new StageGraph("test")
+            .stage("root", results -> Mono.just("code"))
+            .stage("a", results -> bStarted.asMono().thenReturn(results.<String>get("root") + "-a"), "root")
+            .stage("b", results -> {
+                bStarted.tryEmitEmpty();
+                return Mono.just(results.<String>get("root") + "-b");
+            }, "root")
+            .stage("merge", results -> Mono.just(results.<String>get("a") + "+" + results.<String>get("b")), "a", "b");
+
+        StageGraph.StageResults results = graph.execute().block(TIMEOUT);
+
+        assertEquals("code-a+code-b", results.get("merge"));
+    }
+
+    /**
+     * 阶段在依赖全部完成后才开始
+     */
+    @Test
+    void stageStartsOnlyAfterAllDependencies() {
+        List<String> events = new CopyOnWriteArrayList<>();
+        StageGraph graph = new StageGraph("test")
+            .stage("slow", results -> Mono.delay(Duration.ofMillis(100)).thenReturn("slow"))
+            .stage("fast", results -> Mono.just("fast"))
+            .stage("last", results -> Mono.fromRunnable(() -> events.add("last")), "slow", "fast")
+            .listener(new StageGraph.StageListener() {
+                @Override
+                public void stageCompleted(String stageName, long elapsedMillis) {
+                    events.add(stageName);
+                }
+            });
+
+        graph.execute().block(TIMEOUT);
+
+        assertEquals(List.of("fast", "slow", "last", "last"), events);
+    }
+
+    /**
+     * 任一阶段失败时取消其余执行中的阶段，依赖它的阶段不再开始，整体返回该错误
+     */
+    @Test
+    void failureCancelsRunningStagesAndSkipsDependents() {
+        IllegalStateException failure = new IllegalStateException("upstream 500");
+        AtomicBoolean otherCancelled = new AtomicBoolean();
+        AtomicBoolean dependentStarted = new AtomicBoolean();
+        List<String> failed = new CopyOnWriteArrayList<>();
+        StageGraph graph = new StageGraph("test")
+            .stage("other", results -> Mono.never().doOnCancel(() -> otherCancelled.set(true)))
+            .stage("broken", results -> Mono.delay(Duration.ofMillis(50)).then(Mono.error(failure)))
+            .stage("dependent", results -> Mono.fromRunnable(() -> dependentStarted.set(true)), "broken")
+            .listener(new StageGraph.StageListener() {
+                @Override
+                public void stageFailed(String stageName, Throwable error) {
+                    failed.add(stageName);
+                }
+            });
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> graph.execute().block(TIMEOUT));
+
+        assertSame(failure, thrown);
+        assertTrue(otherCancelled.get());
+        assertFalse(dependentStarted.get());
+        assertEquals(List.of("broken"), failed);
+    }
+
+    /**
+     * 整体被取消（如项目取消）时执行中的阶段随之取消，未开始的阶段不再开始
+     */
+    @Test
+    void disposingExecutionCancelsRunningStages() {
+        AtomicBoolean runningCancelled = new AtomicBoolean();
+        AtomicBoolean dependentStarted = new AtomicBoolean();
+        StageGraph graph = new StageGraph("test")
+            .stage("running", results -> Mono.never().doOnCancel(() -> runningCancelled.set(true)))
+            .stage("dependent", results -> Mono.fromRunnable(() -> dependentStarted.set(true)), "running");
+
+        graph.execute().subscribe().dispose();
+
+        assertTrue(runningCancelled.get());
+        assertFalse(dependentStarted.get());
+    }
+
+    /**
+     * 依赖必须先声明，阶段名不能重复
+     */
+    @Test
+    void rejectsUndeclaredDependencyAndDuplicateStage() {
+        StageGraph graph = new StageGraph("test").stage("a", results -> Mono.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> graph.stage("b", results -> Mono.empty(), "missing"));
+        assertThrows(IllegalArgumentException.class, () -> graph.stage("a", results -> Mono.empty()));
+    }
+}